@@ -0,0 +1,158 @@
+package es.odracirnumira.npuzzle.util.cache;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmark that compares the throughput of a {@link ConcurrentMemoryLimitedCache} with that of a
+ * {@link MemoryLimitedCache} wrapped by {@link CacheUtils#getSynchronizedCache(ICache)} when
+ * several threads use them at the same time.
+ * <p>
+ * Each thread repeatedly gets a random key out of {@link #NUM_KEYS}, and puts it if it is not in
+ * the cache. The caches only have room for half of the keys, so there are plenty of misses and
+ * evictions. The total number of operations is the same for every number of threads, and the best
+ * time out of {@link #NUM_RUNS} runs is reported.
+ * <p>
+ * It is not part of the application. The caches do not depend on Android, so it runs on a desktop
+ * JVM. From the <code>N-Puzzle</code> directory:
+ * 
+ * <pre>
+ * javac -encoding UTF-8 -d /tmp/bench -sourcepath src \
+ *     benchmarks/es/odracirnumira/npuzzle/util/cache/*.java
+ * java -cp /tmp/bench es.odracirnumira.npuzzle.util.cache.CacheContentionBenchmark [threads...]
+ * </pre>
+ * 
+ * The numbers of threads default to 1, 2, 4 and 8. Scaling can only be seen on a machine with at
+ * least as many cores as threads.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class CacheContentionBenchmark {
+	/**
+	 * Number of different keys used.
+	 */
+	private static final int NUM_KEYS = 2000;
+
+	/**
+	 * Size of each value, in bytes.
+	 */
+	private static final int VALUE_SIZE = 100;
+
+	/**
+	 * Maximum size of the caches, in bytes.
+	 */
+	private static final long CACHE_SIZE = NUM_KEYS / 2 * VALUE_SIZE;
+
+	/**
+	 * Total number of operations of a run, shared among its threads.
+	 */
+	private static final int NUM_OPERATIONS = 2000000;
+
+	/**
+	 * Number of runs of each configuration.
+	 */
+	private static final int NUM_RUNS = 5;
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] numThreads = { 1, 2, 4, 8 };
+
+		if (args.length != 0) {
+			numThreads = new int[args.length];
+
+			for (int i = 0; i < args.length; i++) {
+				numThreads[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+		System.out.println("threads\tconcurrent (ms)\tsynchronized (ms)");
+
+		for (int threads : numThreads) {
+			/*
+			 * Warm up the JIT before measuring.
+			 */
+			run(createConcurrentCache(), threads, NUM_OPERATIONS / 10);
+			run(createSynchronizedCache(), threads, NUM_OPERATIONS / 10);
+
+			long concurrentTime = Long.MAX_VALUE;
+			long synchronizedTime = Long.MAX_VALUE;
+
+			for (int i = 0; i < NUM_RUNS; i++) {
+				concurrentTime = Math.min(concurrentTime,
+						run(createConcurrentCache(), threads, NUM_OPERATIONS));
+				synchronizedTime = Math.min(synchronizedTime,
+						run(createSynchronizedCache(), threads, NUM_OPERATIONS));
+			}
+
+			System.out.println(threads + "\t" + concurrentTime + "\t" + synchronizedTime);
+		}
+	}
+
+	/**
+	 * Creates the concurrent cache to measure.
+	 */
+	private static ICache<Integer, byte[]> createConcurrentCache() {
+		return new ConcurrentMemoryLimitedCache<Integer, byte[]>(CACHE_SIZE) {
+			public long getSize(byte[] value) {
+				return value.length;
+			}
+		};
+	}
+
+	/**
+	 * Creates the synchronized cache to compare with.
+	 */
+	private static ICache<Integer, byte[]> createSynchronizedCache() {
+		return CacheUtils.getSynchronizedCache(new MemoryLimitedCache<Integer, byte[]>(CACHE_SIZE,
+				MemoryLimitedCache.RemovalOrder.LRU) {
+			public long getSize(byte[] value) {
+				return value.length;
+			}
+		});
+	}
+
+	/**
+	 * Runs <code>numOperations</code> operations on <code>cache</code>, spread over
+	 * <code>numThreads</code> threads, and returns the time it took, in milliseconds.
+	 */
+	private static long run(final ICache<Integer, byte[]> cache, int numThreads,
+			int numOperations) throws InterruptedException {
+		final byte[] value = new byte[VALUE_SIZE];
+		final int threadOperations = numOperations / numThreads;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[numThreads];
+
+		for (int i = 0; i < numThreads; i++) {
+			final Random random = new Random(i);
+
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+
+					for (int j = 0; j < threadOperations; j++) {
+						int key = random.nextInt(NUM_KEYS);
+
+						if (cache.get(key) == null) {
+							cache.put(key, value);
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return (System.nanoTime() - startTime) / 1000000;
+	}
+}
@@ -1,14 +1,22 @@
 package es.odracirnumira.npuzzle;
 
+import java.io.File;
 import java.util.ArrayList;
 
+import es.odracirnumira.npuzzle.bank.PuzzleBank;
+import es.odracirnumira.npuzzle.bank.PuzzleBankFiller;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
 import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.solver.HeuristicFactory;
 import es.odracirnumira.npuzzle.util.ImageUtilities;
+import es.odracirnumira.npuzzle.util.cache.BitmapPool;
+import es.odracirnumira.npuzzle.util.cache.DiskBitmapCache;
+import android.app.ActivityManager;
 import android.app.Application;
 import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.OperationApplicationException;
 import android.os.RemoteException;
 import android.util.Log;
@@ -20,11 +28,42 @@ import android.util.Log;
  * 
  */
 public class NPuzzleApplication extends Application {
+	/**
+	 * Maximum size of the thumbnails stored on disk, in bytes.
+	 */
+	private static final long MAX_THUMBNAIL_CACHE_SIZE = 10 * 1024 * 1024;
+
 	/**
 	 * The only instance of this class.
 	 */
 	private static volatile NPuzzleApplication instance;
 
+	/**
+	 * The cache of thumbnails stored on disk. Created the first time it is requested.
+	 */
+	private DiskBitmapCache thumbnailCache;
+
+	/**
+	 * The pool of bitmaps that can be reused. Created the first time it is requested.
+	 */
+	private BitmapPool bitmapPool;
+
+	/**
+	 * The bank of puzzles graded by difficulty. Created the first time it is requested.
+	 */
+	private PuzzleBank puzzleBank;
+
+	/**
+	 * The object that fills {@link #puzzleBank} in the background. Created the first time it is
+	 * requested.
+	 */
+	private PuzzleBankFiller puzzleBankFiller;
+
+	/**
+	 * The factory of the heuristics used by the solvers. Created the first time it is requested.
+	 */
+	private HeuristicFactory heuristicFactory;
+
 	/**
 	 * Returns the only instance of this class.
 	 */
@@ -36,6 +75,99 @@ public class NPuzzleApplication extends Application {
 		instance = this;
 	}
 
+	/**
+	 * Returns the cache that stores the thumbnails of the images of the games on disk, so that they
+	 * do not have to be decoded from the original images again. Keys are the IDs of the games
+	 * followed by an underscore and a version, so all the thumbnails of a game can be removed with
+	 * {@link DiskBitmapCache#removeAll(String)}.
+	 */
+	public synchronized DiskBitmapCache getThumbnailCache() {
+		if (this.thumbnailCache == null) {
+			this.thumbnailCache = new DiskBitmapCache(new File(this.getCacheDir(), "thumbnails"),
+					MAX_THUMBNAIL_CACHE_SIZE);
+		}
+
+		return this.thumbnailCache;
+	}
+
+	/**
+	 * Returns the pool of bitmaps that are no longer used and can be reused when decoding or
+	 * creating new ones. Its size is 1/16 of the memory available to the application.
+	 */
+	public synchronized BitmapPool getBitmapPool() {
+		if (this.bitmapPool == null) {
+			int poolSize = ((ActivityManager) this.getSystemService(Context.ACTIVITY_SERVICE))
+					.getMemoryClass() * 1024 * 1024 / 16;
+			this.bitmapPool = new BitmapPool(poolSize);
+		}
+
+		return this.bitmapPool;
+	}
+
+	/**
+	 * Logs the statistics of the pool returned by {@link #getBitmapPool()}, only in debug builds.
+	 */
+	public synchronized void logBitmapPoolStats() {
+		if (BuildConfig.DEBUG && this.bitmapPool != null) {
+			Log.d("NPuzzle", "Bitmap pool: " + this.bitmapPool.getStats());
+		}
+	}
+
+	/**
+	 * Returns the bank of puzzles graded by difficulty, from which new games of a given difficulty
+	 * take their puzzles.
+	 */
+	public synchronized PuzzleBank getPuzzleBank() {
+		if (this.puzzleBank == null) {
+			this.puzzleBank = new PuzzleBank(this.getContentResolver());
+		}
+
+		return this.puzzleBank;
+	}
+
+	/**
+	 * Returns the object that fills the bank returned by {@link #getPuzzleBank()} in the
+	 * background. It is stopped when the system runs low on memory.
+	 */
+	public synchronized PuzzleBankFiller getPuzzleBankFiller() {
+		if (this.puzzleBankFiller == null) {
+			this.puzzleBankFiller = new PuzzleBankFiller(this.getPuzzleBank(),
+					this.getHeuristicFactory());
+		}
+
+		return this.puzzleBankFiller;
+	}
+
+	/**
+	 * Returns the factory of the heuristics used to solve puzzles. Its pattern databases are stored
+	 * in the "pdb" directory of the internal storage of the application.
+	 */
+	public synchronized HeuristicFactory getHeuristicFactory() {
+		if (this.heuristicFactory == null) {
+			this.heuristicFactory = new HeuristicFactory(new File(this.getFilesDir(), "pdb"));
+		}
+
+		return this.heuristicFactory;
+	}
+
+	public void onLowMemory() {
+		super.onLowMemory();
+
+		synchronized (this) {
+			if (this.puzzleBankFiller != null) {
+				this.puzzleBankFiller.stop();
+			}
+
+			/*
+			 * The bitmaps in the pool are not used by anybody.
+			 */
+			if (this.bitmapPool != null) {
+				this.logBitmapPoolStats();
+				this.bitmapPool.clear();
+			}
+		}
+	}
+
 	public void onCreate() {
 //		// Test code for inserting games
 //		int numInsertions = 1000;
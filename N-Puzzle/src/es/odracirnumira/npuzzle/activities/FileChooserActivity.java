@@ -399,6 +399,8 @@ public class FileChooserActivity extends Activity {
 		 * Unregister broadcast receiver.
 		 */
 		this.unregisterReceiver(this.sdcardMountedBroadcastReceiver);
+
+		this.adapter.logCacheStats();
 	}
 
 	/*
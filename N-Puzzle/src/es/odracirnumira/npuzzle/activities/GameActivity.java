@@ -1,10 +1,12 @@
 package es.odracirnumira.npuzzle.activities;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
+import es.odracirnumira.npuzzle.bank.PuzzleBank;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContentProvider;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
 import es.odracirnumira.npuzzle.fragments.dialogs.GameFinishedDialogFragment;
@@ -12,19 +14,25 @@ import es.odracirnumira.npuzzle.fragments.dialogs.ResignGameDialogFragmet;
 import es.odracirnumira.npuzzle.fragments.dialogs.GameFinishedDialogFragment.IGameFinishedListener;
 import es.odracirnumira.npuzzle.fragments.dialogs.ResignGameDialogFragmet.IResignGameListener;
 import es.odracirnumira.npuzzle.model.FinishedNPuzzleGame;
+import es.odracirnumira.npuzzle.model.MoveCodec;
 import es.odracirnumira.npuzzle.model.NPuzzle;
 import es.odracirnumira.npuzzle.model.NPuzzleGame;
 import es.odracirnumira.npuzzle.model.NPuzzleGameStatistics;
 import es.odracirnumira.npuzzle.model.NPuzzle.ITileListener;
+import es.odracirnumira.npuzzle.model.PuzzleDifficulty;
 import es.odracirnumira.npuzzle.settings.NPuzzleSettings;
+import es.odracirnumira.npuzzle.solver.HintService;
+import es.odracirnumira.npuzzle.solver.HintService.IHintListener;
 import es.odracirnumira.npuzzle.tasks.DeleteGamesTask;
 import es.odracirnumira.npuzzle.tasks.SaveFinishedGameTask;
 import es.odracirnumira.npuzzle.tasks.SaveGameTask;
 import es.odracirnumira.npuzzle.tasks.UpdateGameTask;
 import es.odracirnumira.npuzzle.util.ImageUtilities;
 import es.odracirnumira.npuzzle.util.UIUtilities;
+import es.odracirnumira.npuzzle.view.ITileSource;
 import es.odracirnumira.npuzzle.view.NPuzzleView;
 import es.odracirnumira.npuzzle.view.NPuzzleView.INPuzzleViewListener;
+import es.odracirnumira.npuzzle.view.RegionDecoderTileSource;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.FragmentManager;
@@ -41,6 +49,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.SystemClock;
 import android.provider.MediaStore;
+import android.util.DisplayMetrics;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -152,6 +161,12 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 	 */
 	private ChangePuzzleImageTask changePuzzleImageTask;
 
+	/**
+	 * Task that is opening the tile source of the puzzle's image after the activity has been
+	 * recreated. Null if no source is being opened.
+	 */
+	private OpenTileSourceTask openTileSourceTask;
+
 	/**
 	 * The settings object.
 	 */
@@ -170,6 +185,13 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 	 */
 	private boolean finished;
 
+	/**
+	 * Service that computes the hints for {@link #game}. It is created the first time the user asks
+	 * for a hint, and from then on it keeps track of every move in the background, so further hints
+	 * are computed incrementally. Null if no hint has been requested yet.
+	 */
+	private HintService hintService;
+
 	/**
 	 * Request code used for selecting an image from the gallery.
 	 */
@@ -180,6 +202,21 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 	 */
 	private static final int REQUEST_CODE_PICK_IMAGE_FROM_FILE_SYSTEM = 1;
 
+	/**
+	 * Maximum width and height of the image of the puzzle when its tiles are drawn from a
+	 * {@link RegionDecoderTileSource}. In that case, the image is only used to compute the size of
+	 * the board, so a small version is enough. Images that are not bigger than this are not decoded
+	 * by regions.
+	 */
+	private static final int PREVIEW_IMAGE_MAX_SIZE = 512;
+
+	/**
+	 * Size of the cache of decoded regions of a {@link RegionDecoderTileSource}, in screens. Regions
+	 * may be decoded at up to twice the size they are drawn in each dimension, so four screens are
+	 * enough to hold all the visible tiles.
+	 */
+	private static final int TILE_CACHE_SCREENS = 4;
+
 	/**
 	 * Handler used to dispatch messages. Among others, dispatches the messages that update the
 	 * elapsed time view.
@@ -268,6 +305,16 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				this.nPuzzleView.setImage(this.game.puzzleImage);
 				this.nPuzzleView.setImageRotation(this.game.imageRotation);
 				this.showGameStartedScreen();
+
+				/*
+				 * The tile source of the image is not kept, so open it again.
+				 */
+				if (this.game.puzzleImagePath != null) {
+					this.openTileSourceTask = new OpenTileSourceTask();
+					this.openTileSourceTask.activity = this;
+					this.openTileSourceTask.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR,
+							this.game.puzzleImagePath);
+				}
 				return;
 			}
 		}
@@ -333,6 +380,14 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 	public void onResume() {
 		super.onResume();
 
+		/*
+		 * Refill the puzzle bank while the game is being played, so that the next game of a given
+		 * difficulty does not have to wait for its puzzle. Random games do not use the bank.
+		 */
+		if (this.settings.getPuzzleDifficulty() != null) {
+			NPuzzleApplication.getApplication().getPuzzleBankFiller().start();
+		}
+
 		/*
 		 * If there is an active game, post a message to start updating the elapsed time. The very
 		 * first time that the time starts getting updated is in the showGameStartedScreen() method.
@@ -356,6 +411,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 
 	public void onPause() {
 		super.onPause();
+		NPuzzleApplication.getApplication().getPuzzleBankFiller().stop();
 
 		if (this.game != null) {
 			/*
@@ -385,7 +441,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				 * Save the current game's state or save the game if it could not be previously
 				 * saved into the database.
 				 */
-				new UpdateGameTask().executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, this.game);
+				new UpdateGameTask(this.game).executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
 			}
 		}
 	}
@@ -402,6 +458,11 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 			this.nPuzzleView.unregisterPuzzle();
 		}
 
+		if (this.hintService != null) {
+			this.hintService.shutdown();
+			this.hintService = null;
+		}
+
 		/*
 		 * We need to nullify the activity of this task so it does not blow up if the task finishes
 		 * after the activity is destroyed.
@@ -409,6 +470,12 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		if (this.changePuzzleImageTask != null) {
 			this.changePuzzleImageTask.activity = null;
 		}
+
+		if (this.openTileSourceTask != null) {
+			this.openTileSourceTask.activity = null;
+		}
+
+		this.setTileSource(null);
 	}
 
 	/*
@@ -468,6 +535,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		 */
 		this.startNewGameTask = new StartNewGameTask();
 		this.startNewGameTask.activity = this;
+		this.startNewGameTask.difficulty = this.settings.getPuzzleDifficulty();
 		this.startNewGameTask.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, puzzleSize);
 	}
 
@@ -512,6 +580,74 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		}
 	}
 
+	/**
+	 * Opens a {@link RegionDecoderTileSource} for the image at <code>path</code>, so that its tiles
+	 * are decoded on demand instead of keeping the whole image in memory.
+	 * 
+	 * @param path
+	 *            the path of the image. May be null.
+	 * @return the tile source, or null if <code>path</code> is null, the image cannot be decoded by
+	 *         regions or it is so small that it is not worth it.
+	 */
+	private static RegionDecoderTileSource openTileSource(String path) {
+		if (path == null) {
+			return null;
+		}
+
+		DisplayMetrics metrics = NPuzzleApplication.getApplication().getResources()
+				.getDisplayMetrics();
+		long cacheSize = (long) TILE_CACHE_SCREENS * metrics.widthPixels * metrics.heightPixels * 4;
+
+		try {
+			RegionDecoderTileSource result = new RegionDecoderTileSource(path, cacheSize);
+
+			if (result.getWidth() <= PREVIEW_IMAGE_MAX_SIZE
+					&& result.getHeight() <= PREVIEW_IMAGE_MAX_SIZE) {
+				result.release();
+				return null;
+			}
+
+			return result;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes the image of the puzzle. If its tiles are drawn from a tile source, only a small
+	 * version of the image is decoded.
+	 * 
+	 * @param path
+	 *            the path of the image.
+	 * @param tileSource
+	 *            the tile source of the image, or null if there is none.
+	 * @return the image, or null if it could not be decoded.
+	 */
+	private static Bitmap decodePuzzleImage(String path, ITileSource tileSource) {
+		if (tileSource != null) {
+			return ImageUtilities
+					.secureDecode(path, PREVIEW_IMAGE_MAX_SIZE, PREVIEW_IMAGE_MAX_SIZE);
+		} else {
+			return ImageUtilities.secureDecode(path, NPuzzleView.IMAGE_MAX_WIDTH,
+					NPuzzleView.IMAGE_MAX_HEIGHT);
+		}
+	}
+
+	/**
+	 * Sets the source of the tiles of {@link #nPuzzleView} and releases the previous one.
+	 * 
+	 * @param tileSource
+	 *            the new tile source. May be null.
+	 */
+	private void setTileSource(ITileSource tileSource) {
+		ITileSource oldTileSource = this.nPuzzleView.getTileSource();
+		this.nPuzzleView.setTileSource(tileSource);
+
+		if (oldTileSource != null && oldTileSource != tileSource) {
+			oldTileSource.release();
+		}
+	}
+
 	/**
 	 * Shows the view that displays a "loading message". Call this method when you are creating or
 	 * loading the game. If the view is already visible, does nothing.
@@ -658,6 +794,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				.findItem(R.id.menuItemRandomImageFromSelectedLocation);
 		MenuItem rotateImageMenuItem = menu.findItem(R.id.menuItemRotateImage);
 		MenuItem resignMenuItem = menu.findItem(R.id.menuItemResignGame);
+		MenuItem hintMenuItem = menu.findItem(R.id.menuItemHint);
 
 		/*
 		 * If there is no active game, hide the "change image" menu.
@@ -665,6 +802,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		if (this.game == null) {
 			changeImageMenuItem.setVisible(false);
 			resignMenuItem.setVisible(false);
+			hintMenuItem.setVisible(false);
 			rotateImageMenuItem.setVisible(false);
 			randomImageFromSelectedLocationMenuItem.setVisible(false);
 		} else {
@@ -712,6 +850,9 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 			 */
 			if (this.finished) {
 				resignMenuItem.setVisible(false);
+				hintMenuItem.setVisible(false);
+			} else {
+				hintMenuItem.setVisible(true);
 			}
 		}
 
@@ -770,6 +911,14 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				return true;
 			}
 
+			case R.id.menuItemHint: {
+				if (this.game != null && !this.finished) {
+					this.requestHint();
+				}
+
+				return true;
+			}
+
 			case R.id.menuItemResignGame: {
 				FragmentManager manager = getFragmentManager();
 				ResignGameDialogFragmet dialog = new ResignGameDialogFragmet();
@@ -840,6 +989,16 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		 */
 		public GameActivity activity;
 
+		/**
+		 * The tile source of the image of the new game, or null if it has none.
+		 */
+		private RegionDecoderTileSource tileSource;
+
+		/**
+		 * The difficulty of the puzzle of the new game, or null for a random puzzle.
+		 */
+		private PuzzleDifficulty difficulty;
+
 		protected NPuzzleGame doInBackground(Integer... params) {
 			/*
 			 * Create the puzzle and load image.
@@ -847,12 +1006,25 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 			NPuzzleGame game = new NPuzzleGame();
 
 			/*
-			 * The ranom puzzle may be initially solved, so we check that it is not solved.
+			 * Puzzles of a given difficulty are taken from the puzzle bank, which is then refilled
+			 * in the background if the activity is still in the foreground. If there is none left,
+			 * a random puzzle is used instead.
 			 */
-			game.nPuzzle = NPuzzle.newRandomNPuzzleFromSideSize(params[0]);
+			if (this.difficulty != null && PuzzleBank.isBanked(params[0])) {
+				NPuzzleApplication application = NPuzzleApplication.getApplication();
+				game.nPuzzle = application.getPuzzleBank().take(params[0], this.difficulty);
+				application.getPuzzleBankFiller().refresh();
+			}
 
-			while (game.nPuzzle.isSolved()) {
+			if (game.nPuzzle == null) {
+				/*
+				 * The ranom puzzle may be initially solved, so we check that it is not solved.
+				 */
 				game.nPuzzle = NPuzzle.newRandomNPuzzleFromSideSize(params[0]);
+
+				while (game.nPuzzle.isSolved()) {
+					game.nPuzzle = NPuzzle.newRandomNPuzzleFromSideSize(params[0]);
+				}
 			}
 
 			game.initialState = game.nPuzzle.toString();
@@ -860,8 +1032,8 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 
 			try {
 				if (game.puzzleImagePath != null) {
-					game.puzzleImage = ImageUtilities.secureDecode(game.puzzleImagePath,
-							NPuzzleView.IMAGE_MAX_WIDTH, NPuzzleView.IMAGE_MAX_HEIGHT);
+					this.tileSource = openTileSource(game.puzzleImagePath);
+					game.puzzleImage = decodePuzzleImage(game.puzzleImagePath, this.tileSource);
 				} else {
 					game.puzzleImage = NPuzzleView.createDefaultImage(game.nPuzzle.getN());
 				}
@@ -891,7 +1063,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				/*
 				 * Try to save the game.
 				 */
-				new SaveGameTask().executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, result);
+				new SaveGameTask(result).executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
 
 				/*
 				 * Add listener to the puzzle so every move is registered by the activity.
@@ -906,6 +1078,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 					 * the puzzle's image could be loaded.
 					 */
 					this.activity.nPuzzleView.setImage(result.puzzleImage);
+					this.activity.setTileSource(this.tileSource);
 					this.activity.showGameStartedScreen();
 				} else {
 					/*
@@ -913,6 +1086,10 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 					 * "could not load puzzle image" view.
 					 */
 					this.activity.showCouldNotLoadPuzzleImageScreen();
+
+					if (this.tileSource != null) {
+						this.tileSource.release();
+					}
 				}
 
 				// Nullify the task in the activity to signal the game is not being loaded anymore
@@ -946,6 +1123,11 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 	private static class LoadGameTask extends AsyncTask<Long, Void, NPuzzleGame> {
 		private GameActivity activity;
 
+		/**
+		 * The tile source of the image of the game, or null if it has none.
+		 */
+		private RegionDecoderTileSource tileSource;
+
 		protected NPuzzleGame doInBackground(Long... params) {
 			try {
 				long gameID = params[0];
@@ -967,8 +1149,14 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 							.getColumnIndex(NPuzzleContract.Games.INITIAL_STATE));
 					long elapsedTime = cursor.getLong(cursor
 							.getColumnIndex(NPuzzleContract.Games.ELAPSED_TIME));
-					String movesS = cursor.getString(cursor
+					byte[] movesB = cursor.getBlob(cursor
 							.getColumnIndex(NPuzzleContract.Games.MOVES));
+					byte[] currentStateB = cursor.getBlob(cursor
+							.getColumnIndex(NPuzzleContract.Games.CURRENT_STATE));
+					int currentStateNumMovesIndex = cursor
+							.getColumnIndex(NPuzzleContract.Games.CURRENT_STATE_NUM_MOVES);
+					int currentStateNumMoves = cursor.isNull(currentStateNumMovesIndex) ? -1
+							: cursor.getInt(currentStateNumMovesIndex);
 					long startTime = cursor.getLong(cursor
 							.getColumnIndex(NPuzzleContract.Games.START_TIME));
 					String imagePath = cursor.getString(cursor
@@ -984,22 +1172,28 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 					NPuzzleGame game = new NPuzzleGame();
 					game.gameID = gameID;
 					List<Integer> initialState = NPuzzle.stringToSequenceOfIntegers(initialStateS);
-					game.nPuzzle = NPuzzle.newNPuzzleFromNAndConfiguration(initialState.size() - 1,
-							initialState);
-					game.moves = NPuzzle.stringToSequenceOfIntegers(movesS);
-					game.nPuzzle.moveTiles(game.moves);
+					game.moves = MoveCodec.decode(initialState, movesB);
+					game.savedMoves = game.moves.size();
+					game.nPuzzle = NPuzzleGame.restorePuzzle(initialState, movesB, currentStateB,
+							currentStateNumMoves);
 					game.initialState = initialStateS;
 					game.puzzleImagePath = imagePath;
 
 					try {
 						if (game.puzzleImagePath != null) {
-							game.puzzleImage = ImageUtilities.secureDecode(game.puzzleImagePath,
-									NPuzzleView.IMAGE_MAX_WIDTH, NPuzzleView.IMAGE_MAX_HEIGHT);
+							this.tileSource = openTileSource(game.puzzleImagePath);
+							game.puzzleImage = decodePuzzleImage(game.puzzleImagePath,
+									this.tileSource);
 
 							/*
 							 * If the specified image could not be loaded, load the default image.
 							 */
 							if (game.puzzleImage == null) {
+								if (this.tileSource != null) {
+									this.tileSource.release();
+									this.tileSource = null;
+								}
+
 								game.puzzleImage = NPuzzleView.createDefaultImage(game.nPuzzle
 										.getN());
 							}
@@ -1049,6 +1243,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 					 */
 					if (result.puzzleImage != null) {
 						this.activity.nPuzzleView.setImage(result.puzzleImage);
+						this.activity.setTileSource(this.tileSource);
 						this.activity.showGameStartedScreen();
 					} else {
 						/*
@@ -1056,6 +1251,10 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 						 * "could not load puzzle image" view.
 						 */
 						this.activity.showCouldNotLoadPuzzleImageScreen();
+
+						if (this.tileSource != null) {
+							this.tileSource.release();
+						}
 					}
 				} else {
 					/*
@@ -1190,6 +1389,12 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		 */
 		private String imagePath;
 
+		/**
+		 * The tile source of the image, or null if it has none. This is used to pass this value to
+		 * the {@link #onPostExecute(Bitmap)} method.
+		 */
+		private RegionDecoderTileSource tileSource;
+
 		protected void onPreExecute() {
 			/*
 			 * Show the progress dialog.
@@ -1208,6 +1413,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 			 * Remove the current's puzzle image and destroy it.
 			 */
 			this.activity.nPuzzleView.setImage(null);
+			this.activity.setTileSource(null);
 
 			if (this.activity.game.puzzleImage != null) {
 				this.activity.game.puzzleImage.recycle();
@@ -1240,8 +1446,8 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				 * Load the image.
 				 */
 				if (this.imagePath != null) {
-					result = ImageUtilities.secureDecode(this.imagePath,
-							NPuzzleView.IMAGE_MAX_WIDTH, NPuzzleView.IMAGE_MAX_HEIGHT);
+					this.tileSource = openTileSource(this.imagePath);
+					result = decodePuzzleImage(this.imagePath, this.tileSource);
 				}
 			}
 
@@ -1258,6 +1464,7 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 					this.activity.game.puzzleImagePath = this.imagePath;
 					this.activity.game.puzzleImage = result;
 					this.activity.nPuzzleView.setImage(result);
+					this.activity.setTileSource(this.tileSource);
 
 					/*
 					 * If this is the default image, set rotation to 0.
@@ -1269,6 +1476,10 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				} else {
 					Toast.makeText(this.activity, R.string.could_not_load_image, Toast.LENGTH_SHORT)
 							.show();
+
+					if (this.tileSource != null) {
+						this.tileSource.release();
+					}
 				}
 
 				// Dismiss dialog
@@ -1284,6 +1495,10 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		}
 
 		protected void onCancelled(Bitmap result) {
+			if (this.tileSource != null) {
+				this.tileSource.release();
+			}
+
 			if (this.activity != null) {
 				// Nullify the task in the activity to signal we are not changing the image anymore
 				this.activity.changePuzzleImageTask = null;
@@ -1294,6 +1509,52 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		}
 	}
 
+	/**
+	 * AsyncTask that opens the {@link RegionDecoderTileSource} of the puzzle's image when the
+	 * activity is recreated, since tile sources do not survive configuration changes. Until it
+	 * completes, the tiles are drawn from the small version of the image.
+	 * <p>
+	 * The input parameter of this task is the path of the image. When it completes, the source is
+	 * set into the {@link NPuzzleView} if the image of the game has not changed in the meantime.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static class OpenTileSourceTask extends
+			AsyncTask<String, Void, RegionDecoderTileSource> {
+		/**
+		 * The hosting {@link GameActivity}.
+		 */
+		private GameActivity activity;
+
+		/**
+		 * The path of the image.
+		 */
+		private String imagePath;
+
+		protected RegionDecoderTileSource doInBackground(String... params) {
+			this.imagePath = params[0];
+			return openTileSource(this.imagePath);
+		}
+
+		protected void onPostExecute(RegionDecoderTileSource result) {
+			if (this.activity != null) {
+				this.activity.openTileSourceTask = null;
+			}
+
+			if (result == null) {
+				return;
+			}
+
+			if (this.activity != null && this.activity.game != null
+					&& this.imagePath.equals(this.activity.game.puzzleImagePath)) {
+				this.activity.setTileSource(result);
+			} else {
+				result.release();
+			}
+		}
+	}
+
 	/**
 	 * 
 	 * @see es.odracirnumira.npuzzle.model.NPuzzle.ITileListener#tileMoved(int, int, int)
@@ -1306,6 +1567,21 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 		this.refreshNumMovesTextView();
 	}
 
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.model.NPuzzle.ITileListener#tilesMoved(int[], int[], int[])
+	 */
+	public void tilesMoved(int[] tiles, int[] oldPositions, int[] newPositions) {
+		/*
+		 * Each tile counts as a move, but the label is refreshed only once.
+		 */
+		for (int tile : tiles) {
+			this.game.moves.add(tile);
+		}
+
+		this.refreshNumMovesTextView();
+	}
+
 	/**
 	 * Refreshes the view that displays the number of moves so far. It uses {@link #game} to extract
 	 * the number of moves.
@@ -1324,6 +1600,65 @@ public class GameActivity extends Activity implements ITileListener, IResignGame
 				.timeToHourMinSecChrono(this.game.elapsedTime / 1000));
 	}
 
+	/**
+	 * Asks {@link #hintService} for a hint, creating it if necessary, and shows the hint in a toast
+	 * once it is ready. The hint is computed in a background thread within a fixed time budget, so
+	 * it is shown almost immediately even for big puzzles, in which case it may not be optimal.
+	 */
+	private void requestHint() {
+		if (this.hintService == null) {
+			this.hintService = new HintService(this.game.nPuzzle, NPuzzleApplication
+					.getApplication().getHeuristicFactory()
+					.createHeuristic(this.game.nPuzzle.getSideNumTiles()));
+		}
+
+		this.hintService.requestHint(new IHintListener() {
+			public void hintReady(final int tile, boolean optimal) {
+				runOnUiThread(new Runnable() {
+					public void run() {
+						showHint(tile);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Shows a toast telling the user to move <code>tile</code>. If the tile cannot be moved (for
+	 * instance, because the user has moved another tile since the hint was requested), nothing is
+	 * shown.
+	 */
+	private void showHint(int tile) {
+		if (this.game == null || this.finished || tile == -1 || isFinishing()) {
+			return;
+		}
+
+		NPuzzle.Direction direction = this.game.nPuzzle.moveDirection(tile);
+
+		if (direction == null) {
+			return;
+		}
+
+		int messageID;
+
+		switch (direction) {
+			case UP:
+				messageID = R.string.hint_move_tile_up;
+				break;
+			case DOWN:
+				messageID = R.string.hint_move_tile_down;
+				break;
+			case LEFT:
+				messageID = R.string.hint_move_tile_left;
+				break;
+			default:
+				messageID = R.string.hint_move_tile_right;
+				break;
+		}
+
+		Toast.makeText(this, getString(messageID, tile), Toast.LENGTH_SHORT).show();
+	}
+
 	/**
 	 * Changes the image of this game, and updates the view and the {@link #game} object. It also
 	 * refreshes the options menu according to the image.
@@ -1,5 +1,6 @@
 package es.odracirnumira.npuzzle.activities;
 
+import java.io.File;
 import java.text.DateFormat;
 import java.util.Date;
 import java.util.HashSet;
@@ -9,17 +10,22 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import es.odracirnumira.npuzzle.BuildConfig;
+import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
 import es.odracirnumira.npuzzle.fragments.dialogs.DeleteSelectedGamesDialogFragment;
 import es.odracirnumira.npuzzle.fragments.dialogs.DeleteSelectedGamesDialogFragment.IDeleteGameListener;
+import es.odracirnumira.npuzzle.model.MoveCodec;
 import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.NPuzzleGame;
 import es.odracirnumira.npuzzle.tasks.DeleteGamesTask;
 import es.odracirnumira.npuzzle.util.ImageUtilities;
 import es.odracirnumira.npuzzle.util.UIUtilities;
-import es.odracirnumira.npuzzle.util.cache.CacheUtils;
+import es.odracirnumira.npuzzle.util.cache.CacheStats;
+import es.odracirnumira.npuzzle.util.cache.ConcurrentMemoryLimitedCache;
+import es.odracirnumira.npuzzle.util.cache.DiskBitmapCache;
 import es.odracirnumira.npuzzle.util.cache.ICache;
-import es.odracirnumira.npuzzle.util.cache.MemoryLimitedCache;
 import es.odracirnumira.npuzzle.view.NPuzzleView;
 import android.app.Activity;
 import android.app.ActivityManager;
@@ -392,20 +398,34 @@ public class LoadGameActivity extends Activity implements LoaderCallbacks<Cursor
 			int cacheSize = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
 					.getMemoryClass() * 1024 * 1024 / 8;
 
-			this.cache = CacheUtils.getSynchronizedCache(new MemoryLimitedCache<Long, GameData>(
-					cacheSize) {
+			/*
+			 * The UI thread reads the cache while the loader thread fills it, so use a concurrent
+			 * cache instead of a synchronized one.
+			 */
+			this.cache = new ConcurrentMemoryLimitedCache<Long, GameData>(cacheSize) {
 				public long getSize(GameData value) {
 					return (value.image != null ? value.image.getByteCount() : 0)
 							+ value.puzzle.getByteCount() + 4 + 4;
 
 				}
 
-				protected void entryRemoved(boolean eviceted, Long key, GameData value) {
-					if (value.image != null) {
+				protected void entryRemoved(boolean evicted, Long key, GameData value) {
+					/*
+					 * Eviction only approximates LRU, so an evicted image may still be displayed.
+					 * It is left to the garbage collector instead of being recycled or pooled.
+					 */
+					if (value.image != null && !evicted) {
 						value.image.recycle();
 					}
 				}
-			});
+			};
+
+			/*
+			 * Statistics are only recorded in debug builds, and logged by shutdownAdapter().
+			 */
+			if (BuildConfig.DEBUG) {
+				this.cache.setStatsEnabled(true);
+			}
 		}
 
 		/*
@@ -474,13 +494,20 @@ public class LoadGameActivity extends Activity implements LoaderCallbacks<Cursor
 							.getColumnIndex(NPuzzleContract.Games.IMAGE_PATH));
 					String initialState = cursor.getString(cursor
 							.getColumnIndex(NPuzzleContract.Games.INITIAL_STATE));
-					String moves = cursor.getString(cursor
+					byte[] moves = cursor.getBlob(cursor
 							.getColumnIndex(NPuzzleContract.Games.MOVES));
+					byte[] currentState = cursor.getBlob(cursor
+							.getColumnIndex(NPuzzleContract.Games.CURRENT_STATE));
+					int currentStateNumMovesIndex = cursor
+							.getColumnIndex(NPuzzleContract.Games.CURRENT_STATE_NUM_MOVES);
+					int currentStateNumMoves = cursor.isNull(currentStateNumMovesIndex) ? -1
+							: cursor.getInt(currentStateNumMovesIndex);
 
 					synchronized (this.gamesBeingLoadedLock) {
 						if (!this.gamesBeingLoaded.contains(gameID)) {
 							this.gamesBeingLoaded.add(gameID);
-							this.loadGameData(gameID, imagePath, initialState, moves);
+							this.loadGameData(gameID, imagePath, initialState, moves, currentState,
+									currentStateNumMoves);
 						}
 					}
 				}
@@ -527,6 +554,14 @@ public class LoadGameActivity extends Activity implements LoaderCallbacks<Cursor
 		public void shutdownAdapter() {
 			this.puzzleLoaderExecutorService.shutdownNow();
 
+			CacheStats stats = this.cache.getStats();
+
+			if (stats != null) {
+				Log.d("NPuzzle", "Game data cache: " + stats);
+			}
+
+			NPuzzleApplication.getApplication().logBitmapPoolStats();
+
 			this.cache.clear();
 		}
 
@@ -597,46 +632,70 @@ public class LoadGameActivity extends Activity implements LoaderCallbacks<Cursor
 		 * @param initialStateS
 		 *            the initial state of the puzzle, as returned by the content provider (
 		 *            {@link NPuzzleContract.Games}).
-		 * @param movesS
+		 * @param movesB
 		 *            the set of moves applied by the used so far, as returned by the content
 		 *            provider ({@link NPuzzleContract.Games}).
+		 * @param currentStateB
+		 *            the snapshot of the current state of the puzzle, as returned by the content
+		 *            provider ({@link NPuzzleContract.Games}). May be null.
+		 * @param currentStateNumMoves
+		 *            the number of moves of the game when the snapshot was taken, or -1 if it is
+		 *            not known.
 		 */
 		private void loadGameData(final long gameID, final String imagePath,
-				final String initialStateS, final String movesS) {
+				final String initialStateS, final byte[] movesB, final byte[] currentStateB,
+				final int currentStateNumMoves) {
 			try {
 				this.puzzleLoaderExecutorService.execute(new Runnable() {
 					public void run() {
 						try {
+							long startTime = System.nanoTime();
+
 							/*
-							 * Build the NPuzzle and apply the sequence of moves that the user has
-							 * performed so far.
+							 * Build the NPuzzle from the snapshot of its current state, or apply
+							 * the sequence of moves that the user has performed so far if there is
+							 * none.
 							 */
 							List<Integer> initialState = NPuzzle
 									.stringToSequenceOfIntegers(initialStateS);
-							List<Integer> moves = NPuzzle.stringToSequenceOfIntegers(movesS);
-							NPuzzle puzzle = NPuzzle.newNPuzzleFromNAndConfiguration(
-									initialState.size() - 1, initialState);
-							puzzle.moveTiles(moves);
+							NPuzzle puzzle = NPuzzleGame.restorePuzzle(initialState, movesB,
+									currentStateB, currentStateNumMoves);
 
 							/*
-							 * Now load the image if it is non-null.
+							 * Now load the image. First look for its thumbnail on disk, and only
+							 * if it is not there, compute it from the original image.
 							 */
-							Bitmap image = null;
-
-							float density = getResources().getDisplayMetrics().density;
+							int thumbnailSize = (int) (100 * getResources().getDisplayMetrics()
+									.density);
+							String thumbnailKey = getThumbnailKey(gameID, imagePath, puzzle.getN(),
+									thumbnailSize);
+							DiskBitmapCache thumbnailCache = NPuzzleApplication.getApplication()
+									.getThumbnailCache();
+							Bitmap image = thumbnailCache.get(thumbnailKey);
+
+							if (image == null) {
+								if (imagePath != null) {
+									image = ImageUtilities.secureDecode(imagePath, thumbnailSize,
+											thumbnailSize);
+								} else {
+									/*
+									 * Otherwise, create the default image. We want to keep this
+									 * image in the cache so it does not get recreated every time an
+									 * item is displayed.
+									 */
+									image = ImageUtilities.resampleBitmap(
+											NPuzzleView.createDefaultImage(puzzle.getN()),
+											thumbnailSize, thumbnailSize);
+								}
 
-							if (imagePath != null) {
-								image = ImageUtilities.secureDecode(imagePath,
-										(int) (100 * density), (int) (100 * density));
-							} else {
 								/*
-								 * Otherwise, create the default image. We want to keep this image
-								 * in the cache so it does not get recreated every time an item is
-								 * displayed.
+								 * Store the thumbnail on disk, replacing those computed for
+								 * previous versions of the game.
 								 */
-								image = ImageUtilities.resampleBitmap(
-										NPuzzleView.createDefaultImage(puzzle.getN()),
-										(int) (100 * density), (int) (100 * density));
+								if (image != null) {
+									thumbnailCache.removeAll(gameID + "_");
+									thumbnailCache.put(thumbnailKey, image);
+								}
 							}
 
 							/*
@@ -645,7 +704,14 @@ public class LoadGameActivity extends Activity implements LoaderCallbacks<Cursor
 							GameData gameData = new GameData();
 							gameData.puzzle = puzzle;
 							gameData.image = image;
-							gameData.numMoves = moves.size();
+							gameData.numMoves = MoveCodec.getNumMoves(movesB);
+
+							CacheStats stats = cache.getStats();
+
+							if (stats != null) {
+								stats.recordLoad(System.nanoTime() - startTime);
+							}
+
 							cache.put(gameID, gameData);
 
 							/*
@@ -670,6 +736,36 @@ public class LoadGameActivity extends Activity implements LoaderCallbacks<Cursor
 
 			}
 		}
+
+		/**
+		 * Returns the key of the thumbnail of a game in the thumbnail cache (see
+		 * {@link NPuzzleApplication#getThumbnailCache()}). The key changes whenever the thumbnail
+		 * would change: if the game uses another image, if the image file is modified, or if the
+		 * size of the thumbnail changes.
+		 * 
+		 * @param gameID
+		 *            the ID of the game.
+		 * @param imagePath
+		 *            the path of the image of the puzzle. Null if the default image is used.
+		 * @param n
+		 *            the N of the puzzle. Only used for the default image, which depends on it.
+		 * @param thumbnailSize
+		 *            the maximum width and height of the thumbnail.
+		 * @return the key of the thumbnail.
+		 */
+		private String getThumbnailKey(long gameID, String imagePath, int n, int thumbnailSize) {
+			String version;
+
+			if (imagePath != null) {
+				File imageFile = new File(imagePath);
+				version = imagePath + ":" + imageFile.lastModified() + ":" + imageFile.length();
+			} else {
+				version = "default:" + n;
+			}
+
+			version += ":" + thumbnailSize;
+			return gameID + "_" + Integer.toHexString(version.hashCode());
+		}
 	}
 
 	/**
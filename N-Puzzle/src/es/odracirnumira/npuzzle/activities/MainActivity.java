@@ -1,8 +1,10 @@
 package es.odracirnumira.npuzzle.activities;
 
+import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
 import es.odracirnumira.npuzzle.fragments.dialogs.NewGameDialogFragment;
 import es.odracirnumira.npuzzle.fragments.dialogs.NewCustomGameDialogFragment;
+import es.odracirnumira.npuzzle.settings.NPuzzleSettings;
 
 import android.app.Activity;
 import android.app.FragmentManager;
@@ -60,6 +62,33 @@ public class MainActivity extends Activity implements
 		this.setupSettingsButton();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.app.Activity#onResume()
+	 */
+	public void onResume() {
+		super.onResume();
+
+		/*
+		 * Fill the puzzle bank in the background, so that new games of a given difficulty do not
+		 * have to wait for their puzzles. Random games do not use the bank.
+		 */
+		if (new NPuzzleSettings(this).getPuzzleDifficulty() != null) {
+			NPuzzleApplication.getApplication().getPuzzleBankFiller().start();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.app.Activity#onPause()
+	 */
+	public void onPause() {
+		super.onPause();
+		NPuzzleApplication.getApplication().getPuzzleBankFiller().stop();
+	}
+
 	/**
 	 * Sets up the load game button.
 	 */
@@ -12,13 +12,14 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import es.odracirnumira.npuzzle.BuildConfig;
 import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
 import es.odracirnumira.npuzzle.util.ImageUtilities;
 import es.odracirnumira.npuzzle.util.MathUtilities;
 import es.odracirnumira.npuzzle.util.UIUtilities;
-import es.odracirnumira.npuzzle.util.cache.BitmapMemoryLimitedCache;
-import es.odracirnumira.npuzzle.util.cache.CacheUtils;
+import es.odracirnumira.npuzzle.util.cache.CacheStats;
+import es.odracirnumira.npuzzle.util.cache.ConcurrentMemoryLimitedCache;
 import es.odracirnumira.npuzzle.util.cache.ICache;
 
 import android.app.ActivityManager;
@@ -31,6 +32,7 @@ import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Message;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -203,8 +205,18 @@ public class FileListChooserAdapter extends BaseAdapter {
 		int cacheSize = ((ActivityManager) NPuzzleApplication.getApplication().getSystemService(
 				Context.ACTIVITY_SERVICE)).getMemoryClass() * 1024 * 1024 / 8;
 
-		this.thumbnailsCache = CacheUtils.getSynchronizedCache(new BitmapMemoryLimitedCache<File>(
-				cacheSize));
+		this.thumbnailsCache = new ConcurrentMemoryLimitedCache<File, Bitmap>(cacheSize) {
+			public long getSize(Bitmap value) {
+				return value.getByteCount();
+			}
+		};
+
+		/*
+		 * Statistics are only recorded in debug builds, and logged by logCacheStats().
+		 */
+		if (BuildConfig.DEBUG) {
+			this.thumbnailsCache.setStatsEnabled(true);
+		}
 		this.fileIcons = new HashMap<String, Drawable>();
 		this.thumbnailsBeingLoaded = new HashSet<File>();
 	}
@@ -480,6 +492,20 @@ public class FileListChooserAdapter extends BaseAdapter {
 		return convertView;
 	}
 
+	/**
+	 * Logs the statistics of the cache of thumbnails and of the bitmap pool, if they are enabled
+	 * (only in debug builds).
+	 */
+	public void logCacheStats() {
+		CacheStats stats = this.thumbnailsCache.getStats();
+
+		if (stats != null) {
+			Log.d("NPuzzle", "Thumbnail cache: " + stats);
+		}
+
+		NPuzzleApplication.getApplication().logBitmapPoolStats();
+	}
+
 	/**
 	 * Sets if the view of this adapter is scrolling. This flag should be used so the adapter knows
 	 * when it can compute the files' thumbnails.
@@ -528,10 +554,17 @@ public class FileListChooserAdapter extends BaseAdapter {
 		try {
 			this.thumbnailsExecutorService.execute(new Runnable() {
 				public void run() {
+					long startTime = System.nanoTime();
 					Bitmap scaledBitmap = ImageUtilities.secureDecode(f.getAbsolutePath(), width,
 							height);
 
 					if (scaledBitmap != null) {
+						CacheStats stats = thumbnailsCache.getStats();
+
+						if (stats != null) {
+							stats.recordLoad(System.nanoTime() - startTime);
+						}
+
 						thumbnailsCache.put(f, (scaledBitmap));
 						thumbnailLoadedHandler.sendEmptyMessage(0);
 					}
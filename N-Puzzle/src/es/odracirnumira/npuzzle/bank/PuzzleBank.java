@@ -0,0 +1,206 @@
+package es.odracirnumira.npuzzle.bank;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
+import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.PackedNPuzzleState;
+import es.odracirnumira.npuzzle.model.PuzzleDifficulty;
+
+/**
+ * Store of puzzles that have been generated and graded in advance (see
+ * {@link NPuzzleContract.PuzzleBank}), so that a new game of a given difficulty can be started
+ * without generating and solving puzzles until one of that difficulty shows up.
+ * <p>
+ * Puzzles are kept in buckets, one per side size in {@link #SIDE_SIZES} and difficulty. Each
+ * bucket holds up to {@link #CAPACITY} puzzles, and is filled by a {@link PuzzleBankFiller}.
+ * Taking a puzzle ({@link #take(int, PuzzleDifficulty)}) is an indexed lookup followed by the
+ * deletion of its row, so that the same puzzle is never handed out twice.
+ * <p>
+ * The methods of this class access the content provider, so they should not be called from the UI
+ * thread.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class PuzzleBank {
+	/**
+	 * The side sizes of the puzzles stored in the bank.
+	 */
+	public static final int[] SIDE_SIZES = { 3, 4, 5 };
+
+	/**
+	 * Maximum number of puzzles stored for each side size and difficulty.
+	 */
+	public static final int CAPACITY = 10;
+
+	/**
+	 * The resolver used to access the content provider.
+	 */
+	private ContentResolver contentResolver;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param contentResolver
+	 *            the resolver used to access the content provider.
+	 */
+	public PuzzleBank(ContentResolver contentResolver) {
+		if (contentResolver == null) {
+			throw new IllegalArgumentException("null content resolver");
+		}
+
+		this.contentResolver = contentResolver;
+	}
+
+	/**
+	 * Returns true if puzzles whose side has <code>sideSize</code> tiles are stored in the bank.
+	 */
+	public static boolean isBanked(int sideSize) {
+		for (int bankedSideSize : SIDE_SIZES) {
+			if (bankedSideSize == sideSize) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Removes a puzzle from the bank and returns it.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the puzzle.
+	 * @param difficulty
+	 *            the difficulty of the puzzle.
+	 * @return the puzzle, or null if there are no puzzles of that size and difficulty in the bank.
+	 */
+	public NPuzzle take(int sideSize, PuzzleDifficulty difficulty) {
+		if (difficulty == null) {
+			throw new IllegalArgumentException("null difficulty");
+		}
+
+		while (true) {
+			long id;
+			byte[] state;
+			Cursor cursor = this.contentResolver.query(NPuzzleContract.PuzzleBank.CONTENT_URI,
+					new String[] { NPuzzleContract.PuzzleBank._ID,
+							NPuzzleContract.PuzzleBank.STATE }, getBucketSelection(),
+					getBucketSelectionArgs(sideSize, difficulty), NPuzzleContract.PuzzleBank._ID
+							+ " LIMIT 1");
+
+			if (cursor == null) {
+				return null;
+			}
+
+			try {
+				if (!cursor.moveToFirst()) {
+					return null;
+				}
+
+				id = cursor.getLong(0);
+				state = cursor.getBlob(1);
+			} finally {
+				cursor.close();
+			}
+
+			/*
+			 * If the row is no longer there, someone else took the puzzle first.
+			 */
+			if (this.contentResolver.delete(ContentUris.withAppendedId(
+					NPuzzleContract.PuzzleBank.CONTENT_URI, id), null, null) == 0) {
+				continue;
+			}
+
+			try {
+				return PackedNPuzzleState.fromByteArray(state).toNPuzzle();
+			} catch (IllegalArgumentException e) {
+				/*
+				 * The row has already been deleted, so just try the next one.
+				 */
+				Log.e("NPuzzle", "Invalid puzzle in the puzzle bank", e);
+			}
+		}
+	}
+
+	/**
+	 * Adds a puzzle to the bank. Its difficulty is computed from <code>solutionLength</code>.
+	 * 
+	 * @param puzzle
+	 *            the puzzle.
+	 * @param solutionLength
+	 *            the number of moves needed to solve the puzzle.
+	 * @param optimal
+	 *            true if <code>solutionLength</code> is the length of an optimal solution, and
+	 *            false if it is a lower bound.
+	 * @return the difficulty of the puzzle, or null if it is too easy to be stored.
+	 */
+	public PuzzleDifficulty put(NPuzzle puzzle, int solutionLength, boolean optimal) {
+		if (puzzle == null) {
+			throw new IllegalArgumentException("null puzzle");
+		}
+
+		int sideSize = puzzle.getSideNumTiles();
+		PuzzleDifficulty difficulty = PuzzleDifficulty.fromSolutionLength(sideSize, solutionLength);
+
+		if (difficulty == null) {
+			return null;
+		}
+
+		ContentValues values = new ContentValues();
+		values.put(NPuzzleContract.PuzzleBank.SIDE_SIZE, sideSize);
+		values.put(NPuzzleContract.PuzzleBank.DIFFICULTY, difficulty.ordinal());
+		values.put(NPuzzleContract.PuzzleBank.SOLUTION_LENGTH, solutionLength);
+		values.put(NPuzzleContract.PuzzleBank.OPTIMAL, optimal ? 1 : 0);
+		values.put(NPuzzleContract.PuzzleBank.STATE, PackedNPuzzleState.fromNPuzzle(puzzle)
+				.toByteArray());
+		this.contentResolver.insert(NPuzzleContract.PuzzleBank.CONTENT_URI, values);
+		return difficulty;
+	}
+
+	/**
+	 * Returns the number of puzzles of a size and difficulty stored in the bank.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the puzzles.
+	 * @param difficulty
+	 *            the difficulty of the puzzles.
+	 */
+	public int count(int sideSize, PuzzleDifficulty difficulty) {
+		if (difficulty == null) {
+			throw new IllegalArgumentException("null difficulty");
+		}
+
+		Cursor cursor = this.contentResolver.query(NPuzzleContract.PuzzleBank.CONTENT_URI,
+				new String[] { "COUNT(*)" }, getBucketSelection(), getBucketSelectionArgs(
+						sideSize, difficulty), null);
+
+		if (cursor == null) {
+			return 0;
+		}
+
+		try {
+			return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Returns the selection of the puzzles of a bucket.
+	 */
+	private static String getBucketSelection() {
+		return NPuzzleContract.PuzzleBank.SIDE_SIZE + "=? AND "
+				+ NPuzzleContract.PuzzleBank.DIFFICULTY + "=?";
+	}
+
+	/**
+	 * Returns the arguments of {@link #getBucketSelection()} for a side size and difficulty.
+	 */
+	private static String[] getBucketSelectionArgs(int sideSize, PuzzleDifficulty difficulty) {
+		return new String[] { String.valueOf(sideSize), String.valueOf(difficulty.ordinal()) };
+	}
+}
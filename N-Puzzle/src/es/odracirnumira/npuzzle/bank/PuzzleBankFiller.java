@@ -0,0 +1,446 @@
+package es.odracirnumira.npuzzle.bank;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Process;
+import android.util.Log;
+import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.PuzzleDifficulty;
+import es.odracirnumira.npuzzle.solver.HeuristicFactory;
+import es.odracirnumira.npuzzle.solver.NPuzzleSolver;
+import es.odracirnumira.npuzzle.solver.SolverResult;
+
+/**
+ * Fills a {@link PuzzleBank} in the background. Puzzles are generated, solved with an
+ * {@link NPuzzleSolver} to find out how many moves they need, and stored in the bucket of their
+ * difficulty, until every bucket is full.
+ * <p>
+ * The work is done by one thread less than the number of available processors (but at least one),
+ * at background priority, so that the UI thread always has a core for itself. Each thread works on
+ * the bucket with fewest puzzles. Puzzles of {@link PuzzleDifficulty#HARD} difficulty are random
+ * configurations, and easier ones are generated by walking away from the solved configuration a
+ * number of random moves, since random configurations are rarely easy. Each puzzle has a time
+ * budget of {@link #MAX_SOLVE_TIME}: if it is not solved within it, the lower bound found by the
+ * solver is used as its number of moves. This is always the case for big puzzles, whose difficulty
+ * may then be underestimated. The solvers take their heuristics from a {@link HeuristicFactory},
+ * so small puzzles are graded with pattern databases once they are available.
+ * <p>
+ * If {@link #MAX_MISSES} puzzles in a row do not fit in the bucket they were generated for, the
+ * bucket is left alone until puzzles are taken from it. This is remembered across calls to
+ * {@link #start()}, so buckets that are hard to fill do not take the processors every time the
+ * filler is started.
+ * <p>
+ * The threads stop when the bank is full or {@link #stop()} is called. The filler should only run
+ * while the application is in the foreground and new games take their puzzles from the bank.
+ * {@link #refresh()} should be called whenever puzzles are taken from the bank.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class PuzzleBankFiller {
+	/**
+	 * Time budget for solving a puzzle, in milliseconds.
+	 */
+	public static final long MAX_SOLVE_TIME = 10000;
+
+	/**
+	 * Number of consecutive puzzles that can miss a bucket before it is left alone.
+	 */
+	public static final int MAX_MISSES = 16;
+
+	/**
+	 * Factor applied to the maximum length of a difficulty to get the maximum length of the random
+	 * walks that generate puzzles of that difficulty. Random walks go back over their steps, so
+	 * they are usually longer than the optimal solution of the puzzle they generate.
+	 */
+	private static final float WALK_LENGTH_FACTOR = 1.5f;
+
+	/**
+	 * State of a bucket of the bank.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static class Bucket {
+		int sideSize;
+		PuzzleDifficulty difficulty;
+
+		/**
+		 * The number of puzzles stored in the bucket.
+		 */
+		int count;
+
+		/**
+		 * The number of threads that are generating puzzles for the bucket.
+		 */
+		int pending;
+
+		/**
+		 * The number of consecutive puzzles generated for the bucket that did not fit in it.
+		 */
+		int misses;
+	}
+
+	/**
+	 * The bank to fill.
+	 */
+	private PuzzleBank bank;
+
+	/**
+	 * The factory that creates the heuristics used to grade the puzzles.
+	 */
+	private HeuristicFactory heuristicFactory;
+
+	/**
+	 * The number of threads that fill the bank.
+	 */
+	private int numWorkers;
+
+	/**
+	 * The executor where the threads run, or null if the filler is not running.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * The number of threads that are running in {@link #executor}.
+	 */
+	private int activeWorkers;
+
+	/**
+	 * The state of the buckets, or null if it has to be read from the bank.
+	 */
+	private Bucket[] buckets;
+
+	/**
+	 * Whether the number of puzzles in {@link #buckets} has to be read again from the bank.
+	 */
+	private boolean countsStale;
+
+	/**
+	 * The solvers that are being used by the threads, so that they can be cancelled.
+	 */
+	private ArrayList<NPuzzleSolver> solvers;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param bank
+	 *            the bank to fill.
+	 * @param heuristicFactory
+	 *            the factory that creates the heuristics used to grade the puzzles.
+	 */
+	public PuzzleBankFiller(PuzzleBank bank, HeuristicFactory heuristicFactory) {
+		if (bank == null || heuristicFactory == null) {
+			throw new IllegalArgumentException("null bank or heuristic factory");
+		}
+
+		this.bank = bank;
+		this.heuristicFactory = heuristicFactory;
+		this.numWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		this.solvers = new ArrayList<NPuzzleSolver>();
+	}
+
+	/**
+	 * Starts filling the bank, if it is not full. The number of puzzles in the bank is read again,
+	 * so that puzzles taken from it since the last call are replaced. Can be called from any
+	 * thread.
+	 */
+	public synchronized void start() {
+		this.countsStale = true;
+
+		if (this.executor == null) {
+			this.executor = Executors.newFixedThreadPool(this.numWorkers, new ThreadFactory() {
+				public Thread newThread(final Runnable r) {
+					return new Thread(new Runnable() {
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "PuzzleBankFiller");
+				}
+			});
+		}
+
+		while (this.activeWorkers < this.numWorkers) {
+			final ExecutorService workerExecutor = this.executor;
+			this.activeWorkers++;
+			this.executor.execute(new Runnable() {
+				public void run() {
+					work(workerExecutor);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops filling the bank. The puzzles being solved are discarded. Can be called from any
+	 * thread.
+	 */
+	public synchronized void stop() {
+		if (this.executor == null) {
+			return;
+		}
+
+		this.executor.shutdownNow();
+		this.executor = null;
+		this.activeWorkers = 0;
+
+		for (NPuzzleSolver solver : this.solvers) {
+			solver.cancel();
+		}
+	}
+
+	/**
+	 * Reads the number of puzzles in the bank again if the bank is being filled, so that puzzles
+	 * taken from it are replaced. Does nothing otherwise. Can be called from any thread.
+	 */
+	public synchronized void refresh() {
+		if (this.executor != null) {
+			this.start();
+		}
+	}
+
+	/**
+	 * Returns true if the bank is being filled.
+	 */
+	public synchronized boolean isRunning() {
+		return this.executor != null;
+	}
+
+	/**
+	 * The loop run by each thread. It stops when there are no buckets left to fill or
+	 * <code>workerExecutor</code> is no longer the executor of the filler.
+	 */
+	private void work(ExecutorService workerExecutor) {
+		NPuzzleSolver solver = new NPuzzleSolver();
+		solver.setMaxTime(MAX_SOLVE_TIME);
+		solver.setHeuristicFactory(this.heuristicFactory);
+		Random random = new Random();
+
+		synchronized (this) {
+			this.solvers.add(solver);
+		}
+
+		try {
+			Bucket bucket;
+
+			while ((bucket = this.reserveBucket(workerExecutor)) != null) {
+				NPuzzle puzzle = generatePuzzle(bucket.sideSize, bucket.difficulty, random);
+				SolverResult result = solver.solve(puzzle);
+				PuzzleDifficulty difficulty = null;
+
+				if (result.status == SolverResult.Status.SOLVED
+						|| result.status == SolverResult.Status.BUDGET_EXCEEDED) {
+					difficulty = PuzzleDifficulty.fromSolutionLength(bucket.sideSize,
+							result.lowerBound);
+				}
+
+				Bucket target = null;
+
+				if (difficulty != null) {
+					target = this.reserveSlot(workerExecutor, bucket.sideSize, difficulty);
+				}
+
+				if (target != null) {
+					try {
+						this.bank.put(puzzle, result.lowerBound,
+								result.status == SolverResult.Status.SOLVED);
+					} catch (RuntimeException e) {
+						Log.e("NPuzzle", "Error storing a puzzle in the puzzle bank", e);
+						this.releaseSlot(target);
+					}
+				}
+
+				this.releaseBucket(bucket, difficulty == bucket.difficulty);
+			}
+		} finally {
+			synchronized (this) {
+				this.solvers.remove(solver);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bucket with fewest puzzles that is not full and has not missed too many puzzles,
+	 * and marks it as pending. Returns null, and ends the thread, if there is none or
+	 * <code>workerExecutor</code> is no longer the executor of the filler.
+	 */
+	private synchronized Bucket reserveBucket(ExecutorService workerExecutor) {
+		if (workerExecutor != this.executor) {
+			return null;
+		}
+
+		this.updateBuckets();
+		Bucket best = null;
+
+		for (Bucket bucket : this.buckets) {
+			if (bucket.count + bucket.pending < PuzzleBank.CAPACITY
+					&& bucket.misses < MAX_MISSES
+					&& (best == null
+							|| bucket.count + bucket.pending < best.count + best.pending)) {
+				best = bucket;
+			}
+		}
+
+		if (best == null) {
+			this.activeWorkers--;
+
+			if (this.activeWorkers == 0) {
+				this.executor.shutdown();
+				this.executor = null;
+			}
+
+			return null;
+		}
+
+		best.pending++;
+		return best;
+	}
+
+	/**
+	 * Marks a bucket as no longer pending for a thread that reserved it.
+	 * 
+	 * @param bucket
+	 *            the bucket.
+	 * @param hit
+	 *            whether the puzzle generated for the bucket had its difficulty.
+	 */
+	private synchronized void releaseBucket(Bucket bucket, boolean hit) {
+		bucket.pending--;
+		bucket.misses = hit ? 0 : bucket.misses + 1;
+	}
+
+	/**
+	 * Reserves room for a puzzle in a bucket. Returns the bucket, or null if it is full or
+	 * <code>workerExecutor</code> is no longer the executor of the filler.
+	 */
+	private synchronized Bucket reserveSlot(ExecutorService workerExecutor, int sideSize,
+			PuzzleDifficulty difficulty) {
+		if (workerExecutor != this.executor) {
+			return null;
+		}
+
+		this.updateBuckets();
+
+		for (Bucket bucket : this.buckets) {
+			if (bucket.sideSize == sideSize && bucket.difficulty == difficulty) {
+				if (bucket.count >= PuzzleBank.CAPACITY) {
+					return null;
+				}
+
+				bucket.count++;
+				return bucket;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gives back the room reserved by {@link #reserveSlot(ExecutorService, int, PuzzleDifficulty)}
+	 * when the puzzle could not be stored.
+	 */
+	private synchronized void releaseSlot(Bucket bucket) {
+		bucket.count--;
+	}
+
+	/**
+	 * Reads the state of the buckets from the bank if it has not been read yet, or updates the
+	 * number of puzzles in each bucket if it is stale. Buckets that have lost puzzles get their
+	 * misses cleared, so that they are filled again.
+	 */
+	private void updateBuckets() {
+		if (this.buckets == null) {
+			this.buckets = this.readBuckets();
+		} else if (this.countsStale) {
+			for (Bucket bucket : this.buckets) {
+				int count = this.bank.count(bucket.sideSize, bucket.difficulty);
+
+				if (count < bucket.count) {
+					bucket.misses = 0;
+				}
+
+				bucket.count = count;
+			}
+		}
+
+		this.countsStale = false;
+	}
+
+	/**
+	 * Reads the number of puzzles in each bucket from the bank.
+	 */
+	private Bucket[] readBuckets() {
+		PuzzleDifficulty[] difficulties = PuzzleDifficulty.values();
+		Bucket[] result = new Bucket[PuzzleBank.SIDE_SIZES.length * difficulties.length];
+		int i = 0;
+
+		for (int sideSize : PuzzleBank.SIDE_SIZES) {
+			for (PuzzleDifficulty difficulty : difficulties) {
+				Bucket bucket = new Bucket();
+				bucket.sideSize = sideSize;
+				bucket.difficulty = difficulty;
+				bucket.count = this.bank.count(sideSize, difficulty);
+				result[i++] = bucket;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Generates a solvable puzzle that is likely to have difficulty <code>difficulty</code>.
+	 */
+	private static NPuzzle generatePuzzle(int sideSize, PuzzleDifficulty difficulty,
+			Random random) {
+		if (difficulty == PuzzleDifficulty.HARD) {
+			NPuzzle puzzle;
+
+			do {
+				puzzle = NPuzzle.newRandomNPuzzleFromSideSize(sideSize, random.nextLong());
+			} while (puzzle.isSolved());
+
+			return puzzle;
+		}
+
+		int minLength = difficulty.getMinLength(sideSize);
+		int maxLength = (int) (difficulty.getMaxLength(sideSize) * WALK_LENGTH_FACTOR);
+		int length = minLength + random.nextInt(Math.max(1, maxLength - minLength + 1));
+
+		NPuzzle puzzle = NPuzzle.newNPuzzleFromSideSize(sideSize);
+		int[] neighbours = new int[4];
+		int previousEmptyPos = -1;
+
+		for (int i = 0; i < length; i++) {
+			int emptyPos = puzzle.getEmptyTilePosition();
+			int row = emptyPos / sideSize;
+			int column = emptyPos % sideSize;
+			int numNeighbours = 0;
+
+			/*
+			 * Never undo the previous move.
+			 */
+			if (row > 0 && emptyPos - sideSize != previousEmptyPos) {
+				neighbours[numNeighbours++] = emptyPos - sideSize;
+			}
+			if (row < sideSize - 1 && emptyPos + sideSize != previousEmptyPos) {
+				neighbours[numNeighbours++] = emptyPos + sideSize;
+			}
+			if (column > 0 && emptyPos - 1 != previousEmptyPos) {
+				neighbours[numNeighbours++] = emptyPos - 1;
+			}
+			if (column < sideSize - 1 && emptyPos + 1 != previousEmptyPos) {
+				neighbours[numNeighbours++] = emptyPos + 1;
+			}
+
+			puzzle.moveTileByPosition(neighbours[random.nextInt(numNeighbours)]);
+			previousEmptyPos = emptyPos;
+		}
+
+		return puzzle;
+	}
+}
@@ -1,12 +1,17 @@
 package es.odracirnumira.npuzzle.contentproviders;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract.FinishedGames;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract.Games;
+import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract.PuzzleBank;
 import es.odracirnumira.npuzzle.database.NPuzzleDatabase;
 import es.odracirnumira.npuzzle.database.NPuzzleDatabase.TableFinishedGame;
 import es.odracirnumira.npuzzle.database.NPuzzleDatabase.TableGame;
+import es.odracirnumira.npuzzle.database.NPuzzleDatabase.TableMoveJournal;
+import es.odracirnumira.npuzzle.database.NPuzzleDatabase.TablePuzzleBank;
+import es.odracirnumira.npuzzle.model.MoveCodec;
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
@@ -16,6 +21,7 @@ import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -45,6 +51,15 @@ public class NPuzzleContentProvider extends ContentProvider {
 	private static final int GAMES_INSTANCE_CODE = 1;
 	private static final int FINISHED_GAMES_CODE = 2;
 	private static final int FINISHED_GAMES_INSTANCE_CODE = 3;
+	private static final int GAME_MOVES_CODE = 4;
+	private static final int PUZZLE_BANK_CODE = 5;
+	private static final int PUZZLE_BANK_INSTANCE_CODE = 6;
+
+	/**
+	 * Number of entries of a game in {@link TableMoveJournal} that triggers merging them into the
+	 * game's row.
+	 */
+	private static final int MAX_JOURNAL_ENTRIES = 16;
 
 	public boolean onCreate() {
 		/*
@@ -58,6 +73,11 @@ public class NPuzzleContentProvider extends ContentProvider {
 		this.uriMatcher.addURI(NPuzzleContract.AUTHORITY, FinishedGames.PATH, FINISHED_GAMES_CODE);
 		this.uriMatcher.addURI(NPuzzleContract.AUTHORITY, FinishedGames.PATH + "/#",
 				FINISHED_GAMES_INSTANCE_CODE);
+		this.uriMatcher.addURI(NPuzzleContract.AUTHORITY, Games.PATH + "/#/" + Games.MOVES_PATH,
+				GAME_MOVES_CODE);
+		this.uriMatcher.addURI(NPuzzleContract.AUTHORITY, PuzzleBank.PATH, PUZZLE_BANK_CODE);
+		this.uriMatcher.addURI(NPuzzleContract.AUTHORITY, PuzzleBank.PATH + "/#",
+				PUZZLE_BANK_INSTANCE_CODE);
 
 		return true;
 	}
@@ -71,12 +91,15 @@ public class NPuzzleContentProvider extends ContentProvider {
 	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
 			String sortOrder) {
 		String tableName;
+		String gameID = null;
 
 		switch (this.uriMatcher.match(uri)) {
 			case GAMES_CODE:
 				tableName = NPuzzleDatabase.TableGame.NAME;
 				break;
 			case GAMES_INSTANCE_CODE:
+				gameID = uri.getLastPathSegment();
+
 				/*
 				 * If the incoming URI has an ID, append it to the WHERE clause for the database
 				 * query.
@@ -99,15 +122,36 @@ public class NPuzzleContentProvider extends ContentProvider {
 				selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
 						new String[] { uri.getLastPathSegment() });
 				break;
+			case PUZZLE_BANK_CODE:
+				tableName = TablePuzzleBank.NAME;
+				break;
+			case PUZZLE_BANK_INSTANCE_CODE:
+				tableName = TablePuzzleBank.NAME;
+				selection = DatabaseUtils.concatenateWhere(selection, TablePuzzleBank.ID + "=?");
+				selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+						new String[] { uri.getLastPathSegment() });
+				break;
 			default:
 				throw new IllegalArgumentException("Invalid URI " + uri);
 		}
 
 		SQLiteDatabase database = this.openHelper.getReadableDatabase();
 
+		if (tableName.equals(TableGame.NAME)) {
+			projection = addGameIDToProjection(projection);
+		}
+
 		Cursor c = database.query(tableName, projection, selection, selectionArgs, null, null,
 				sortOrder);
 
+		if (tableName.equals(TableGame.NAME)) {
+			/*
+			 * The moves that are still in the journal are merged in memory, so that queries do not
+			 * write to the database.
+			 */
+			c = this.mergeMoveJournal(database, c, gameID);
+		}
+
 		c.setNotificationUri(this.getContext().getContentResolver(), uri);
 
 		return c;
@@ -129,6 +173,10 @@ public class NPuzzleContentProvider extends ContentProvider {
 				return FinishedGames.CONTENT_TYPE;
 			case FINISHED_GAMES_INSTANCE_CODE:
 				return FinishedGames.CONTENT_ITEM_TIPE;
+			case PUZZLE_BANK_CODE:
+				return PuzzleBank.CONTENT_TYPE;
+			case PUZZLE_BANK_INSTANCE_CODE:
+				return PuzzleBank.CONTENT_ITEM_TIPE;
 			default:
 				return null;
 		}
@@ -150,7 +198,7 @@ public class NPuzzleContentProvider extends ContentProvider {
 				if (values.size() == 0) {
 					long currentTime = System.currentTimeMillis();
 					values.put(TableGame.START_TIME, currentTime);
-					values.put(TableGame.MOVES, "");
+					values.put(TableGame.MOVES, MoveCodec.encodeEmpty());
 					values.put(TableGame.INITIAL_STATE, "0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15");
 					values.put(TableGame.ELAPSED_TIME, 0);
 					values.putNull(TableGame.IMAGE_PATH);
@@ -179,7 +227,7 @@ public class NPuzzleContentProvider extends ContentProvider {
 				if (values.size() == 0) {
 					long currentTime = System.currentTimeMillis();
 					values.put(TableFinishedGame.START_TIME, currentTime);
-					values.put(TableFinishedGame.MOVES, "");
+					values.put(TableFinishedGame.MOVES, MoveCodec.encodeEmpty());
 					values.put(TableFinishedGame.INITIAL_STATE,
 							"0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15");
 					values.put(TableFinishedGame.ELAPSED_TIME, 0);
@@ -201,6 +249,59 @@ public class NPuzzleContentProvider extends ContentProvider {
 				}
 			}
 
+			case GAME_MOVES_CODE: {
+				String gameID = uri.getPathSegments().get(1);
+				byte[] moves = initialValues != null ? initialValues
+						.getAsByteArray(TableMoveJournal.MOVES) : null;
+
+				if (moves == null) {
+					throw new IllegalArgumentException("No moves to append to " + uri);
+				}
+
+				ContentValues values = new ContentValues();
+				values.put(TableMoveJournal.GAME_ID, Long.parseLong(gameID));
+				values.put(TableMoveJournal.MOVES, moves);
+
+				SQLiteDatabase database = this.openHelper.getWritableDatabase();
+
+				if (database.insert(TableMoveJournal.NAME, null, values) < 0) {
+					throw new SQLException("Failed to append the moves to " + uri);
+				}
+
+				/*
+				 * Merge the moves into the game's row from time to time, so loading the game does
+				 * not have to read many entries.
+				 */
+				long numEntries = DatabaseUtils.queryNumEntries(database, TableMoveJournal.NAME,
+						TableMoveJournal.GAME_ID + "=?", new String[] { gameID });
+
+				if (numEntries >= MAX_JOURNAL_ENTRIES) {
+					this.compactMoveJournal(gameID);
+				}
+
+				Uri gameUri = ContentUris.withAppendedId(Games.CONTENT_URI, Long.parseLong(gameID));
+				getContext().getContentResolver().notifyChange(gameUri, null);
+				return uri;
+			}
+
+			case PUZZLE_BANK_CODE: {
+				if (initialValues == null) {
+					throw new IllegalArgumentException("No puzzle to insert into " + uri);
+				}
+
+				SQLiteDatabase database = this.openHelper.getWritableDatabase();
+
+				long id = database.insert(TablePuzzleBank.NAME, null, initialValues);
+
+				if (id >= 0) {
+					Uri result = ContentUris.withAppendedId(PuzzleBank.CONTENT_URI, id);
+					getContext().getContentResolver().notifyChange(result, null);
+					return result;
+				} else {
+					throw new SQLException("Failed to insert the puzzle into " + uri);
+				}
+			}
+
 			default:
 				throw new IllegalArgumentException("Invalid URI " + uri);
 		}
@@ -242,6 +343,15 @@ public class NPuzzleContentProvider extends ContentProvider {
 						new String[] { uri.getLastPathSegment() });
 				numDeleted = database.delete(TableFinishedGame.NAME, selection, selectionArgs);
 				break;
+			case PUZZLE_BANK_CODE:
+				numDeleted = database.delete(TablePuzzleBank.NAME, selection, selectionArgs);
+				break;
+			case PUZZLE_BANK_INSTANCE_CODE:
+				selection = DatabaseUtils.concatenateWhere(selection, TablePuzzleBank.ID + "=?");
+				selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+						new String[] { uri.getLastPathSegment() });
+				numDeleted = database.delete(TablePuzzleBank.NAME, selection, selectionArgs);
+				break;
 			default:
 				throw new IllegalArgumentException("Invalid URI " + uri);
 		}
@@ -263,7 +373,7 @@ public class NPuzzleContentProvider extends ContentProvider {
 
 		switch (this.uriMatcher.match(uri)) {
 			case GAMES_CODE:
-				count = database.update(TableGame.NAME, values, selection, selectionArgs);
+				count = this.updateGames(database, values, selection, selectionArgs);
 				break;
 			case GAMES_INSTANCE_CODE:
 				/*
@@ -272,7 +382,7 @@ public class NPuzzleContentProvider extends ContentProvider {
 				selection = DatabaseUtils.concatenateWhere(selection, TableGame.ID + "=?");
 				selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
 						new String[] { uri.getLastPathSegment() });
-				count = database.update(TableGame.NAME, values, selection, selectionArgs);
+				count = this.updateGames(database, values, selection, selectionArgs);
 				break;
 			case FINISHED_GAMES_CODE:
 				count = database.update(TableFinishedGame.NAME, values, selection, selectionArgs);
@@ -295,6 +405,245 @@ public class NPuzzleContentProvider extends ContentProvider {
 		return count;
 	}
 
+	/**
+	 * Updates rows of {@link TableGame}. If the moves are updated, the entries of the games in
+	 * {@link TableMoveJournal} are deleted, since the new moves replace them too, and so is the
+	 * snapshot of the current state, unless a new one is given.
+	 */
+	private int updateGames(SQLiteDatabase database, ContentValues values, String selection,
+			String[] selectionArgs) {
+		if (!values.containsKey(TableGame.MOVES)) {
+			return database.update(TableGame.NAME, values, selection, selectionArgs);
+		}
+
+		if (!values.containsKey(TableGame.CURRENT_STATE)) {
+			values = new ContentValues(values);
+			values.putNull(TableGame.CURRENT_STATE);
+			values.putNull(TableGame.CURRENT_STATE_NUM_MOVES);
+		}
+
+		database.beginTransaction();
+
+		try {
+			String gamesQuery = "SELECT " + TableGame.ID + " FROM " + TableGame.NAME;
+
+			if (selection != null && selection.length() != 0) {
+				gamesQuery += " WHERE " + selection;
+			}
+
+			database.delete(TableMoveJournal.NAME, TableMoveJournal.GAME_ID + " IN (" + gamesQuery
+					+ ")", selectionArgs);
+			int count = database.update(TableGame.NAME, values, selection, selectionArgs);
+			database.setTransactionSuccessful();
+			return count;
+		} finally {
+			database.endTransaction();
+		}
+	}
+
+	/**
+	 * If <code>projection</code> contains {@link TableGame#MOVES} but not {@link TableGame#ID},
+	 * returns a copy of it with {@link TableGame#ID} appended, so that the moves of the journal can
+	 * be merged into the result of the query. Otherwise, returns <code>projection</code>.
+	 */
+	private static String[] addGameIDToProjection(String[] projection) {
+		if (projection == null) {
+			return null;
+		}
+
+		boolean hasMoves = false;
+
+		for (String column : projection) {
+			if (column.equals(TableGame.ID)) {
+				return projection;
+			}
+
+			hasMoves |= column.equals(TableGame.MOVES);
+		}
+
+		if (!hasMoves) {
+			return projection;
+		}
+
+		String[] result = new String[projection.length + 1];
+		System.arraycopy(projection, 0, result, 0, projection.length);
+		result[projection.length] = TableGame.ID;
+		return result;
+	}
+
+	/**
+	 * Returns a cursor with the rows of <code>games</code>, a cursor over {@link TableGame}, whose
+	 * {@link TableGame#MOVES} column includes the moves of the games that are still in
+	 * {@link TableMoveJournal}. The database is not modified. If there are no such moves,
+	 * <code>games</code> itself is returned. Otherwise, it is copied into memory and closed.
+	 * 
+	 * @param gameID
+	 *            the ID of the game queried, or null if several games may have been queried.
+	 */
+	private Cursor mergeMoveJournal(SQLiteDatabase database, Cursor games, String gameID) {
+		int movesIndex = games.getColumnIndex(TableGame.MOVES);
+		int idIndex = games.getColumnIndex(TableGame.ID);
+
+		if (movesIndex == -1 || idIndex == -1) {
+			return games;
+		}
+
+		HashMap<Long, byte[]> journalMoves = new HashMap<Long, byte[]>();
+		Cursor entries = database.query(TableMoveJournal.NAME, new String[] {
+				TableMoveJournal.GAME_ID, TableMoveJournal.MOVES },
+				gameID != null ? TableMoveJournal.GAME_ID + "=?" : null,
+				gameID != null ? new String[] { gameID } : null, null, null,
+				TableMoveJournal.GAME_ID + "," + TableMoveJournal.ID);
+
+		try {
+			while (entries.moveToNext()) {
+				long entryGameID = entries.getLong(0);
+				byte[] moves = journalMoves.get(entryGameID);
+				byte[] entryMoves = entries.getBlob(1);
+				journalMoves.put(entryGameID, moves == null ? entryMoves : MoveCodec.concatenate(
+						moves, entryMoves));
+			}
+		} finally {
+			entries.close();
+		}
+
+		if (journalMoves.isEmpty()) {
+			return games;
+		}
+
+		try {
+			String[] columnNames = games.getColumnNames();
+			MatrixCursor result = new MatrixCursor(columnNames, games.getCount());
+			Object[] row = new Object[columnNames.length];
+
+			while (games.moveToNext()) {
+				for (int i = 0; i < row.length; i++) {
+					switch (games.getType(i)) {
+						case Cursor.FIELD_TYPE_NULL:
+							row[i] = null;
+							break;
+						case Cursor.FIELD_TYPE_INTEGER:
+							row[i] = games.getLong(i);
+							break;
+						case Cursor.FIELD_TYPE_FLOAT:
+							row[i] = games.getDouble(i);
+							break;
+						case Cursor.FIELD_TYPE_BLOB:
+							row[i] = games.getBlob(i);
+							break;
+						default:
+							row[i] = games.getString(i);
+							break;
+					}
+				}
+
+				byte[] moves = journalMoves.get(games.getLong(idIndex));
+
+				if (moves != null) {
+					row[movesIndex] = MoveCodec.concatenate((byte[]) row[movesIndex], moves);
+				}
+
+				result.addRow(row);
+			}
+
+			return result;
+		} finally {
+			games.close();
+		}
+	}
+
+	/**
+	 * Merges the entries of {@link TableMoveJournal} into the {@link TableGame#MOVES} column of
+	 * their games, and deletes them.
+	 * 
+	 * @param gameID
+	 *            the ID of the game whose entries are merged, or null to merge the entries of all
+	 *            the games.
+	 */
+	private void compactMoveJournal(String gameID) {
+		SQLiteDatabase database = this.openHelper.getWritableDatabase();
+		String selection = gameID != null ? TableMoveJournal.GAME_ID + "=?" : null;
+		String[] selectionArgs = gameID != null ? new String[] { gameID } : null;
+
+		database.beginTransaction();
+
+		try {
+			Cursor entries = database.query(TableMoveJournal.NAME, new String[] {
+					TableMoveJournal.GAME_ID, TableMoveJournal.MOVES }, selection, selectionArgs,
+					null, null, TableMoveJournal.GAME_ID + "," + TableMoveJournal.ID);
+
+			if (entries.getCount() == 0) {
+				/*
+				 * Nothing has been written, but the transaction must not fail, or an enclosing one
+				 * (such as the one of applyBatch()) would fail too.
+				 */
+				entries.close();
+				database.setTransactionSuccessful();
+				return;
+			}
+
+			try {
+				long currentGameID = -1;
+				byte[] moves = null;
+
+				while (entries.moveToNext()) {
+					long entryGameID = entries.getLong(0);
+
+					if (entryGameID != currentGameID) {
+						if (moves != null) {
+							this.updateGameMoves(database, currentGameID, moves);
+						}
+
+						currentGameID = entryGameID;
+						moves = this.getGameMoves(database, currentGameID);
+					}
+
+					moves = MoveCodec.concatenate(moves, entries.getBlob(1));
+				}
+
+				this.updateGameMoves(database, currentGameID, moves);
+			} finally {
+				entries.close();
+			}
+
+			database.delete(TableMoveJournal.NAME, selection, selectionArgs);
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+
+	/**
+	 * Returns the {@link TableGame#MOVES} column of a game.
+	 * 
+	 * @throws SQLException
+	 *             if the game does not exist.
+	 */
+	private byte[] getGameMoves(SQLiteDatabase database, long gameID) {
+		Cursor cursor = database.query(TableGame.NAME, new String[] { TableGame.MOVES },
+				TableGame.ID + "=?", new String[] { String.valueOf(gameID) }, null, null, null);
+
+		try {
+			if (!cursor.moveToFirst()) {
+				throw new SQLException("Game " + gameID + " does not exist");
+			}
+
+			return cursor.getBlob(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Sets the {@link TableGame#MOVES} column of a game.
+	 */
+	private void updateGameMoves(SQLiteDatabase database, long gameID, byte[] moves) {
+		ContentValues values = new ContentValues();
+		values.put(TableGame.MOVES, moves);
+		database.update(TableGame.NAME, values, TableGame.ID + "=?",
+				new String[] { String.valueOf(gameID) });
+	}
+
 	/**
 	 * Adds transaction capabilities to the set of operations, that is, the set of operations are
 	 * run as an indivisible unit. If any of the operation fails, the transaction fails, and an
@@ -352,7 +701,7 @@ public class NPuzzleContentProvider extends ContentProvider {
 
 							long currentTime = System.currentTimeMillis();
 							singleValues.put(TableGame.START_TIME, currentTime);
-							singleValues.put(TableGame.MOVES, "");
+							singleValues.put(TableGame.MOVES, MoveCodec.encodeEmpty());
 							singleValues.put(TableGame.INITIAL_STATE,
 									"0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15");
 							singleValues.put(TableGame.ELAPSED_TIME, 0);
@@ -366,8 +715,8 @@ public class NPuzzleContentProvider extends ContentProvider {
 						 */
 						insertStatement.bindString(1,
 								singleValues.getAsString(NPuzzleDatabase.TableGame.INITIAL_STATE));
-						insertStatement.bindString(2,
-								singleValues.getAsString(NPuzzleDatabase.TableGame.MOVES));
+						insertStatement.bindBlob(2,
+								singleValues.getAsByteArray(NPuzzleDatabase.TableGame.MOVES));
 						insertStatement.bindLong(3,
 								singleValues.getAsLong(NPuzzleDatabase.TableGame.START_TIME));
 						String imagePath = singleValues
@@ -433,7 +782,7 @@ public class NPuzzleContentProvider extends ContentProvider {
 
 							long currentTime = System.currentTimeMillis();
 							singleValues.put(TableFinishedGame.START_TIME, currentTime);
-							singleValues.put(TableFinishedGame.MOVES, "");
+							singleValues.put(TableFinishedGame.MOVES, MoveCodec.encodeEmpty());
 							singleValues.put(TableFinishedGame.INITIAL_STATE,
 									"0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15");
 							singleValues.put(TableFinishedGame.ELAPSED_TIME, 0);
@@ -447,8 +796,8 @@ public class NPuzzleContentProvider extends ContentProvider {
 						 */
 						insertStatement.bindString(1, singleValues
 								.getAsString(NPuzzleDatabase.TableFinishedGame.INITIAL_STATE));
-						insertStatement.bindString(2,
-								singleValues.getAsString(NPuzzleDatabase.TableFinishedGame.MOVES));
+						insertStatement.bindBlob(2, singleValues
+								.getAsByteArray(NPuzzleDatabase.TableFinishedGame.MOVES));
 						insertStatement.bindLong(3, singleValues
 								.getAsLong(NPuzzleDatabase.TableFinishedGame.START_TIME));
 						String imagePath = singleValues
@@ -477,10 +826,31 @@ public class NPuzzleContentProvider extends ContentProvider {
 						}
 					}
 
+					database.setTransactionSuccessful();
+					return values.length;
+				} finally {
+					database.endTransaction();
+				}
+			}
+
+			case PUZZLE_BANK_CODE: {
+				SQLiteDatabase database = this.openHelper.getWritableDatabase();
+				database.beginTransaction();
+
+				try {
+					for (ContentValues singleValues : values) {
+						if (database.insert(TablePuzzleBank.NAME, null, singleValues) == -1) {
+							throw new SQLException("Failed to insert the puzzle into " + uri);
+						}
+					}
+
 					database.setTransactionSuccessful();
 				} finally {
 					database.endTransaction();
 				}
+
+				getContext().getContentResolver().notifyChange(uri, null);
+				return values.length;
 			}
 
 			default:
@@ -1,6 +1,13 @@
 package es.odracirnumira.npuzzle.contentproviders;
 
+import java.util.List;
+
+import es.odracirnumira.npuzzle.model.MoveCodec;
+import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.PackedNPuzzleState;
+import es.odracirnumira.npuzzle.model.PuzzleDifficulty;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -50,12 +57,11 @@ public final class NPuzzleContract {
 
 		/**
 		 * The list of moves that have been played so far in the game. If the game is finished, this
-		 * is the complete list of moves. This is a string consisting of a sequence of non-negative
-		 * numbers, separated by blank spaces (one blank space for every couple of numbers). The
-		 * first number is the tile that was moved first; the second number is the second tile that
-		 * was moved, and so on. The list may be empty if no moves have been performed.
+		 * is the complete list of moves, encoded by {@link MoveCodec#encode(List, List)} from the
+		 * initial state of the game. Use {@link MoveCodec#decode(List, byte[])} to get the tiles
+		 * that were moved. The list may be empty if no moves have been performed.
 		 * <p>
-		 * Type: STRING
+		 * Type: BLOB
 		 */
 		public static final String MOVES = "Moves";
 
@@ -113,6 +119,14 @@ public final class NPuzzleContract {
 	 * <p>
 	 * Insertions via {@link ContentResolver#bulkInsert(Uri, android.content.ContentValues[])} are
 	 * atomic.
+	 * <p>
+	 * New moves of a game can be appended, instead of updating the whole list of moves, by
+	 * inserting into the URI returned by {@link #getMovesUri(long)} a ContentValues object whose
+	 * only value is {@link GenericGameColumns#MOVES}, with the moves made since the last time the
+	 * moves of the game were saved, encoded by {@link MoveCodec#encodeTail(NPuzzle, List, int)}.
+	 * The cost of appending moves does not depend on the length of the game. Queries always return
+	 * the complete list of moves. The {@link #CURRENT_STATE} of the game and its
+	 * {@link #CURRENT_STATE_NUM_MOVES} should be updated in the same batch.
 	 * 
 	 * @author Ricardo Juan Palma Durán
 	 * 
@@ -126,6 +140,26 @@ public final class NPuzzleContract {
 		 */
 		public static final String LAST_PLAYED_TIME = "LastPlayedTime";
 
+		/**
+		 * Snapshot of the current state of the puzzle, that is, the state after all the moves of
+		 * the game, as returned by {@link PackedNPuzzleState#toByteArray()}. Loading the puzzle from
+		 * it is much faster than replaying the moves. It may be null, in which case the moves must
+		 * be replayed from the initial state. It is set to null when the moves are updated without
+		 * updating it too.
+		 * <p>
+		 * Type: BLOB
+		 */
+		public static final String CURRENT_STATE = "CurrentState";
+
+		/**
+		 * The number of moves of the game when {@link #CURRENT_STATE} was taken. The snapshot must
+		 * only be used if this is the number of moves of {@link GenericGameColumns#MOVES}. It may
+		 * be null, and it is set to null along with {@link #CURRENT_STATE}.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String CURRENT_STATE_NUM_MOVES = "CurrentStateNumMoves";
+
 		/**
 		 * Specific path under the {@link NPuzzleContract#BASE_URI} where unfinished games are
 		 * stored.
@@ -137,6 +171,12 @@ public final class NPuzzleContract {
 		 */
 		public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/" + PATH);
 
+		/**
+		 * Path segment appended to the URI of a game to get the URI where its new moves are
+		 * inserted.
+		 */
+		static final String MOVES_PATH = "moves";
+
 		/**
 		 * MIME type for {@link #CONTENT_URI}.
 		 */
@@ -146,6 +186,15 @@ public final class NPuzzleContract {
 		 * MIME type for a single item (row) in {@link #CONTENT_URI}.
 		 */
 		public static final String CONTENT_ITEM_TIPE = "vnd.android.cursor.item/vnd.es.odracirnumira.npuzzle.game";
+
+		/**
+		 * Returns the URI where the new moves of the game with ID <code>gameID</code> are
+		 * inserted.
+		 */
+		public static Uri getMovesUri(long gameID) {
+			return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, gameID),
+					MOVES_PATH);
+		}
 	}
 
 	/**
@@ -201,6 +250,84 @@ public final class NPuzzleContract {
 		public static final String CONTENT_ITEM_TIPE = "vnd.android.cursor.item/vnd.es.odracirnumira.npuzzle.finished_game";
 	}
 
+	/**
+	 * This table represents the puzzles that have been generated and graded in advance, so that new
+	 * games can be started without generating a puzzle. Each row represents a puzzle. All fields
+	 * are required when inserting a puzzle.
+	 * <p>
+	 * This table allows to append an ID at the end of the {@link #CONTENT_URI} in query and delete
+	 * operations, to handle individual instances instead of groups of them. Puzzles cannot be
+	 * updated. They are meant to be deleted when they are used.
+	 * <p>
+	 * Queries that select puzzles by {@link #SIDE_SIZE} and {@link #DIFFICULTY} are answered from
+	 * an index, so taking a puzzle does not depend on the number of puzzles stored.
+	 * <p>
+	 * Insertions via {@link ContentResolver#bulkInsert(Uri, android.content.ContentValues[])} are
+	 * atomic.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static class PuzzleBank implements BaseColumns {
+		/**
+		 * The number of tiles on the side of the puzzle.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String SIDE_SIZE = "SideSize";
+
+		/**
+		 * The difficulty of the puzzle, as the ordinal of a {@link PuzzleDifficulty}.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String DIFFICULTY = "Difficulty";
+
+		/**
+		 * The number of moves needed to solve the puzzle. If {@link #OPTIMAL} is 0, it is only a
+		 * lower bound.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String SOLUTION_LENGTH = "SolutionLength";
+
+		/**
+		 * 1 if {@link #SOLUTION_LENGTH} is the length of an optimal solution, and 0 if it is a
+		 * lower bound.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String OPTIMAL = "Optimal";
+
+		/**
+		 * The configuration of the puzzle, as returned by
+		 * {@link PackedNPuzzleState#toByteArray()}.
+		 * <p>
+		 * Type: BLOB
+		 */
+		public static final String STATE = "State";
+
+		/**
+		 * Specific path under the {@link NPuzzleContract#BASE_URI} where the puzzles are stored.
+		 */
+		static final String PATH = "puzzle_bank";
+
+		/**
+		 * The content URI for this table.
+		 */
+		public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/" + PATH);
+
+		/**
+		 * MIME type for {@link #CONTENT_URI}.
+		 */
+		public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.es.odracirnumira.npuzzle.puzzle";
+
+		/**
+		 * MIME type for a single item (row) in {@link #CONTENT_URI}.
+		 */
+		public static final String CONTENT_ITEM_TIPE = "vnd.android.cursor.item/vnd.es.odracirnumira.npuzzle.puzzle";
+	}
+
 	private NPuzzleContract() {
 
 	}
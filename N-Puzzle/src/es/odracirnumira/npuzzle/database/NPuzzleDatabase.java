@@ -1,8 +1,17 @@
 package es.odracirnumira.npuzzle.database;
 
+import java.util.List;
+
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import es.odracirnumira.npuzzle.model.MoveCodec;
+import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.PackedNPuzzleState;
+import es.odracirnumira.npuzzle.model.PuzzleDifficulty;
 
 /**
  * Class that manages the database side of the application. It defines all the tables as well as the
@@ -20,7 +29,7 @@ public final class NPuzzleDatabase {
 	/**
 	 * Current version of the database.
 	 */
-	public static final int VERSION = 1;
+	public static final int VERSION = 6;
 
 	/**
 	 * Generic columns that all N puzzle games share. This columns are used by all tables that must
@@ -53,12 +62,13 @@ public final class NPuzzleDatabase {
 
 		/**
 		 * The list of moves that have been played so far in the game. If the game is finished, this
-		 * is the complete list of moves. This is a string consisting of a sequence of non-negative
-		 * numbers, separated by blank spaces (one blank space for every couple of numbers). The
-		 * first number is the tile that was moved first; the second number is the second tile that
-		 * was moved, and so on.
+		 * is the complete list of moves. The moves are encoded by {@link MoveCodec}, which stores
+		 * each move in 2 bits, and can only be decoded along with the initial state.
 		 * <p>
-		 * Type: STRING
+		 * Up to version 1 of the database, this was a string consisting of the moved tiles,
+		 * separated by blank spaces.
+		 * <p>
+		 * Type: BLOB
 		 */
 		public static final String MOVES = "Moves";
 
@@ -117,11 +127,31 @@ public final class NPuzzleDatabase {
 		 */
 		public static final String LAST_PLAYED_TIME = "LastPlayedTime";
 
+		/**
+		 * Snapshot of the current state of the puzzle, that is, the state after all the moves of
+		 * the game, as returned by {@link PackedNPuzzleState#toByteArray()}. It lets the game be
+		 * loaded without replaying its moves. It may be null, in which case the state has to be
+		 * computed by replaying the moves from the initial state.
+		 * <p>
+		 * Type: BLOB
+		 */
+		public static final String CURRENT_STATE = "CurrentState";
+
+		/**
+		 * The number of moves of the game when {@link #CURRENT_STATE} was taken. The snapshot is
+		 * only used if it matches the number of moves stored, and it is null for snapshots stored
+		 * before version 6.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String CURRENT_STATE_NUM_MOVES = "CurrentStateNumMoves";
+
 		public static final String CREATE = "CREATE TABLE " + NAME + "(" + ID
 				+ " INTEGER PRIMARY KEY NOT NULL, " + INITIAL_STATE + " TEXT NOT NULL, " + MOVES
-				+ " TEXT NOT NULL, " + START_TIME + " INTEGER NOT NULL, " + ELAPSED_TIME
+				+ " BLOB NOT NULL, " + START_TIME + " INTEGER NOT NULL, " + ELAPSED_TIME
 				+ " INTEGER NOT NULL, " + LAST_PLAYED_TIME + " INTEGER NOT NULL, " + IMAGE_ROTATION
-				+ " INTEGER NOT NULL, " + IMAGE_PATH + " TEXT)";
+				+ " INTEGER NOT NULL, " + IMAGE_PATH + " TEXT, " + CURRENT_STATE + " BLOB, "
+				+ CURRENT_STATE_NUM_MOVES + " INTEGER)";
 
 		public static final String DROP = "DROP TABLE " + NAME;
 	}
@@ -148,13 +178,133 @@ public final class NPuzzleDatabase {
 
 		public static final String CREATE = "CREATE TABLE " + NAME + "(" + ID
 				+ " INTEGER PRIMARY KEY NOT NULL, " + INITIAL_STATE + " TEXT NOT NULL, " + MOVES
-				+ " TEXT NOT NULL, " + START_TIME + " INTEGER NOT NULL, " + ELAPSED_TIME
+				+ " BLOB NOT NULL, " + START_TIME + " INTEGER NOT NULL, " + ELAPSED_TIME
 				+ " INTEGER NOT NULL, " + FINISHED_TIME + " INTEGER NOT NULL, " + IMAGE_ROTATION
 				+ " INTEGER NOT NULL, " + IMAGE_PATH + " TEXT)";
 
 		public static final String DROP = "DROP TABLE " + NAME;
 	}
 
+	/**
+	 * Table that stores the moves of the games of {@link TableGame} that have not been merged into
+	 * their {@link GenericGameColumns#MOVES} column yet. Every time a game is saved, only the moves
+	 * made since the last save are appended here, so saving does not get slower as the game gets
+	 * longer. The entries of a game are periodically merged into its row and deleted.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static class TableMoveJournal {
+		/**
+		 * The name of the table.
+		 */
+		public static final String NAME = "MoveJournal";
+
+		/**
+		 * The ID of the entry (row). Entries of the same game must be applied in increasing order
+		 * of ID.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String ID = "_id";
+
+		/**
+		 * The ID of the game, in {@link TableGame}, the moves belong to.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String GAME_ID = "GameID";
+
+		/**
+		 * The moves, encoded by {@link MoveCodec}. They follow the moves of the game's row and of
+		 * the previous entries of the game.
+		 * <p>
+		 * Type: BLOB
+		 */
+		public static final String MOVES = "Moves";
+
+		public static final String CREATE = "CREATE TABLE " + NAME + "(" + ID
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " + GAME_ID
+				+ " INTEGER NOT NULL REFERENCES " + TableGame.NAME + "(" + TableGame.ID
+				+ ") ON DELETE CASCADE, " + MOVES + " BLOB NOT NULL)";
+
+		public static final String CREATE_INDEX = "CREATE INDEX " + NAME + "_" + GAME_ID
+				+ " ON " + NAME + "(" + GAME_ID + ")";
+
+		public static final String DROP = "DROP TABLE " + NAME;
+	}
+
+	/**
+	 * Table of puzzles that have been generated and graded in advance, so that a new game of a
+	 * given size and difficulty can be started by just taking one of them. Rows are looked up by
+	 * size and difficulty through an index, and deleted once they are taken.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static class TablePuzzleBank {
+		/**
+		 * The name of the table.
+		 */
+		public static final String NAME = "PuzzleBank";
+
+		/**
+		 * The ID of the puzzle (row).
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String ID = "_id";
+
+		/**
+		 * The number of tiles on the side of the puzzle.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String SIDE_SIZE = "SideSize";
+
+		/**
+		 * The difficulty of the puzzle, as the ordinal of a {@link PuzzleDifficulty}.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String DIFFICULTY = "Difficulty";
+
+		/**
+		 * The number of moves needed to solve the puzzle. If {@link #OPTIMAL} is 0, it is only a
+		 * lower bound.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String SOLUTION_LENGTH = "SolutionLength";
+
+		/**
+		 * 1 if {@link #SOLUTION_LENGTH} is the length of an optimal solution, and 0 if it is a
+		 * lower bound.
+		 * <p>
+		 * Type: INTEGER
+		 */
+		public static final String OPTIMAL = "Optimal";
+
+		/**
+		 * The configuration of the puzzle, as returned by
+		 * {@link PackedNPuzzleState#toByteArray()}.
+		 * <p>
+		 * Type: BLOB
+		 */
+		public static final String STATE = "State";
+
+		public static final String CREATE = "CREATE TABLE " + NAME + "(" + ID
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " + SIDE_SIZE
+				+ " INTEGER NOT NULL, " + DIFFICULTY + " INTEGER NOT NULL, " + SOLUTION_LENGTH
+				+ " INTEGER NOT NULL, " + OPTIMAL + " INTEGER NOT NULL, " + STATE
+				+ " BLOB NOT NULL)";
+
+		public static final String CREATE_INDEX = "CREATE INDEX " + NAME + "_" + SIDE_SIZE + "_"
+				+ DIFFICULTY + " ON " + NAME + "(" + SIDE_SIZE + "," + DIFFICULTY + ")";
+
+		public static final String DROP = "DROP TABLE " + NAME;
+	}
+
 	/**
 	 * A {@link SQLiteOpenHelper} that gives access to the application's database.
 	 * 
@@ -169,9 +319,125 @@ public final class NPuzzleDatabase {
 		public void onCreate(SQLiteDatabase db) {
 			db.execSQL(TableGame.CREATE);
 			db.execSQL(TableFinishedGame.CREATE);
+			db.execSQL(TableMoveJournal.CREATE);
+			db.execSQL(TableMoveJournal.CREATE_INDEX);
+			db.execSQL(TablePuzzleBank.CREATE);
+			db.execSQL(TablePuzzleBank.CREATE_INDEX);
 		}
 
 		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+			if (oldVersion < 2) {
+				/*
+				 * Version 2 stores the moves as a BLOB instead of a string. The tables are recreated
+				 * with the columns of the current version, so the columns added by later versions
+				 * must not be added again. This method is already called within a transaction.
+				 */
+				upgradeMovesToBlob(db, TableGame.NAME, TableGame.CREATE);
+				upgradeMovesToBlob(db, TableFinishedGame.NAME, TableFinishedGame.CREATE);
+			} else if (oldVersion < 6) {
+				if (oldVersion < 4) {
+					db.execSQL("ALTER TABLE " + TableGame.NAME + " ADD COLUMN "
+							+ TableGame.CURRENT_STATE + " BLOB");
+				}
+
+				/*
+				 * Snapshots stored before version 6 have no number of moves, so they are not used.
+				 */
+				db.execSQL("ALTER TABLE " + TableGame.NAME + " ADD COLUMN "
+						+ TableGame.CURRENT_STATE_NUM_MOVES + " INTEGER");
+			}
+
+			if (oldVersion < 3) {
+				db.execSQL(TableMoveJournal.CREATE);
+				db.execSQL(TableMoveJournal.CREATE_INDEX);
+			}
+
+			if (oldVersion < 5) {
+				db.execSQL(TablePuzzleBank.CREATE);
+				db.execSQL(TablePuzzleBank.CREATE_INDEX);
+			}
+		}
+
+		/**
+		 * Recreates a table of version 1 of the database so that its
+		 * {@link GenericGameColumns#MOVES} column is a BLOB, and converts the moves of all of its
+		 * rows with {@link MoveCodec}. If the moves of a game cannot be converted, they are
+		 * discarded, so the game goes back to its initial state.
+		 * 
+		 * @param db
+		 *            the database.
+		 * @param tableName
+		 *            the name of the table.
+		 * @param createStatement
+		 *            the statement that creates the table in the new version.
+		 */
+		private static void upgradeMovesToBlob(SQLiteDatabase db, String tableName,
+				String createStatement) {
+			String oldTableName = tableName + "_old";
+
+			/*
+			 * SQLite cannot change the type of a column, so the table is recreated. Moves are
+			 * copied as they are, and converted afterwards.
+			 */
+			db.execSQL("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+			db.execSQL(createStatement);
+
+			/*
+			 * The new table may have more columns than the old one, so the columns to copy are
+			 * listed explicitly.
+			 */
+			Cursor oldColumns = db.rawQuery("SELECT * FROM " + oldTableName + " LIMIT 0", null);
+			StringBuilder columnList = new StringBuilder();
+
+			try {
+				for (String column : oldColumns.getColumnNames()) {
+					if (columnList.length() != 0) {
+						columnList.append(',');
+					}
+
+					columnList.append(column);
+				}
+			} finally {
+				oldColumns.close();
+			}
+
+			db.execSQL("INSERT INTO " + tableName + "(" + columnList + ") SELECT " + columnList
+					+ " FROM " + oldTableName);
+			db.execSQL("DROP TABLE " + oldTableName);
+
+			SQLiteStatement updateStatement = db.compileStatement("UPDATE " + tableName + " SET "
+					+ GenericGameColumns.MOVES + "=? WHERE " + GenericGameColumns.ID + "=?");
+			Cursor cursor = db.query(tableName, new String[] { GenericGameColumns.ID,
+					GenericGameColumns.INITIAL_STATE, GenericGameColumns.MOVES }, null, null, null,
+					null, null);
+
+			try {
+				while (cursor.moveToNext()) {
+					long id = cursor.getLong(0);
+					byte[] moves;
+
+					try {
+						List<Integer> initialState = NPuzzle.stringToSequenceOfIntegers(cursor
+								.getString(1));
+						moves = MoveCodec.encode(initialState,
+								NPuzzle.stringToSequenceOfIntegers(cursor.getString(2)));
+					} catch (IllegalArgumentException e) {
+						/*
+						 * This also catches NumberFormatException.
+						 */
+						Log.e("NPuzzle", "Discarding invalid moves of game " + id + " in "
+								+ tableName, e);
+						moves = MoveCodec.encodeEmpty();
+					}
+
+					updateStatement.bindBlob(1, moves);
+					updateStatement.bindLong(2, id);
+					updateStatement.execute();
+				}
+			} finally {
+				cursor.close();
+				updateStatement.close();
+			}
 		}
 
 		public void onOpen(SQLiteDatabase db) {
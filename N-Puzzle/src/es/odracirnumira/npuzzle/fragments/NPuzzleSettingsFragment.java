@@ -13,6 +13,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
+import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.Preference.OnPreferenceClickListener;
 import android.preference.PreferenceFragment;
@@ -42,6 +43,11 @@ public class NPuzzleSettingsFragment extends PreferenceFragment implements
 	 */
 	private Preference imagesLocationPreference;
 
+	/**
+	 * Preference used to set the difficulty of the puzzles of new games.
+	 */
+	private ListPreference puzzleDifficultyPreference;
+
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		this.addPreferencesFromResource(R.xml.settings);
@@ -62,6 +68,9 @@ public class NPuzzleSettingsFragment extends PreferenceFragment implements
 				return true;
 			}
 		});
+
+		this.puzzleDifficultyPreference = (ListPreference) findPreference(
+				NPuzzleSettings.PUZZLE_DIFFICULTY);
 	}
 
 	public void onResume() {
@@ -109,6 +118,8 @@ public class NPuzzleSettingsFragment extends PreferenceFragment implements
 				imagesLocationPreference.setSummary(getString(
 						R.string.custom_directory_selected_for_puzzle_images, directory));
 			}
+		} else if (key.equals(NPuzzleSettings.PUZZLE_DIFFICULTY)) {
+			puzzleDifficultyPreference.setSummary(puzzleDifficultyPreference.getEntry());
 		}
 	}
 
@@ -118,6 +129,7 @@ public class NPuzzleSettingsFragment extends PreferenceFragment implements
 	private void setInitialPreferencesSummaries() {
 		SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
 		onSharedPreferenceChanged(sp, NPuzzleSettings.NPUZZLE_IMAGES_LOCATION);
+		onSharedPreferenceChanged(sp, NPuzzleSettings.PUZZLE_DIFFICULTY);
 	}
 
 	/**
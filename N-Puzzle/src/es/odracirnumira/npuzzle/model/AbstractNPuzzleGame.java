@@ -84,6 +84,7 @@ public abstract class AbstractNPuzzleGame implements Parcelable {
 	protected AbstractNPuzzleGame(Parcel in) {
 		this.gameID = in.readLong();
 		this.nPuzzle = in.readParcelable(null);
+		this.initialState = in.readString();
 		this.moves = new ArrayList<Integer>();
 		in.readList(this.moves, AbstractNPuzzleGame.class.getClassLoader());
 		this.puzzleImagePath = in.readString();
@@ -100,6 +101,7 @@ public abstract class AbstractNPuzzleGame implements Parcelable {
 	public void writeToParcel(Parcel dest, int flags) {
 		dest.writeLong(this.gameID);
 		dest.writeParcelable(this.nPuzzle, 0);
+		dest.writeString(this.initialState);
 		dest.writeList(this.moves);
 		dest.writeString(this.puzzleImagePath);
 		dest.writeParcelable(this.puzzleImage, 0);
@@ -0,0 +1,407 @@
+package es.odracirnumira.npuzzle.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.odracirnumira.npuzzle.model.NPuzzle.Direction;
+
+/**
+ * Compact binary encoding of the list of moves of a game. Since every move slides one of the (at
+ * most four) tiles next to the empty tile, a move is fully described by the {@link Direction} the
+ * tile moves in, which takes 2 bits. The tiles themselves are recovered by replaying the moves
+ * from the initial state of the puzzle, so the initial state is needed both to encode and to decode
+ * a list of moves.
+ * <p>
+ * The encoded list starts with the number of moves, stored as a varint (7 bits per byte, least
+ * significant group first, the highest bit set in all the bytes but the last one). The moves
+ * follow, four per byte, the first move in the two lowest bits. The code of each move is the
+ * ordinal of its {@link Direction}.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class MoveCodec {
+	/**
+	 * Number of moves stored in each byte.
+	 */
+	private static final int MOVES_PER_BYTE = 4;
+
+	/**
+	 * Direction codes, indexed by ordinal.
+	 */
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	/**
+	 * Encodes a list of moves.
+	 * 
+	 * @param initialConfiguration
+	 *            the initial configuration of the puzzle: for each tile, the position it occupies
+	 *            (see {@link NPuzzle#newNPuzzleFromNAndConfiguration(int, List)}).
+	 * @param moves
+	 *            the tiles moved, in order.
+	 * @return the encoded moves.
+	 * @throws IllegalArgumentException
+	 *             if any of the moves cannot be performed.
+	 */
+	public static byte[] encode(List<Integer> initialConfiguration, List<Integer> moves) {
+		int numTiles = initialConfiguration.size();
+		int sideSize = getSideSize(numTiles);
+		int[] tilePositions = toIntArray(initialConfiguration);
+		int emptyPos = tilePositions[numTiles - 1];
+		int numMoves = moves.size();
+		int headerSize = getVarIntSize(numMoves);
+		byte[] result = new byte[getEncodedSize(numMoves)];
+
+		writeVarInt(result, numMoves);
+
+		int i = 0;
+
+		for (int tile : moves) {
+			if (tile < 0 || tile >= numTiles - 1) {
+				throw new IllegalArgumentException("Invalid tile: " + tile);
+			}
+
+			int tilePos = tilePositions[tile];
+			Direction direction;
+
+			if (tilePos == emptyPos - sideSize) {
+				direction = Direction.DOWN;
+			} else if (tilePos == emptyPos + sideSize) {
+				direction = Direction.UP;
+			} else if (tilePos == emptyPos - 1 && emptyPos % sideSize != 0) {
+				direction = Direction.RIGHT;
+			} else if (tilePos == emptyPos + 1 && tilePos % sideSize != 0) {
+				direction = Direction.LEFT;
+			} else {
+				throw new IllegalArgumentException("Tile " + tile + " cannot be moved");
+			}
+
+			tilePositions[tile] = emptyPos;
+			emptyPos = tilePos;
+			result[headerSize + i / MOVES_PER_BYTE] |= direction.ordinal() << (i
+					% MOVES_PER_BYTE * 2);
+			i++;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Encodes the last moves of a list, starting at <code>fromIndex</code>. Instead of replaying
+	 * the moves from the initial state, they are undone from the current state of the puzzle, so
+	 * the cost only depends on the number of moves encoded.
+	 * <p>
+	 * The result can be decoded from the state the puzzle was in before the move at
+	 * <code>fromIndex</code>, or appended to the encoding of the previous moves with
+	 * {@link #concatenate(byte[], byte[])}.
+	 * 
+	 * @param puzzle
+	 *            the puzzle, after all the moves of <code>moves</code> have been performed. It is
+	 *            not modified.
+	 * @param moves
+	 *            the tiles moved, in order.
+	 * @param fromIndex
+	 *            the index of the first move to encode.
+	 * @return the encoded moves.
+	 * @throws IllegalArgumentException
+	 *             if the moves do not lead to the current state of the puzzle.
+	 */
+	public static byte[] encodeTail(NPuzzle puzzle, List<Integer> moves, int fromIndex) {
+		int numTiles = puzzle.getNumTiles();
+		int sideSize = puzzle.getSideNumTiles();
+		int numMoves = moves.size() - fromIndex;
+
+		if (fromIndex < 0 || numMoves < 0) {
+			throw new IllegalArgumentException("Invalid index: " + fromIndex);
+		}
+
+		int[] tilePositions = new int[numTiles];
+
+		for (int tile = 0; tile < numTiles; tile++) {
+			tilePositions[tile] = puzzle.getTilePosition(tile);
+		}
+
+		int emptyPos = tilePositions[numTiles - 1];
+		int headerSize = getVarIntSize(numMoves);
+		byte[] result = new byte[getEncodedSize(numMoves)];
+
+		writeVarInt(result, numMoves);
+
+		for (int i = numMoves - 1; i >= 0; i--) {
+			int tile = moves.get(fromIndex + i);
+
+			if (tile < 0 || tile >= numTiles - 1) {
+				throw new IllegalArgumentException("Invalid tile: " + tile);
+			}
+
+			/*
+			 * The tile now occupies the position the empty tile had before the move, and the empty
+			 * tile occupies the position the tile had.
+			 */
+			int tilePos = tilePositions[tile];
+			Direction direction;
+
+			if (tilePos == emptyPos + sideSize) {
+				direction = Direction.DOWN;
+			} else if (tilePos == emptyPos - sideSize) {
+				direction = Direction.UP;
+			} else if (tilePos == emptyPos + 1 && tilePos % sideSize != 0) {
+				direction = Direction.RIGHT;
+			} else if (tilePos == emptyPos - 1 && emptyPos % sideSize != 0) {
+				direction = Direction.LEFT;
+			} else {
+				throw new IllegalArgumentException("Tile " + tile + " cannot have been moved");
+			}
+
+			tilePositions[tile] = emptyPos;
+			emptyPos = tilePos;
+			result[headerSize + i / MOVES_PER_BYTE] |= direction.ordinal() << (i
+					% MOVES_PER_BYTE * 2);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Joins two encoded lists of moves, so that the moves of <code>second</code> follow those of
+	 * <code>first</code>. Moves are stored as directions, so they do not need to be decoded.
+	 * 
+	 * @param first
+	 *            the first list of moves.
+	 * @param second
+	 *            the list of moves performed after those of <code>first</code>.
+	 * @return the encoded moves of both lists.
+	 * @throws IllegalArgumentException
+	 *             if any of the lists is not valid.
+	 */
+	public static byte[] concatenate(byte[] first, byte[] second) {
+		int firstNumMoves = getNumMoves(first);
+		int secondNumMoves = getNumMoves(second);
+		int firstHeaderSize = getVarIntSize(firstNumMoves);
+		int secondHeaderSize = getVarIntSize(secondNumMoves);
+		int numMoves = firstNumMoves + secondNumMoves;
+
+		if (numMoves < 0) {
+			throw new IllegalArgumentException("Too many moves");
+		}
+
+		if (first.length != getEncodedSize(firstNumMoves)
+				|| second.length != getEncodedSize(secondNumMoves)) {
+			throw new IllegalArgumentException("Invalid list of moves");
+		}
+
+		int headerSize = getVarIntSize(numMoves);
+		byte[] result = new byte[getEncodedSize(numMoves)];
+
+		writeVarInt(result, numMoves);
+
+		/*
+		 * The moves of the first list are byte aligned both in the list and in the result. Unused
+		 * bits of its last byte are cleared, since the moves of the second list go there.
+		 */
+		System.arraycopy(first, firstHeaderSize, result, headerSize, first.length
+				- firstHeaderSize);
+
+		if (firstNumMoves % MOVES_PER_BYTE != 0) {
+			int lastByte = headerSize + firstNumMoves / MOVES_PER_BYTE;
+			result[lastByte] &= (1 << (firstNumMoves % MOVES_PER_BYTE * 2)) - 1;
+		}
+
+		for (int i = 0; i < secondNumMoves; i++) {
+			int code = (second[secondHeaderSize + i / MOVES_PER_BYTE] >> (i % MOVES_PER_BYTE * 2))
+					& 3;
+			int j = firstNumMoves + i;
+			result[headerSize + j / MOVES_PER_BYTE] |= code << (j % MOVES_PER_BYTE * 2);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Decodes a list of moves encoded by {@link #encode(List, List)}.
+	 * 
+	 * @param initialConfiguration
+	 *            the initial configuration of the puzzle, the same used to encode the moves.
+	 * @param data
+	 *            the encoded moves.
+	 * @return the tiles moved, in order.
+	 * @throws IllegalArgumentException
+	 *             if <code>data</code> is not a valid list of moves for the puzzle.
+	 */
+	public static List<Integer> decode(List<Integer> initialConfiguration, byte[] data) {
+		int numTiles = initialConfiguration.size();
+		int sideSize = getSideSize(numTiles);
+		int numMoves = getNumMoves(data);
+		int headerSize = getVarIntSize(numMoves);
+
+		if (data.length != getEncodedSize(numMoves)) {
+			throw new IllegalArgumentException("Invalid list of moves");
+		}
+
+		/*
+		 * Only the contents of each position are needed to know which tile is moved.
+		 */
+		int[] positionContents = new int[numTiles];
+		int emptyPos = -1;
+
+		for (int tile = 0; tile < numTiles; tile++) {
+			int pos = initialConfiguration.get(tile);
+
+			if (pos < 0 || pos >= numTiles) {
+				throw new IllegalArgumentException("Invalid configuration");
+			}
+
+			positionContents[pos] = tile;
+
+			if (tile == numTiles - 1) {
+				emptyPos = pos;
+			}
+		}
+
+		List<Integer> result = new ArrayList<Integer>(numMoves);
+
+		for (int i = 0; i < numMoves; i++) {
+			int code = (data[headerSize + i / MOVES_PER_BYTE] >> (i % MOVES_PER_BYTE * 2)) & 3;
+			int tilePos;
+
+			switch (DIRECTIONS[code]) {
+				case DOWN:
+					tilePos = emptyPos >= sideSize ? emptyPos - sideSize : -1;
+					break;
+				case UP:
+					tilePos = emptyPos < numTiles - sideSize ? emptyPos + sideSize : -1;
+					break;
+				case RIGHT:
+					tilePos = emptyPos % sideSize != 0 ? emptyPos - 1 : -1;
+					break;
+				default:
+					tilePos = (emptyPos + 1) % sideSize != 0 ? emptyPos + 1 : -1;
+					break;
+			}
+
+			if (tilePos == -1) {
+				throw new IllegalArgumentException("Invalid move at index " + i);
+			}
+
+			int tile = positionContents[tilePos];
+			positionContents[emptyPos] = tile;
+			positionContents[tilePos] = numTiles - 1;
+			emptyPos = tilePos;
+			result.add(tile);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of moves stored in <code>data</code>, without decoding them.
+	 * 
+	 * @param data
+	 *            moves encoded by {@link #encode(List, List)}.
+	 * @return the number of moves.
+	 * @throws IllegalArgumentException
+	 *             if <code>data</code> does not start with a valid number of moves.
+	 */
+	public static int getNumMoves(byte[] data) {
+		int result = readVarInt(data);
+
+		if (result < 0) {
+			throw new IllegalArgumentException("Invalid list of moves");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the encoding of an empty list of moves, which is valid for any puzzle.
+	 */
+	public static byte[] encodeEmpty() {
+		return new byte[1];
+	}
+
+	/**
+	 * Returns the number of tiles on the side of a puzzle with <code>numTiles</code> tiles.
+	 */
+	private static int getSideSize(int numTiles) {
+		int sideSize = (int) Math.sqrt(numTiles);
+
+		if (sideSize < NPuzzle.MIN_SIZE_SIZE || sideSize * sideSize != numTiles) {
+			throw new IllegalArgumentException("Invalid configuration");
+		}
+
+		return sideSize;
+	}
+
+	/**
+	 * Copies a configuration into an array, checking that all the positions are valid.
+	 */
+	private static int[] toIntArray(List<Integer> configuration) {
+		int[] result = new int[configuration.size()];
+		int i = 0;
+
+		for (int pos : configuration) {
+			if (pos < 0 || pos >= result.length) {
+				throw new IllegalArgumentException("Invalid configuration");
+			}
+
+			result[i++] = pos;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of bytes that the varint encoding of <code>value</code> takes.
+	 */
+	static int getVarIntSize(int value) {
+		int result = 1;
+
+		while ((value >>>= 7) != 0) {
+			result++;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of bytes that the encoding of <code>numMoves</code> moves takes.
+	 */
+	private static int getEncodedSize(int numMoves) {
+		return getVarIntSize(numMoves) + (numMoves + MOVES_PER_BYTE - 1) / MOVES_PER_BYTE;
+	}
+
+	/**
+	 * Returns the non-negative varint at the beginning of <code>data</code>, or -1 if there is no
+	 * valid one.
+	 */
+	static int readVarInt(byte[] data) {
+		int result = 0;
+
+		for (int i = 0; i < data.length && i < 5; i++) {
+			result |= (data[i] & 0x7f) << (7 * i);
+
+			if ((data[i] & 0x80) == 0) {
+				return result < 0 ? -1 : result;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Writes <code>value</code> as a varint at the beginning of <code>data</code>.
+	 */
+	static void writeVarInt(byte[] data, int value) {
+		int i = 0;
+
+		while ((value & ~0x7f) != 0) {
+			data[i++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+
+		data[i] = (byte) value;
+	}
+
+	private MoveCodec() {
+	}
+}
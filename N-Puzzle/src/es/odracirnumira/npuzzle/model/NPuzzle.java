@@ -1,15 +1,16 @@
 package es.odracirnumira.npuzzle.model;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.EventListener;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import es.odracirnumira.npuzzle.util.EventListenerList;
 import es.odracirnumira.npuzzle.util.MathUtilities;
 
 /**
@@ -53,22 +54,29 @@ import es.odracirnumira.npuzzle.util.MathUtilities;
  */
 public class NPuzzle implements Parcelable {
 	/**
-	 * The position of each tile. This list has <code>n+1</code> elements, since there are
+	 * The position of each tile. This array has <code>n+1</code> elements, since there are
 	 * <code>n+1</code> tiles (including the empty tile). Given <code>i &lt;= n</code>,
-	 * <code>tilePositions.get(i)</code> is the position of the <code>i-th</code> tile. The empty
-	 * tile has index <code>n</code>.
+	 * <code>tilePositions[i]</code> is the position of the <code>i-th</code> tile. The empty tile
+	 * has index <code>n</code>.
 	 * <p>
 	 * This is synchronized (not in a concurrency sense) with {@link #positionContents}.
 	 */
-	private List<Integer> tilePositions;
+	private int[] tilePositions;
 
 	/**
 	 * The tile that is present at each position of the puzzle. For each position of the puzzle,
-	 * this method returns the tile that is present at that position.
+	 * this array contains the tile that is present at that position.
 	 * <p>
 	 * This is synchronized (not in a concurrency sense) with {@link #tilePositions}.
 	 */
-	private List<Integer> positionContents;
+	private int[] positionContents;
+
+	/**
+	 * Neighbour table for the side size of this puzzle, as returned by
+	 * {@link #getNeighbourTable(int)}. It is shared among all the puzzles with the same side size,
+	 * so it must never be modified.
+	 */
+	private final int[] neighbours;
 
 	/**
 	 * N for the puzzle.
@@ -86,9 +94,16 @@ public class NPuzzle implements Parcelable {
 	private final int sideNumTiles;
 
 	/**
-	 * Listeners for events.
+	 * Listeners for events, in the order they were added. The array is never modified: adding or
+	 * removing a listener replaces it with a new one, so events can be fired without locking or
+	 * allocating anything.
+	 */
+	private volatile ITileListener[] listeners;
+
+	/**
+	 * Whether listeners are not notified when tiles are moved.
 	 */
-	private EventListenerList listeners;
+	private boolean notificationsSuspended;
 
 	/**
 	 * Maximum value allowed for N.
@@ -115,6 +130,23 @@ public class NPuzzle implements Parcelable {
 	 */
 	private static Random random = new Random();
 
+	/**
+	 * Number of entries that each position has in a neighbour table (see
+	 * {@link #getNeighbourTable(int)}).
+	 */
+	public static final int NUM_NEIGHBOURS = 4;
+
+	/**
+	 * Neighbour tables already computed, indexed by side size. See
+	 * {@link #getNeighbourTable(int)}.
+	 */
+	private static final Map<Integer, int[]> neighbourTables = new HashMap<Integer, int[]>();
+
+	/**
+	 * Empty array of listeners, shared by all the puzzles that have no listeners.
+	 */
+	private static final ITileListener[] NO_LISTENERS = new ITileListener[0];
+
 	/**
 	 * Interface for a listener that is notified when a tile of the N puzzle is moved.
 	 * 
@@ -133,6 +165,23 @@ public class NPuzzle implements Parcelable {
 		 *            the position that the tile has after moving.
 		 */
 		public void tileMoved(int tile, int oldPos, int newPos);
+
+		/**
+		 * Called when several tiles are moved at once by {@link NPuzzle#slideTo(int)}. The tiles
+		 * are listed in the order they would have been moved one by one, starting with the tile
+		 * next to the empty tile, and each of them has moved one position.
+		 * {@link #tileMoved(int, int, int)} is not called for these tiles.
+		 * <p>
+		 * The arrays must not be modified.
+		 * 
+		 * @param tiles
+		 *            the tiles that have been moved.
+		 * @param oldPositions
+		 *            the position that each tile had before moving.
+		 * @param newPositions
+		 *            the position that each tile has after moving.
+		 */
+		public void tilesMoved(int[] tiles, int[] oldPositions, int[] newPositions);
 	}
 
 	/**
@@ -152,7 +201,7 @@ public class NPuzzle implements Parcelable {
 	 *            N for the puzzle.
 	 */
 	private NPuzzle(int n) {
-		this(n, createDefaultTileConfiguration(n));
+		this(n, createDefaultTileConfiguration(n), true);
 	}
 
 	/**
@@ -178,9 +227,39 @@ public class NPuzzle implements Parcelable {
 	 *            the initial configuration.
 	 */
 	private NPuzzle(int n, List<Integer> initialConfiguration) {
+		this(n, toIntArray(initialConfiguration));
+	}
+
+	/**
+	 * Same as {@link #NPuzzle(int, List)}, but the configuration is an array. The array is not
+	 * copied, so it should not be modified after calling this constructor.
+	 * 
+	 * @param n
+	 *            N for the puzzle.
+	 * @param initialConfiguration
+	 *            the initial configuration.
+	 */
+	private NPuzzle(int n, int[] initialConfiguration) {
+		this(n, initialConfiguration, false);
+	}
+
+	/**
+	 * Same as {@link #NPuzzle(int, int[])}, but the check of the configuration can be skipped.
+	 * This should only be done for configurations that are known to be valid because they have been
+	 * created by this class, such as the solved configuration. The number of elements of the
+	 * configuration is always checked.
+	 * 
+	 * @param n
+	 *            N for the puzzle.
+	 * @param initialConfiguration
+	 *            the initial configuration.
+	 * @param trusted
+	 *            if true, the configuration is assumed to be valid and is not checked.
+	 */
+	private NPuzzle(int n, int[] initialConfiguration, boolean trusted) {
 		checkN(n);
 
-		if (n + 1 != initialConfiguration.size()) {
+		if (n + 1 != initialConfiguration.length) {
 			throw new IllegalArgumentException(
 					"N is not consistent with the size of the initial configuration list");
 		}
@@ -188,10 +267,15 @@ public class NPuzzle implements Parcelable {
 		this.n = n;
 		this.numTiles = n + 1;
 		this.sideNumTiles = (int) Math.sqrt(n + 1);
-		checkTileConfiguration(initialConfiguration);
+
+		if (!trusted) {
+			checkTileConfiguration(initialConfiguration);
+		}
+
 		this.tilePositions = initialConfiguration;
-		this.positionContents = getPositionsFromConfiguration(initialConfiguration);
-		this.listeners = new EventListenerList();
+		this.positionContents = getPositionsFromConfiguration(this.tilePositions);
+		this.neighbours = getNeighbourTable(this.sideNumTiles);
+		this.listeners = NO_LISTENERS;
 	}
 
 	/**
@@ -210,21 +294,20 @@ public class NPuzzle implements Parcelable {
 		/*
 		 * Check that the empty tile is next to the tile.
 		 */
-		List<Integer> nextPositions = getNextPositions(tilePos);
-		int emptyTilePosition = this.getEmptyTilePosition();
+		int emptyTilePosition = this.tilePositions[this.n];
 
-		if (!nextPositions.contains(emptyTilePosition)) {
+		if (!this.isNextTo(tilePos, emptyTilePosition)) {
 			throw new IllegalArgumentException("The tile to move is not next to the empty tile");
 		}
 
 		/*
 		 * Now swap positions.
 		 */
-		int tile = this.positionContents.get(tilePos);
-		this.positionContents.set(emptyTilePosition, tile);
-		this.positionContents.set(tilePos, numTiles - 1);
-		this.tilePositions.set(numTiles - 1, tilePos);
-		this.tilePositions.set(tile, emptyTilePosition);
+		int tile = this.positionContents[tilePos];
+		this.positionContents[emptyTilePosition] = tile;
+		this.positionContents[tilePos] = this.n;
+		this.tilePositions[this.n] = tilePos;
+		this.tilePositions[tile] = emptyTilePosition;
 
 		/*
 		 * Notify listeners.
@@ -254,6 +337,69 @@ public class NPuzzle implements Parcelable {
 		}
 	}
 
+	/**
+	 * Slides all the tiles between the empty tile and position <code>tilePos</code> one position
+	 * towards the empty tile, so that the empty tile ends up at <code>tilePos</code>. The position
+	 * must be in the same row or column as the empty tile, and cannot be the position of the empty
+	 * tile (see {@link #canSlideTo(int)}). Otherwise, an exception is thrown.
+	 * <p>
+	 * The result is the same as moving the tiles one by one, starting with the one next to the
+	 * empty tile, but listeners are notified only once, through
+	 * {@link ITileListener#tilesMoved(int[], int[], int[])}.
+	 * 
+	 * @param tilePos
+	 *            the position the empty tile is moved to.
+	 */
+	public void slideTo(int tilePos) {
+		if (!checkTilePosition(tilePos)) {
+			throw new IllegalArgumentException("Invalid tile position");
+		}
+
+		if (!this.canSlideTo(tilePos)) {
+			throw new IllegalArgumentException(
+					"The position is not in the same row or column as the empty tile");
+		}
+
+		int emptyTilePosition = this.tilePositions[this.n];
+		int distance = tilePos - emptyTilePosition;
+		int step;
+
+		if (tilePos / this.sideNumTiles == emptyTilePosition / this.sideNumTiles) {
+			step = distance > 0 ? 1 : -1;
+		} else {
+			step = distance > 0 ? this.sideNumTiles : -this.sideNumTiles;
+		}
+
+		int numMovedTiles = distance / step;
+		int[] tiles = new int[numMovedTiles];
+		int[] oldPositions = new int[numMovedTiles];
+		int[] newPositions = new int[numMovedTiles];
+
+		/*
+		 * Shift every tile one position towards the empty tile, starting with the one next to it.
+		 */
+		int newPos = emptyTilePosition;
+
+		for (int i = 0; i < numMovedTiles; i++) {
+			int oldPos = newPos + step;
+			int tile = this.positionContents[oldPos];
+			this.positionContents[newPos] = tile;
+			this.tilePositions[tile] = newPos;
+			tiles[i] = tile;
+			oldPositions[i] = oldPos;
+			newPositions[i] = newPos;
+			newPos = oldPos;
+		}
+
+		this.positionContents[tilePos] = this.n;
+		this.tilePositions[this.n] = tilePos;
+
+		/*
+		 * Notify listeners.
+		 */
+		this.fireTilesMoved(tiles, oldPositions, newPositions);
+	}
+
 	/**
 	 * Moves the tile <code>tile</code>. The tile must be at a position next to the empty tile, and
 	 * cannot be the empty tile. Otherwise, an exception is thrown. After calling this method, the
@@ -263,7 +409,11 @@ public class NPuzzle implements Parcelable {
 	 *            the tile to move. Must be next to the empty tile.
 	 */
 	public void moveTile(int tile) {
-		this.moveTileByPosition(this.tilePositions.get(tile));
+		if (!checkTile(tile)) {
+			throw new IllegalArgumentException("Invalid tile: " + tile);
+		}
+
+		this.moveTileByPosition(this.tilePositions[tile]);
 	}
 
 	/**
@@ -298,7 +448,7 @@ public class NPuzzle implements Parcelable {
 			throw new IllegalArgumentException("Invalid tile: " + tile);
 		}
 
-		return this.tilePositions.get(tile);
+		return this.tilePositions[tile];
 	}
 
 	/**
@@ -306,7 +456,7 @@ public class NPuzzle implements Parcelable {
 	 * {@link #getTilePosition(int)} with input argument <code>N</code>.
 	 */
 	public int getEmptyTilePosition() {
-		return this.tilePositions.get(this.n);
+		return this.tilePositions[this.n];
 	}
 
 	/**
@@ -321,7 +471,7 @@ public class NPuzzle implements Parcelable {
 			throw new IllegalArgumentException("Invalid tile position: " + tilePos);
 		}
 
-		return this.positionContents.get(tilePos);
+		return this.positionContents[tilePos];
 	}
 
 	/**
@@ -365,7 +515,7 @@ public class NPuzzle implements Parcelable {
 		}
 
 		for (int i = 0; i < this.numTiles; i++) {
-			result[i / this.sideNumTiles][i % sideNumTiles] = this.positionContents.get(i);
+			result[i / this.sideNumTiles][i % sideNumTiles] = this.positionContents[i];
 		}
 
 		return result;
@@ -378,8 +528,8 @@ public class NPuzzle implements Parcelable {
 	 * @return if the puzzle is solved.
 	 */
 	public boolean isSolved() {
-		for (int i = 0; i < tilePositions.size(); i++) {
-			if (tilePositions.get(i) != i) {
+		for (int i = 0; i < this.numTiles; i++) {
+			if (this.tilePositions[i] != i) {
 				return false;
 			}
 		}
@@ -403,7 +553,7 @@ public class NPuzzle implements Parcelable {
 			throw new IllegalArgumentException("Invalid tile");
 		}
 
-		return canMoveByPosition(this.tilePositions.get(tile));
+		return canMoveByPosition(this.tilePositions[tile]);
 	}
 
 	/**
@@ -425,14 +575,33 @@ public class NPuzzle implements Parcelable {
 		/*
 		 * Check that the empty tile is next to the tile.
 		 */
-		List<Integer> nextPositions = getNextPositions(tilePos);
-		int emptyTilePosition = this.getEmptyTilePosition();
+		return this.isNextTo(tilePos, this.tilePositions[this.n]);
+	}
 
-		if (!nextPositions.contains(emptyTilePosition)) {
+	/**
+	 * Checks if the empty tile can be slid to position <code>tilePos</code> with
+	 * {@link #slideTo(int)}. This happens only if the position is in the same row or column as the
+	 * empty tile, and is not the position of the empty tile.
+	 * <p>
+	 * Note that if <code>tilePos</code> is an invalid position, an exception is thrown.
+	 * 
+	 * @param tilePos
+	 *            the position to check.
+	 * @return true if the empty tile can be slid to <code>tilePos</code>.
+	 */
+	public boolean canSlideTo(int tilePos) {
+		if (!checkTilePosition(tilePos)) {
+			throw new IllegalArgumentException("Invalid tile position");
+		}
+
+		int emptyTilePosition = this.tilePositions[this.n];
+
+		if (tilePos == emptyTilePosition) {
 			return false;
 		}
 
-		return true;
+		return tilePos / this.sideNumTiles == emptyTilePosition / this.sideNumTiles
+				|| tilePos % this.sideNumTiles == emptyTilePosition % this.sideNumTiles;
 	}
 
 	/**
@@ -449,7 +618,7 @@ public class NPuzzle implements Parcelable {
 			throw new IllegalArgumentException("Invalid tile");
 		}
 
-		return this.moveDirectionFromPosition(this.tilePositions.get(tile));
+		return this.moveDirectionFromPosition(this.tilePositions[tile]);
 	}
 
 	/**
@@ -469,10 +638,9 @@ public class NPuzzle implements Parcelable {
 		/*
 		 * Check that the empty tile is next to the tile.
 		 */
-		List<Integer> nextPositions = getNextPositions(tilePos);
-		int emptyTilePosition = this.getEmptyTilePosition();
+		int emptyTilePosition = this.tilePositions[this.n];
 
-		if (!nextPositions.contains(emptyTilePosition)) {
+		if (!this.isNextTo(tilePos, emptyTilePosition)) {
 			return null;
 		}
 
@@ -501,8 +669,15 @@ public class NPuzzle implements Parcelable {
 	 * @param listener
 	 *            the listener.
 	 */
-	public void addTileListener(ITileListener listener) {
-		this.listeners.add(ITileListener.class, listener);
+	public synchronized void addTileListener(ITileListener listener) {
+		if (listener == null) {
+			return;
+		}
+
+		ITileListener[] newListeners = new ITileListener[this.listeners.length + 1];
+		System.arraycopy(this.listeners, 0, newListeners, 0, this.listeners.length);
+		newListeners[this.listeners.length] = listener;
+		this.listeners = newListeners;
 	}
 
 	/**
@@ -511,8 +686,43 @@ public class NPuzzle implements Parcelable {
 	 * @param listener
 	 *            the listener to remove.
 	 */
-	public void removeTileListener(ITileListener listener) {
-		this.listeners.remove(ITileListener.class, listener);
+	public synchronized void removeTileListener(ITileListener listener) {
+		if (listener == null) {
+			return;
+		}
+
+		for (int i = this.listeners.length - 1; i >= 0; i--) {
+			if (listener.equals(this.listeners[i])) {
+				ITileListener[] newListeners = this.listeners.length == 1 ? NO_LISTENERS
+						: new ITileListener[this.listeners.length - 1];
+				System.arraycopy(this.listeners, 0, newListeners, 0, i);
+				System.arraycopy(this.listeners, i + 1, newListeners, i, newListeners.length - i);
+				this.listeners = newListeners;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sets whether listeners are notified when tiles are moved. Notifications can be suspended
+	 * while a long sequence of moves is applied at once, such as when the moves of a saved game are
+	 * replayed, so that no time is spent on listeners. Note that listeners are not told about the
+	 * moves made while notifications are suspended, so the ones that keep track of the state of
+	 * the puzzle should be added afterwards.
+	 * 
+	 * @param suspended
+	 *            true to stop notifying listeners, and false to notify them again.
+	 */
+	public void setNotificationsSuspended(boolean suspended) {
+		this.notificationsSuspended = suspended;
+	}
+
+	/**
+	 * Returns true if listeners are not being notified when tiles are moved (see
+	 * {@link #setNotificationsSuspended(boolean)}).
+	 */
+	public boolean areNotificationsSuspended() {
+		return this.notificationsSuspended;
 	}
 
 	/**
@@ -561,48 +771,65 @@ public class NPuzzle implements Parcelable {
 	}
 
 	/**
-	 * Returns true if this puzzle can be solved, and false otherwise.
+	 * Returns true if this puzzle can be solved, and false otherwise. It takes O(N) time (see
+	 * {@link #isSolvableConfiguration(int[])}).
 	 */
 	public boolean isSolvable() {
-		/*
-		 * This implements the algorithm explained at
-		 * http://www.cs.bham.ac.uk/~mdr/teaching/modules04/java2/TilesSolvability.html
-		 */
-		/*
-		 * First, compute inversions.
-		 */
-		long inversions = 0;
+		return isSolvableConfiguration(this.tilePositions);
+	}
 
-		for (int pos = 0; pos < numTiles; pos++) {
-			int tileAtPos = positionContents.get(pos);
+	/**
+	 * Returns true if a puzzle with a given configuration can be solved, without creating the
+	 * puzzle. It can be used to validate many configurations, such as imported or persisted ones.
+	 * <p>
+	 * A configuration can be solved if and only if the parity of the permutation of the tiles
+	 * (including the empty tile) equals the parity of the distance, in rows plus columns, from the
+	 * empty tile to its position in the solved puzzle. Every move changes both parities. The
+	 * parity of the permutation is computed from its cycle decomposition: a permutation of
+	 * <code>k</code> elements with <code>c</code> cycles is even if and only if
+	 * <code>k - c</code> is even. This takes O(N) time, instead of the O(N²) time needed to count
+	 * inversions.
+	 * 
+	 * @param tilePositions
+	 *            for each tile <code>i</code>, the position it occupies. The empty tile is the last
+	 *            one, and the number of elements must be a perfect square.
+	 * @return true if the configuration can be solved.
+	 * @throws IllegalArgumentException
+	 *             if the configuration is not valid.
+	 */
+	public static boolean isSolvableConfiguration(int[] tilePositions) {
+		int numTiles = tilePositions.length;
+		int sideSize = (int) Math.sqrt(numTiles);
 
-			if (tileAtPos != n && tileAtPos != 0) {
-				for (int pos2 = pos + 1; pos2 < numTiles; pos2++) {
-					if (positionContents.get(pos2) < tileAtPos) {
-						inversions++;
-					}
-				}
-			}
+		if (sideSize < MIN_SIZE_SIZE || sideSize * sideSize != numTiles) {
+			throw new IllegalArgumentException("Invalid number of tiles");
 		}
 
 		/*
-		 * Now check solvability condition.
+		 * Follow each cycle of the permutation. A position that is out of range or reached twice
+		 * means that the configuration is not a permutation.
 		 */
-		if (sideNumTiles % 2 == 0) {
-			boolean emptyTileOnOddRowFromBotton = (getEmptyTilePosition() / sideNumTiles) % 2 != 0;
+		boolean[] visited = new boolean[numTiles];
+		int numCycles = 0;
 
-			if (emptyTileOnOddRowFromBotton == (inversions % 2 == 0)) {
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			if (inversions % 2 == 0) {
-				return true;
-			} else {
-				return false;
+		for (int tile = 0; tile < numTiles; tile++) {
+			if (!visited[tile]) {
+				numCycles++;
+				int next = tile;
+
+				do {
+					visited[next] = true;
+					next = tilePositions[next];
+
+					if (next < 0 || next >= numTiles || (visited[next] && next != tile)) {
+						throw new IllegalArgumentException("Invalid tile configuration");
+					}
+				} while (next != tile);
 			}
 		}
+
+		boolean oddPermutation = (numTiles - numCycles) % 2 != 0;
+		return hasSolvableParity(oddPermutation, tilePositions[numTiles - 1], sideSize);
 	}
 
 	/**
@@ -627,7 +854,7 @@ public class NPuzzle implements Parcelable {
 	public String toString() {
 		StringBuilder result = new StringBuilder();
 
-		for (Integer position : this.tilePositions) {
+		for (int position : this.tilePositions) {
 			result.append(position).append(' ');
 		}
 
@@ -640,74 +867,117 @@ public class NPuzzle implements Parcelable {
 	 * Throws an exception if <code>tiles</code> is not a valid tile configuration. A valid
 	 * configuration has {@link #numTiles} elements, all of them are between 0 and {@link #numTiles}
 	 * -1, and there are no repetitions.
+	 * <p>
+	 * The positions already seen are marked in a {@link BitSet}, so the check takes O(N) time.
 	 */
-	private void checkTileConfiguration(List<Integer> tiles) {
-		if (tiles.size() != numTiles) {
+	private void checkTileConfiguration(int[] tiles) {
+		if (tiles.length != numTiles) {
 			throw new IllegalArgumentException("Invalid number of tiles");
 		}
 
-		List<Integer> used = new ArrayList<Integer>();
+		BitSet used = new BitSet(numTiles);
 
-		for (Integer tilePos : tiles) {
+		for (int tilePos : tiles) {
 			if (!checkTilePosition(tilePos)) {
 				throw new IllegalArgumentException("Invalid tile position (" + tilePos
 						+ "). Must be between 0 and numTiles-1");
 			}
 
-			if (used.contains(tilePos)) {
+			if (used.get(tilePos)) {
 				throw new IllegalArgumentException("Repeated tile value: " + tilePos);
 			}
 
-			used.add(tilePos);
+			used.set(tilePos);
 		}
 	}
 
 	/**
-	 * Given a valid tile configuration, this method returns a list that contains, for each element
-	 * <code>i</code>, what tile occupying that position in the puzzle.
+	 * Given a valid tile configuration, this method returns an array that contains, for each
+	 * element <code>i</code>, what tile occupying that position in the puzzle.
 	 */
-	private List<Integer> getPositionsFromConfiguration(List<Integer> tiles) {
-		Integer[] result = new Integer[tiles.size()];
+	private static int[] getPositionsFromConfiguration(int[] tiles) {
+		int[] result = new int[tiles.length];
 
-		for (int i = 0; i < tiles.size(); i++) {
-			result[tiles.get(i)] = i;
+		for (int i = 0; i < tiles.length; i++) {
+			result[tiles[i]] = i;
 		}
 
-		return Arrays.asList(result);
+		return result;
 	}
 
 	/**
-	 * Given a tile position, this function returns a list that contains the positions of the tiles
-	 * above, below, to the right of and to the left of the tile, in that order. Any invalid
-	 * position is not included in the result.
+	 * Converts a list of integers into an array.
 	 */
-	private List<Integer> getNextPositions(int tilePos) {
-		List<Integer> result = new ArrayList<Integer>();
+	private static int[] toIntArray(List<Integer> list) {
+		int[] result = new int[list.size()];
 
-		int tileRow = tilePos / this.sideNumTiles;
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
 
-		int posUp = tilePos - sideNumTiles;
-		int posDown = tilePos + sideNumTiles;
-		int posLeft = tilePos - 1;
-		int posRight = tilePos + 1;
+		return result;
+	}
 
-		if (checkTilePosition(posUp)) {
-			result.add(posUp);
-		}
+	/**
+	 * Returns true if the positions <code>pos1</code> and <code>pos2</code> are next to each other.
+	 * Both positions must be valid.
+	 */
+	private boolean isNextTo(int pos1, int pos2) {
+		int base = pos1 * NUM_NEIGHBOURS;
 
-		if (checkTilePosition(posDown)) {
-			result.add(posDown);
+		for (int i = base; i < base + NUM_NEIGHBOURS; i++) {
+			if (this.neighbours[i] == pos2) {
+				return true;
+			}
 		}
 
-		if (checkTilePosition(posLeft) && posLeft / this.sideNumTiles == tileRow) {
-			result.add(posLeft);
-		}
+		return false;
+	}
 
-		if (checkTilePosition(posRight) && posRight / this.sideNumTiles == tileRow) {
-			result.add(posRight);
+	/**
+	 * Returns the neighbour table for puzzles whose side has <code>sideSize</code> tiles. For each
+	 * position <code>p</code>, the entries <code>4*p</code> to <code>4*p+3</code> of the table are
+	 * the positions above, below, to the left of and to the right of <code>p</code>, in that order.
+	 * Invalid positions are set to -1.
+	 * <p>
+	 * Tables are computed only once per side size and shared among all the puzzles (and the
+	 * solvers), so the returned array must not be modified.
+	 */
+	public static int[] getNeighbourTable(int sideSize) {
+		synchronized (neighbourTables) {
+			int[] result = neighbourTables.get(sideSize);
+
+			if (result == null) {
+				int numPositions = sideSize * sideSize;
+				result = new int[numPositions * NUM_NEIGHBOURS];
+
+				for (int pos = 0; pos < numPositions; pos++) {
+					int row = pos / sideSize;
+					int column = pos % sideSize;
+					int base = pos * NUM_NEIGHBOURS;
+
+					result[base] = row > 0 ? pos - sideSize : -1;
+					result[base + 1] = row < sideSize - 1 ? pos + sideSize : -1;
+					result[base + 2] = column > 0 ? pos - 1 : -1;
+					result[base + 3] = column < sideSize - 1 ? pos + 1 : -1;
+				}
+
+				neighbourTables.put(sideSize, result);
+			}
+
+			return result;
 		}
+	}
 
-		return result;
+	/**
+	 * Returns true if a configuration can be solved, given the parity of its permutation and the
+	 * position of its empty tile (see {@link #isSolvableConfiguration(int[])}).
+	 */
+	private static boolean hasSolvableParity(boolean oddPermutation, int emptyTilePosition,
+			int sideSize) {
+		int emptyTileDistance = (sideSize - 1 - emptyTilePosition / sideSize)
+				+ (sideSize - 1 - emptyTilePosition % sideSize);
+		return oddPermutation == (emptyTileDistance % 2 != 0);
 	}
 
 	/**
@@ -735,9 +1005,39 @@ public class NPuzzle implements Parcelable {
 	 *            the position that the tile has after moving.
 	 */
 	private void fireTileMoved(int tile, int oldPos, int newPos) {
-		ITileListener[] listeners = this.listeners.getListeners(ITileListener.class);
-		for (ITileListener listener : listeners) {
-			listener.tileMoved(tile, oldPos, newPos);
+		if (this.notificationsSuspended) {
+			return;
+		}
+
+		/*
+		 * The most recently added listener is notified first.
+		 */
+		ITileListener[] listeners = this.listeners;
+
+		for (int i = listeners.length - 1; i >= 0; i--) {
+			listeners[i].tileMoved(tile, oldPos, newPos);
+		}
+	}
+
+	/**
+	 * Fires the event that notifies that several tiles of the puzzle have been moved at once.
+	 * 
+	 * @param tiles
+	 *            the tiles that have been moved.
+	 * @param oldPositions
+	 *            the position that each tile had before moving.
+	 * @param newPositions
+	 *            the position that each tile has after moving.
+	 */
+	private void fireTilesMoved(int[] tiles, int[] oldPositions, int[] newPositions) {
+		if (this.notificationsSuspended) {
+			return;
+		}
+
+		ITileListener[] listeners = this.listeners;
+
+		for (int i = listeners.length - 1; i >= 0; i--) {
+			listeners[i].tilesMoved(tiles, oldPositions, newPositions);
 		}
 	}
 
@@ -748,7 +1048,7 @@ public class NPuzzle implements Parcelable {
 	 * @param n
 	 *            N for the puzzle.
 	 */
-	private static List<Integer> createDefaultTileConfiguration(int n) {
+	private static int[] createDefaultTileConfiguration(int n) {
 		if (n <= 1) {
 			throw new IllegalArgumentException("N must be greater than 1");
 		}
@@ -757,11 +1057,11 @@ public class NPuzzle implements Parcelable {
 			throw new IllegalArgumentException("N + 1 must be a perfect square");
 		}
 
-		List<Integer> result = new ArrayList<Integer>();
 		int numTiles = n + 1;
+		int[] result = new int[numTiles];
 
 		for (int i = 0; i < numTiles; i++) {
-			result.add(i, i);
+			result[i] = i;
 		}
 
 		return result;
@@ -873,30 +1173,44 @@ public class NPuzzle implements Parcelable {
 		return new NPuzzle(sideSize * sideSize - 1, initialConfiguration);
 	}
 
+	/**
+	 * Same as {@link #newNPuzzleFromNAndConfiguration(int, List)}, but the configuration is an
+	 * array, so no boxing is involved. The array is not copied, so it must not be modified after
+	 * calling this method.
+	 * 
+	 * @param n
+	 *            N for the puzzle.
+	 * @param initialConfiguration
+	 *            the initial configuration.
+	 */
+	static NPuzzle newNPuzzleFromNAndConfiguration(int n, int[] initialConfiguration) {
+		return new NPuzzle(n, initialConfiguration);
+	}
+
 	/**
 	 * Creates a new random N puzzle whose N value will be <code>n</code>. The returned puzzle can
-	 * be solved.
+	 * be solved, and all the solvable configurations are equally likely.
 	 * 
 	 * @param n
 	 *            N for the puzzle.
 	 * @return the N puzzle.
 	 */
 	public static NPuzzle newRandomNPuzzleFromN(int n) {
-		NPuzzle result = new NPuzzle(n);
-
-		/*
-		 * Apply random moves to the initially solved puzzle.
-		 */
-		final int totalMoves = n * 100;
-
-		for (int i = 0; i < totalMoves; i++) {
-			List<Integer> nextToEmptyTilePositions = result.getNextPositions(result
-					.getEmptyTilePosition());
-			result.moveTileByPosition(nextToEmptyTilePositions.get(random
-					.nextInt(nextToEmptyTilePositions.size())));
-		}
+		return newRandomNPuzzleFromN(n, random);
+	}
 
-		return result;
+	/**
+	 * Same as {@link #newRandomNPuzzleFromN(int)}, but the puzzle is generated from a seed. The
+	 * same seed and value of N always produce the same puzzle, so a scramble can be reproduced.
+	 * 
+	 * @param n
+	 *            N for the puzzle.
+	 * @param seed
+	 *            the seed of the random number generator.
+	 * @return the N puzzle.
+	 */
+	public static NPuzzle newRandomNPuzzleFromN(int n, long seed) {
+		return newRandomNPuzzleFromN(n, new Random(seed));
 	}
 
 	/**
@@ -916,6 +1230,75 @@ public class NPuzzle implements Parcelable {
 		return newRandomNPuzzleFromN(sideSize * sideSize - 1);
 	}
 
+	/**
+	 * Same as {@link #newRandomNPuzzleFromSideSize(int)}, but the puzzle is generated from a seed.
+	 * The same seed and side size always produce the same puzzle.
+	 * 
+	 * @param sideSize
+	 *            the number of elements per side of the puzzle.
+	 * @param seed
+	 *            the seed of the random number generator.
+	 * @return the N puzzle.
+	 */
+	public static NPuzzle newRandomNPuzzleFromSideSize(int sideSize, long seed) {
+		checkSideSize(sideSize);
+		return newRandomNPuzzleFromN(sideSize * sideSize - 1, seed);
+	}
+
+	/**
+	 * Creates a new random and solvable N puzzle, taking random numbers from <code>random</code>.
+	 * <p>
+	 * The tiles of a solved puzzle are shuffled with a Fisher-Yates shuffle, which gives a uniform
+	 * random permutation in O(N) time. Only half of the permutations can be solved: those whose
+	 * parity equals the parity of the distance (in rows plus columns) from the empty tile to its
+	 * position in the solved puzzle. If the permutation cannot be solved, two tiles that are not
+	 * the empty tile are swapped, which changes its parity but not the position of the empty tile.
+	 * This maps the unsolvable permutations one to one onto the solvable ones, so the result is
+	 * still uniform.
+	 */
+	private static NPuzzle newRandomNPuzzleFromN(int n, Random random) {
+		NPuzzle result = new NPuzzle(n);
+		int[] positionContents = result.positionContents;
+		int[] tilePositions = result.tilePositions;
+
+		/*
+		 * Shuffle, keeping track of the parity of the permutation. Every swap of two different
+		 * positions changes it.
+		 */
+		boolean oddPermutation = false;
+
+		for (int i = result.numTiles - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+
+			if (j != i) {
+				int tile = positionContents[i];
+				positionContents[i] = positionContents[j];
+				positionContents[j] = tile;
+				tilePositions[positionContents[i]] = i;
+				tilePositions[tile] = j;
+				oddPermutation = !oddPermutation;
+			}
+		}
+
+		/*
+		 * Fix the parity if needed, swapping the tiles at the first two positions that do not hold
+		 * the empty tile.
+		 */
+		int emptyTilePosition = tilePositions[n];
+
+		if (!hasSolvableParity(oddPermutation, emptyTilePosition, result.sideNumTiles)) {
+			int pos1 = emptyTilePosition == 0 ? 1 : 0;
+			int pos2 = emptyTilePosition == pos1 + 1 ? pos1 + 2 : pos1 + 1;
+			int tile = positionContents[pos1];
+			positionContents[pos1] = positionContents[pos2];
+			positionContents[pos2] = tile;
+			tilePositions[positionContents[pos1]] = pos1;
+			tilePositions[tile] = pos2;
+		}
+
+		return result;
+	}
+
 	/**
 	 * This method converts the input string <code>s</code> to a sequence of integers.
 	 * <code>s</code> must be a string with the format "number1 number2 ... numberN", that is, a
@@ -930,14 +1313,51 @@ public class NPuzzle implements Parcelable {
 	 * @return the sequence of numbers that <code>s</code> represents.
 	 */
 	public static List<Integer> stringToSequenceOfIntegers(String s) {
-		String[] numbers = s.split("( )+");
-
 		List<Integer> result = new ArrayList<Integer>();
+		int length = s.length();
+		int i = 0;
+
+		/*
+		 * Numbers are parsed by hand instead of splitting the string with a regular expression,
+		 * since this method is used to read long lists of moves.
+		 */
+		while (i < length) {
+			if (s.charAt(i) == ' ') {
+				i++;
+				continue;
+			}
+
+			boolean negative = s.charAt(i) == '-';
 
-		for (String number : numbers) {
-			if (number.length() != 0) {
-				result.add(Integer.parseInt(number));
+			if (negative) {
+				i++;
 			}
+
+			int start = i;
+			long value = 0;
+			long maxValue = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+
+			while (i < length && s.charAt(i) != ' ') {
+				int digit = s.charAt(i) - '0';
+
+				if (digit < 0 || digit > 9) {
+					throw new NumberFormatException("Invalid number in \"" + s + "\"");
+				}
+
+				value = value * 10 + digit;
+
+				if (value > maxValue) {
+					throw new NumberFormatException("Number out of range in \"" + s + "\"");
+				}
+
+				i++;
+			}
+
+			if (i == start) {
+				throw new NumberFormatException("Invalid number in \"" + s + "\"");
+			}
+
+			result.add((int) (negative ? -value : value));
 		}
 
 		return result;
@@ -984,8 +1404,8 @@ public class NPuzzle implements Parcelable {
 	 * @see android.os.Parcelable#writeToParcel(android.os.Parcel, int)
 	 */
 	public void writeToParcel(Parcel dest, int flags) {
-		// Write only the tilePositions list. The other parameters will be reconstructed later
-		dest.writeList(this.tilePositions);
+		// Write only the tilePositions array. The other parameters will be reconstructed later
+		dest.writeIntArray(this.tilePositions);
 	}
 
 	/**
@@ -998,10 +1418,16 @@ public class NPuzzle implements Parcelable {
 
 		public NPuzzle createFromParcel(Parcel source) {
 			// Retrieve the tilePositions
-			List<Integer> tilePositions = new ArrayList<Integer>();
-			source.readList(tilePositions, null);
+			int[] tilePositions = source.createIntArray();
+
+			if (tilePositions == null) {
+				throw new IllegalArgumentException("No tile configuration in the parcel");
+			}
 
-			return newNPuzzleFromNAndConfiguration(tilePositions.size() - 1, tilePositions);
+			/*
+			 * A parcel can come from anywhere, so the configuration is checked like any other.
+			 */
+			return new NPuzzle(tilePositions.length - 1, tilePositions);
 		}
 	};
 }
@@ -1,5 +1,7 @@
 package es.odracirnumira.npuzzle.model;
 
+import java.util.List;
+
 import android.os.Parcel;
 
 /**
@@ -21,6 +23,14 @@ public class NPuzzleGame extends AbstractNPuzzleGame {
 	 */
 	public long lastPlayedTime;
 
+	/**
+	 * The number of moves of {@link #moves} that have already been saved into the content provider,
+	 * or handed to a task that saves them. Only the rest of the moves have to be appended when the
+	 * game is saved again. It is -1 if the stored moves are not known to match the first ones of
+	 * {@link #moves}, in which case all of them have to be written again.
+	 */
+	public int savedMoves;
+
 	/**
 	 * Constructor for the parcelable API.
 	 * 
@@ -30,6 +40,7 @@ public class NPuzzleGame extends AbstractNPuzzleGame {
 	protected NPuzzleGame(Parcel in) {
 		super(in);
 		this.lastPlayedTime = in.readLong();
+		this.savedMoves = in.readInt();
 	}
 
 	public int describeContents() {
@@ -39,6 +50,54 @@ public class NPuzzleGame extends AbstractNPuzzleGame {
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
 		dest.writeLong(this.lastPlayedTime);
+		dest.writeInt(this.savedMoves);
+	}
+
+	/**
+	 * Builds the current puzzle of a game stored in the content provider. If the game has a
+	 * snapshot of its current state that was taken after as many moves as the game has, the puzzle
+	 * is built from it, which only depends on the size of the puzzle. Otherwise, or if the snapshot
+	 * is not valid, the moves are replayed from the initial state.
+	 * 
+	 * @param initialState
+	 *            the initial configuration of the puzzle.
+	 * @param moves
+	 *            the moves of the game, encoded by {@link MoveCodec}.
+	 * @param currentState
+	 *            the snapshot of the current state, as returned by
+	 *            {@link PackedNPuzzleState#toByteArray()}. May be null.
+	 * @param currentStateNumMoves
+	 *            the number of moves of the game when the snapshot was taken, or -1 if it is not
+	 *            known, in which case the snapshot is not used.
+	 * @return the puzzle.
+	 */
+	public static NPuzzle restorePuzzle(List<Integer> initialState, byte[] moves,
+			byte[] currentState, int currentStateNumMoves) {
+		if (currentState != null && currentStateNumMoves >= 0
+				&& currentStateNumMoves == MoveCodec.getNumMoves(moves)) {
+			try {
+				NPuzzle puzzle = PackedNPuzzleState.fromByteArray(currentState).toNPuzzle();
+
+				if (puzzle.getNumTiles() == initialState.size()) {
+					return puzzle;
+				}
+			} catch (IllegalArgumentException e) {
+				/*
+				 * Replay the moves instead.
+				 */
+			}
+		}
+
+		NPuzzle puzzle = NPuzzle.newNPuzzleFromNAndConfiguration(initialState.size() - 1,
+				initialState);
+
+		/*
+		 * Nobody listens to the new puzzle yet, so there is no need to notify the replayed moves.
+		 */
+		puzzle.setNotificationsSuspended(true);
+		puzzle.moveTiles(MoveCodec.decode(initialState, moves));
+		puzzle.setNotificationsSuspended(false);
+		return puzzle;
 	}
 
 	public static final Creator<NPuzzleGame> CREATOR = new Creator<NPuzzleGame>() {
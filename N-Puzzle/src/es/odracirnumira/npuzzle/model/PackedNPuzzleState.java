@@ -0,0 +1,348 @@
+package es.odracirnumira.npuzzle.model;
+
+import java.util.Arrays;
+
+/**
+ * Compact, immutable representation of the state of an {@link NPuzzle}. For each tile, the state
+ * stores the position it occupies (the same configuration used by
+ * {@link NPuzzle#newNPuzzleFromNAndConfiguration(int, java.util.List)} and returned by
+ * {@link NPuzzle#toString()}), using as few bits per tile as possible. Tiles are packed into
+ * <code>long</code> values and never span two of them.
+ * <p>
+ * For puzzles up to 4x4, 4 bits per tile are enough, so the whole state fits in a single
+ * <code>long</code> (see {@link #toLong()} and {@link #fromLong(int, long)}). Bigger puzzles use
+ * an array of longs.
+ * <p>
+ * Since instances are immutable and implement {@link #equals(Object)} and {@link #hashCode()}, they
+ * can be used as keys of hash maps. They can also be stored as a byte array (see
+ * {@link #toByteArray()}), for instance in a database BLOB.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class PackedNPuzzleState {
+	/**
+	 * Number of bits of a word.
+	 */
+	private static final int WORD_SIZE = 64;
+
+	/**
+	 * The number of tiles on the side of the puzzle.
+	 */
+	private final int sideSize;
+
+	/**
+	 * The number of bits used for each tile.
+	 */
+	private final int bitsPerTile;
+
+	/**
+	 * The number of tiles stored in each word.
+	 */
+	private final int tilesPerWord;
+
+	/**
+	 * The packed positions of the tiles. Tile <code>i</code> is stored in word
+	 * <code>i/tilesPerWord</code>, starting at bit <code>(i%tilesPerWord)*bitsPerTile</code>.
+	 */
+	private final long[] words;
+
+	/**
+	 * The hash code, computed once.
+	 */
+	private final int hashCode;
+
+	/**
+	 * Creates a state.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the puzzle.
+	 * @param words
+	 *            the packed positions of the tiles. The array is not copied.
+	 */
+	private PackedNPuzzleState(int sideSize, long[] words) {
+		this.sideSize = sideSize;
+		this.bitsPerTile = getBitsPerTile(sideSize);
+		this.tilesPerWord = WORD_SIZE / this.bitsPerTile;
+		this.words = words;
+		this.hashCode = 31 * sideSize + Arrays.hashCode(words);
+	}
+
+	/**
+	 * Returns the state of <code>puzzle</code>.
+	 */
+	public static PackedNPuzzleState fromNPuzzle(NPuzzle puzzle) {
+		int sideSize = puzzle.getSideNumTiles();
+		int numTiles = puzzle.getNumTiles();
+		int bitsPerTile = getBitsPerTile(sideSize);
+		int tilesPerWord = WORD_SIZE / bitsPerTile;
+		long[] words = new long[getNumWords(sideSize)];
+
+		for (int tile = 0; tile < numTiles; tile++) {
+			words[tile / tilesPerWord] |= (long) puzzle.getTilePosition(tile) << (tile
+					% tilesPerWord * bitsPerTile);
+		}
+
+		return new PackedNPuzzleState(sideSize, words);
+	}
+
+	/**
+	 * Returns the state of a puzzle with a given configuration.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the puzzle.
+	 * @param tilePositions
+	 *            for each tile, the position it occupies. It must have
+	 *            <code>sideSize*sideSize</code> elements, each one between 0 and
+	 *            <code>sideSize*sideSize-1</code>. Repetitions are not checked.
+	 * @return the state.
+	 */
+	public static PackedNPuzzleState fromConfiguration(int sideSize, int[] tilePositions) {
+		int numTiles = sideSize * sideSize;
+
+		if (sideSize < NPuzzle.MIN_SIZE_SIZE || sideSize > NPuzzle.MAX_SIDE_SIZE
+				|| tilePositions.length != numTiles) {
+			throw new IllegalArgumentException("Invalid configuration");
+		}
+
+		int bitsPerTile = getBitsPerTile(sideSize);
+		int tilesPerWord = WORD_SIZE / bitsPerTile;
+		long[] words = new long[getNumWords(sideSize)];
+
+		for (int tile = 0; tile < numTiles; tile++) {
+			int pos = tilePositions[tile];
+
+			if (pos < 0 || pos >= numTiles) {
+				throw new IllegalArgumentException("Invalid tile position: " + pos);
+			}
+
+			words[tile / tilesPerWord] |= (long) pos << (tile % tilesPerWord * bitsPerTile);
+		}
+
+		return new PackedNPuzzleState(sideSize, words);
+	}
+
+	/**
+	 * Returns the state stored in a <code>long</code> by {@link #toLong()}.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the puzzle. It must be 4 or less.
+	 * @param value
+	 *            the packed state.
+	 * @return the state.
+	 */
+	public static PackedNPuzzleState fromLong(int sideSize, long value) {
+		if (sideSize < NPuzzle.MIN_SIZE_SIZE || !fitsInLong(sideSize)) {
+			throw new IllegalArgumentException("The state does not fit in a long");
+		}
+
+		return new PackedNPuzzleState(sideSize, new long[] { value });
+	}
+
+	/**
+	 * Returns the state stored in a byte array by {@link #toByteArray()}.
+	 * 
+	 * @param bytes
+	 *            the byte array.
+	 * @return the state.
+	 */
+	public static PackedNPuzzleState fromByteArray(byte[] bytes) {
+		int sideSize = MoveCodec.readVarInt(bytes);
+
+		if (sideSize < NPuzzle.MIN_SIZE_SIZE || sideSize > NPuzzle.MAX_SIDE_SIZE) {
+			throw new IllegalArgumentException("Invalid packed state");
+		}
+
+		int headerSize = MoveCodec.getVarIntSize(sideSize);
+		int numWords = getNumWords(sideSize);
+
+		if (bytes.length != headerSize + (long) numWords * 8) {
+			throw new IllegalArgumentException("Invalid packed state");
+		}
+
+		long[] words = new long[numWords];
+
+		for (int i = 0; i < words.length; i++) {
+			long word = 0;
+
+			for (int j = 0; j < 8; j++) {
+				word = (word << 8) | (bytes[headerSize + i * 8 + j] & 0xff);
+			}
+
+			words[i] = word;
+		}
+
+		return new PackedNPuzzleState(sideSize, words);
+	}
+
+	/**
+	 * Returns true if the state of a puzzle whose side has <code>sideSize</code> tiles fits in a
+	 * single <code>long</code>.
+	 */
+	public static boolean fitsInLong(int sideSize) {
+		return sideSize * sideSize * getBitsPerTile(sideSize) <= WORD_SIZE;
+	}
+
+	/**
+	 * Returns the number of tiles on the side of the puzzle.
+	 */
+	public int getSideSize() {
+		return this.sideSize;
+	}
+
+	/**
+	 * Returns the number of tiles of the puzzle, including the empty tile.
+	 */
+	public int getNumTiles() {
+		return this.sideSize * this.sideSize;
+	}
+
+	/**
+	 * Returns the position of tile <code>tile</code>.
+	 */
+	public int getTilePosition(int tile) {
+		if (tile < 0 || tile >= this.getNumTiles()) {
+			throw new IllegalArgumentException("Invalid tile");
+		}
+
+		long word = this.words[tile / this.tilesPerWord];
+		return (int) (word >>> (tile % this.tilesPerWord * this.bitsPerTile))
+				& ((1 << this.bitsPerTile) - 1);
+	}
+
+	/**
+	 * Stores the position of each tile in <code>tilePositions</code>, which must have
+	 * {@link #getNumTiles()} elements at least.
+	 */
+	public void getConfiguration(int[] tilePositions) {
+		int numTiles = this.getNumTiles();
+		int mask = (1 << this.bitsPerTile) - 1;
+		int tile = 0;
+
+		for (int i = 0; i < this.words.length; i++) {
+			long word = this.words[i];
+
+			for (int j = 0; j < this.tilesPerWord && tile < numTiles; j++, tile++) {
+				tilePositions[tile] = (int) word & mask;
+				word >>>= this.bitsPerTile;
+			}
+		}
+	}
+
+	/**
+	 * Creates a new {@link NPuzzle} whose state is this one.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the state is not a valid configuration.
+	 */
+	public NPuzzle toNPuzzle() {
+		int[] configuration = new int[this.getNumTiles()];
+		this.getConfiguration(configuration);
+		return NPuzzle.newNPuzzleFromNAndConfiguration(configuration.length - 1, configuration);
+	}
+
+	/**
+	 * Returns true if the state can be solved, without creating an {@link NPuzzle} (see
+	 * {@link NPuzzle#isSolvableConfiguration(int[])}).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the state is not a valid configuration.
+	 */
+	public boolean isSolvable() {
+		int[] configuration = new int[this.getNumTiles()];
+		this.getConfiguration(configuration);
+		return NPuzzle.isSolvableConfiguration(configuration);
+	}
+
+	/**
+	 * Returns the state as a single <code>long</code>. It can only be used if
+	 * {@link #fitsInLong(int)} returns true for the side size of the puzzle.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the state does not fit in a <code>long</code>.
+	 */
+	public long toLong() {
+		if (this.words.length != 1) {
+			throw new IllegalStateException("The state does not fit in a long");
+		}
+
+		return this.words[0];
+	}
+
+	/**
+	 * Returns the state as a byte array. It starts with the side size of the puzzle, as a varint
+	 * (a single byte for sides up to 127), followed by the words that store the positions of the
+	 * tiles, in big-endian order.
+	 */
+	public byte[] toByteArray() {
+		int headerSize = MoveCodec.getVarIntSize(this.sideSize);
+		byte[] result = new byte[headerSize + this.words.length * 8];
+		MoveCodec.writeVarInt(result, this.sideSize);
+
+		for (int i = 0; i < this.words.length; i++) {
+			long word = this.words[i];
+
+			for (int j = 7; j >= 0; j--) {
+				result[headerSize + i * 8 + j] = (byte) word;
+				word >>>= 8;
+			}
+		}
+
+		return result;
+	}
+
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+
+		if (!(o instanceof PackedNPuzzleState)) {
+			return false;
+		}
+
+		PackedNPuzzleState other = (PackedNPuzzleState) o;
+		return this.hashCode == other.hashCode && this.sideSize == other.sideSize
+				&& Arrays.equals(this.words, other.words);
+	}
+
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+	/**
+	 * Returns the configuration in the same format as {@link NPuzzle#toString()}.
+	 */
+	public String toString() {
+		int[] configuration = new int[this.getNumTiles()];
+		this.getConfiguration(configuration);
+
+		StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < configuration.length; i++) {
+			if (i != 0) {
+				result.append(' ');
+			}
+
+			result.append(configuration[i]);
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * Returns the number of bits needed to store a position of a puzzle whose side has
+	 * <code>sideSize</code> tiles.
+	 */
+	private static int getBitsPerTile(int sideSize) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(sideSize * sideSize - 1));
+	}
+
+	/**
+	 * Returns the number of words needed to store the state of a puzzle whose side has
+	 * <code>sideSize</code> tiles.
+	 */
+	private static int getNumWords(int sideSize) {
+		int tilesPerWord = WORD_SIZE / getBitsPerTile(sideSize);
+		return (sideSize * sideSize + tilesPerWord - 1) / tilesPerWord;
+	}
+}
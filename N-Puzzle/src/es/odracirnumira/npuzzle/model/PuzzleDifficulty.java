@@ -0,0 +1,94 @@
+package es.odracirnumira.npuzzle.model;
+
+/**
+ * Difficulty of an {@link NPuzzle}, measured by the number of moves needed to solve it.
+ * <p>
+ * The number of moves of a puzzle is compared to a reference length that depends on the size of
+ * the puzzle (see {@link #getReferenceLength(int)}): the expected sum of the Manhattan distances of
+ * the tiles of a uniformly random configuration. A puzzle is {@link #EASY} if it can be solved in
+ * less than {@link #NORMAL_THRESHOLD} times the reference length, {@link #NORMAL} if it can be
+ * solved in less than {@link #HARD_THRESHOLD} times the reference length, and {@link #HARD}
+ * otherwise. Puzzles that can be solved in less than {@link #EASY_THRESHOLD} times the reference
+ * length are too easy to have any difficulty at all.
+ * <p>
+ * The number of moves should be the length of an optimal solution. For big puzzles, which cannot be
+ * solved optimally in a reasonable time, a lower bound of it may be used instead, so their
+ * difficulty may be underestimated.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public enum PuzzleDifficulty {
+	EASY, NORMAL, HARD;
+
+	/**
+	 * Fraction of the reference length below which a puzzle has no difficulty.
+	 */
+	private static final float EASY_THRESHOLD = 0.4f;
+
+	/**
+	 * Fraction of the reference length from which a puzzle is {@link #NORMAL}.
+	 */
+	private static final float NORMAL_THRESHOLD = 0.8f;
+
+	/**
+	 * Fraction of the reference length from which a puzzle is {@link #HARD}.
+	 */
+	private static final float HARD_THRESHOLD = 1.2f;
+
+	/**
+	 * Returns the minimum number of moves of the puzzles of this difficulty whose side has
+	 * <code>sideSize</code> tiles.
+	 */
+	public int getMinLength(int sideSize) {
+		switch (this) {
+			case EASY:
+				return (int) Math.ceil(getReferenceLength(sideSize) * EASY_THRESHOLD);
+			case NORMAL:
+				return (int) Math.ceil(getReferenceLength(sideSize) * NORMAL_THRESHOLD);
+			default:
+				return (int) Math.ceil(getReferenceLength(sideSize) * HARD_THRESHOLD);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of moves of the puzzles of this difficulty whose side has
+	 * <code>sideSize</code> tiles, or {@link Integer#MAX_VALUE} if there is no maximum.
+	 */
+	public int getMaxLength(int sideSize) {
+		switch (this) {
+			case EASY:
+				return NORMAL.getMinLength(sideSize) - 1;
+			case NORMAL:
+				return HARD.getMinLength(sideSize) - 1;
+			default:
+				return Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Returns the difficulty of a puzzle whose side has <code>sideSize</code> tiles and that can be
+	 * solved in <code>length</code> moves, or null if it is too easy to have any difficulty.
+	 */
+	public static PuzzleDifficulty fromSolutionLength(int sideSize, int length) {
+		for (PuzzleDifficulty difficulty : values()) {
+			if (length >= difficulty.getMinLength(sideSize)
+					&& length <= difficulty.getMaxLength(sideSize)) {
+				return difficulty;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the reference length of the puzzles whose side has <code>sideSize</code> tiles. It is
+	 * the expected sum of the Manhattan distances of the tiles of a uniformly random configuration:
+	 * along each axis, the expected distance between two random positions is
+	 * <code>(sideSize² - 1) / (3 * sideSize)</code>.
+	 */
+	public static float getReferenceLength(int sideSize) {
+		int numTiles = sideSize * sideSize - 1;
+		return 2f * numTiles * numTiles / (3f * sideSize);
+	}
+}
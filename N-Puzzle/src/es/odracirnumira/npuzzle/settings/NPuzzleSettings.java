@@ -3,6 +3,7 @@ package es.odracirnumira.npuzzle.settings;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import es.odracirnumira.npuzzle.model.PuzzleDifficulty;
 
 /**
  * Class that manages the application's settings. It is recommended that all the settings be
@@ -39,6 +40,19 @@ public class NPuzzleSettings {
 	 */
 	public static final String IMAGES_LOCATION_NO_IMAGE = "NoImage";
 
+	/**
+	 * Key for the preference that stores the difficulty of the puzzles of new games. This
+	 * preference can have the value {@link #PUZZLE_DIFFICULTY_RANDOM} or the name of a
+	 * {@link PuzzleDifficulty}.
+	 */
+	public static final String PUZZLE_DIFFICULTY = "puzzleDifficulty";
+
+	/**
+	 * Value that the {@link #PUZZLE_DIFFICULTY} preference can have. If such preference has this
+	 * value, it means that new games start from a random configuration, whatever its difficulty.
+	 */
+	public static final String PUZZLE_DIFFICULTY_RANDOM = "RANDOM";
+
 	/**
 	 * Constructor.
 	 * 
@@ -82,4 +96,38 @@ public class NPuzzleSettings {
 
 		this.globalSharedPreferences.edit().putString(NPUZZLE_IMAGES_LOCATION, location).apply();
 	}
+
+	/**
+	 * Returns the difficulty of the puzzles of new games, or null if new games start from a random
+	 * configuration.
+	 * <p>
+	 * This setting defaults to {@link #PUZZLE_DIFFICULTY_RANDOM} in case it has not been defined.
+	 * 
+	 * @return the difficulty of the puzzles of new games.
+	 */
+	public PuzzleDifficulty getPuzzleDifficulty() {
+		String difficulty = this.globalSharedPreferences.getString(PUZZLE_DIFFICULTY,
+				PUZZLE_DIFFICULTY_RANDOM);
+
+		if (difficulty.equals(PUZZLE_DIFFICULTY_RANDOM)) {
+			return null;
+		}
+
+		try {
+			return PuzzleDifficulty.valueOf(difficulty);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the difficulty of the puzzles of new games.
+	 * 
+	 * @param difficulty
+	 *            the difficulty, or null to start new games from a random configuration.
+	 */
+	public void setPuzzleDifficulty(PuzzleDifficulty difficulty) {
+		String value = difficulty == null ? PUZZLE_DIFFICULTY_RANDOM : difficulty.name();
+		this.globalSharedPreferences.edit().putString(PUZZLE_DIFFICULTY, value).apply();
+	}
 }
@@ -0,0 +1,152 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Creates the best heuristic available for a board size.
+ * <p>
+ * For the sizes in {@link #PATTERN_DATABASE_SIDE_SIZES}, that is a
+ * {@link PatternDatabaseHeuristic} built from the default patterns (see
+ * {@link PatternDatabaseHeuristic#getDefaultPatterns(int)}), which expands far fewer nodes than
+ * {@link LinearConflictHeuristic}. Its databases are loaded from a directory, and generated there
+ * the first time, on a background thread. Until they are ready, and for any other size,
+ * {@link #createHeuristic(int)} returns a {@link LinearConflictHeuristic}, so callers never wait.
+ * If the databases of a size cannot be loaded or generated, the error is logged and that size
+ * keeps using {@link LinearConflictHeuristic}.
+ * <p>
+ * The databases are shared among all the heuristics created for a size. This class is thread
+ * safe.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class HeuristicFactory {
+	/**
+	 * The board sizes that use pattern databases. The databases of bigger boards take too much
+	 * memory to be generated on a device.
+	 */
+	public static final int[] PATTERN_DATABASE_SIDE_SIZES = { 3, 4 };
+
+	/**
+	 * The directory where the databases are stored.
+	 */
+	private final File directory;
+
+	/**
+	 * The heuristics whose databases have been loaded, by side size.
+	 */
+	private final HashMap<Integer, PatternDatabaseHeuristic> heuristics;
+
+	/**
+	 * The side sizes whose databases have been requested, whether they have been loaded or not.
+	 */
+	private final HashSet<Integer> requested;
+
+	/**
+	 * The thread where the databases are loaded. Created the first time it is needed.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param directory
+	 *            the directory where the databases are stored. It is created if it does not exist.
+	 */
+	public HeuristicFactory(File directory) {
+		if (directory == null) {
+			throw new IllegalArgumentException("null directory");
+		}
+
+		this.directory = directory;
+		this.heuristics = new HashMap<Integer, PatternDatabaseHeuristic>();
+		this.requested = new HashSet<Integer>();
+	}
+
+	/**
+	 * Returns a new heuristic for boards whose side has <code>sideSize</code> tiles. It is not
+	 * bound to any board. If the heuristic uses pattern databases that are not loaded yet, their
+	 * loading starts and a {@link LinearConflictHeuristic} is returned.
+	 */
+	public synchronized IHeuristic createHeuristic(int sideSize) {
+		PatternDatabaseHeuristic heuristic = this.heuristics.get(sideSize);
+
+		if (heuristic != null) {
+			return heuristic.copy();
+		}
+
+		if (usesPatternDatabases(sideSize) && this.requested.add(sideSize)) {
+			this.load(sideSize);
+		}
+
+		return new LinearConflictHeuristic();
+	}
+
+	/**
+	 * Returns true if the heuristic for boards whose side has <code>sideSize</code> tiles uses
+	 * pattern databases.
+	 */
+	private static boolean usesPatternDatabases(int sideSize) {
+		for (int patternDatabaseSideSize : PATTERN_DATABASE_SIDE_SIZES) {
+			if (patternDatabaseSideSize == sideSize) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Loads, or generates if they are missing, the databases of a side size in {@link #executor},
+	 * and stores the resulting heuristic in {@link #heuristics}.
+	 */
+	private void load(final int sideSize) {
+		if (this.executor == null) {
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(final Runnable r) {
+					return new Thread(new Runnable() {
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "HeuristicFactory");
+				}
+			});
+		}
+
+		this.executor.execute(new Runnable() {
+			public void run() {
+				PatternDatabaseHeuristic heuristic;
+
+				try {
+					if (!directory.isDirectory() && !directory.mkdirs()) {
+						throw new IOException("Cannot create " + directory);
+					}
+
+					heuristic = PatternDatabaseHeuristic.load(directory, sideSize, true);
+				} catch (IOException e) {
+					Log.e("NPuzzle", "Cannot load the pattern databases for side size " + sideSize,
+							e);
+					return;
+				} catch (OutOfMemoryError e) {
+					Log.e("NPuzzle", "Not enough memory for the pattern databases for side size "
+							+ sideSize, e);
+					return;
+				}
+
+				synchronized (HeuristicFactory.this) {
+					heuristics.put(sideSize, heuristic);
+				}
+			}
+		});
+	}
+}
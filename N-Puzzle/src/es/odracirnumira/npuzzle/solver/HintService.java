@@ -0,0 +1,306 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.NPuzzle.ITileListener;
+
+/**
+ * Service that suggests the next tile to move in an {@link NPuzzle}. All the work is done in a
+ * background thread, so it can be used from the UI thread.
+ * <p>
+ * The service registers itself as a listener of the puzzle and keeps a copy of its state, along
+ * with the heuristic bound to it, which are updated incrementally every time a tile moves. It also
+ * remembers the last solution found: while the player follows it, hints are answered without
+ * searching at all. If the player moves another tile, the solution is discarded, but its length
+ * still gives a lower bound for the next search, which then skips the iterations below it.
+ * <p>
+ * Each search has a time budget (see {@link #setMaxTime(long)}). If no optimal solution is found
+ * within it, the hint falls back to the move that minimizes the heuristic.
+ * <p>
+ * Call {@link #shutdown()} when the service is no longer needed, to stop its thread and
+ * unregister it from the puzzle.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class HintService implements ITileListener {
+	/**
+	 * Default time budget for a hint, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_TIME = 50;
+
+	/**
+	 * Interface for a listener that is notified when a hint is ready.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public interface IHintListener {
+		/**
+		 * Called when a hint is ready. It is called from the service's thread, not from the thread
+		 * that requested the hint.
+		 * 
+		 * @param tile
+		 *            the tile to move, or -1 if the puzzle is already solved or cannot be solved.
+		 * @param optimal
+		 *            true if moving the tile is the first step of an optimal solution, and false if
+		 *            it is just the move that looks best to the heuristic.
+		 */
+		public void hintReady(int tile, boolean optimal);
+	}
+
+	/**
+	 * The puzzle.
+	 */
+	private final NPuzzle puzzle;
+
+	/**
+	 * Whether the puzzle can be solved.
+	 */
+	private final boolean solvable;
+
+	/**
+	 * The thread where all the work is done.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Copy of the state of the puzzle. Only accessed from {@link #executor}.
+	 */
+	private final SearchBoard board;
+
+	/**
+	 * The heuristic, bound to {@link #board}. Only accessed from {@link #executor}.
+	 */
+	private final IHeuristic heuristic;
+
+	/**
+	 * Value of {@link #heuristic} for the current state of {@link #board}.
+	 */
+	private int h;
+
+	/**
+	 * The rest of the last optimal solution found, or null if there is none. Only accessed from
+	 * {@link #executor}.
+	 */
+	private LinkedList<Integer> solution;
+
+	/**
+	 * A lower bound of the number of moves needed to solve the puzzle, learnt from previous
+	 * searches. Only accessed from {@link #executor}.
+	 */
+	private int lowerBound;
+
+	/**
+	 * The last tile moved, or -1. Used to avoid suggesting to undo the last move.
+	 */
+	private int lastMovedTile;
+
+	/**
+	 * Time budget for a hint, in milliseconds.
+	 */
+	private volatile long maxTime;
+
+	/**
+	 * Creates a service for <code>puzzle</code>, using a {@link LinearConflictHeuristic}. It must
+	 * be created on the thread that moves the tiles of the puzzle.
+	 * 
+	 * @param puzzle
+	 *            the puzzle.
+	 */
+	public HintService(NPuzzle puzzle) {
+		this(puzzle, new LinearConflictHeuristic());
+	}
+
+	/**
+	 * Creates a service for <code>puzzle</code>. It must be created on the thread that moves the
+	 * tiles of the puzzle.
+	 * 
+	 * @param puzzle
+	 *            the puzzle.
+	 * @param heuristic
+	 *            the heuristic. It must be admissible, and it must not be bound to any board that
+	 *            is being used.
+	 */
+	public HintService(NPuzzle puzzle, IHeuristic heuristic) {
+		if (puzzle == null || heuristic == null) {
+			throw new IllegalArgumentException("The puzzle and the heuristic cannot be null");
+		}
+
+		this.puzzle = puzzle;
+		this.solvable = puzzle.isSolvable();
+		this.board = new SearchBoard(puzzle);
+		this.heuristic = heuristic;
+		this.lastMovedTile = -1;
+		this.maxTime = DEFAULT_MAX_TIME;
+		this.executor = Executors.newSingleThreadExecutor();
+
+		this.executor.execute(new Runnable() {
+			public void run() {
+				h = HintService.this.heuristic.initialize(board);
+				lowerBound = h;
+			}
+		});
+
+		puzzle.addTileListener(this);
+	}
+
+	/**
+	 * Sets the time budget for a hint, in milliseconds.
+	 */
+	public void setMaxTime(long maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * Returns the time budget for a hint, in milliseconds.
+	 */
+	public long getMaxTime() {
+		return this.maxTime;
+	}
+
+	/**
+	 * Requests a hint. <code>listener</code> is notified from the service's thread when the hint is
+	 * ready. Moves made after this call are not taken into account for this hint.
+	 * 
+	 * @param listener
+	 *            the listener.
+	 */
+	public void requestHint(final IHintListener listener) {
+		this.executor.execute(new Runnable() {
+			public void run() {
+				computeHint(listener);
+			}
+		});
+	}
+
+	/**
+	 * Stops the service's thread and unregisters the service from the puzzle. Hints that have not
+	 * been computed yet are discarded.
+	 */
+	public void shutdown() {
+		this.puzzle.removeTileListener(this);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.model.NPuzzle.ITileListener#tileMoved(int, int, int)
+	 */
+	public void tileMoved(final int tile, final int oldPos, final int newPos) {
+		this.executor.execute(new Runnable() {
+			public void run() {
+				applyMove(tile, oldPos, newPos);
+			}
+		});
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.model.NPuzzle.ITileListener#tilesMoved(int[], int[], int[])
+	 */
+	public void tilesMoved(final int[] tiles, final int[] oldPositions, final int[] newPositions) {
+		this.executor.execute(new Runnable() {
+			public void run() {
+				for (int i = 0; i < tiles.length; i++) {
+					applyMove(tiles[i], oldPositions[i], newPositions[i]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Updates the state of the service after a tile has moved.
+	 */
+	private void applyMove(int tile, int oldPos, int newPos) {
+		this.board.moveTileAt(oldPos);
+		this.h = this.heuristic.tileMoved(this.h, tile, oldPos, newPos);
+		this.lastMovedTile = tile;
+
+		/*
+		 * A single move changes the optimal number of moves by one, so the lower bound is still
+		 * valid after subtracting one.
+		 */
+		this.lowerBound = Math.max(this.lowerBound - 1, this.h);
+
+		if (this.solution != null) {
+			if (!this.solution.isEmpty() && this.solution.getFirst() == tile) {
+				this.solution.removeFirst();
+			} else {
+				this.solution = null;
+			}
+		}
+	}
+
+	/**
+	 * Computes a hint and notifies <code>listener</code>.
+	 */
+	private void computeHint(IHintListener listener) {
+		if (!this.solvable || this.board.isSolved()) {
+			listener.hintReady(-1, false);
+			return;
+		}
+
+		if (this.solution == null) {
+			SearchBudget budget = new SearchBudget(-1, this.maxTime);
+			SolverResult result = new SolverResult();
+
+			/*
+			 * The search works on its own copies, because it leaves its board solved when it finds
+			 * a solution.
+			 */
+			new IDAStarSearch(new SearchBoard(this.board), this.heuristic.copy(), budget).run(
+					result, this.lowerBound);
+
+			if (result.status == SolverResult.Status.SOLVED) {
+				this.solution = new LinkedList<Integer>(result.moves);
+			}
+
+			this.lowerBound = Math.max(this.lowerBound, result.lowerBound);
+		}
+
+		if (this.solution != null && !this.solution.isEmpty()) {
+			listener.hintReady(this.solution.getFirst(), true);
+		} else {
+			listener.hintReady(this.getGreedyMove(), false);
+		}
+	}
+
+	/**
+	 * Returns the tile whose move gives the lowest value of the heuristic. The tile moved last is
+	 * only returned if there is no other choice, so that repeated hints do not go back and forth.
+	 */
+	private int getGreedyMove() {
+		int emptyPos = this.board.emptyPos;
+		int base = emptyPos * SearchBoard.NUM_NEIGHBOURS;
+		int bestTile = -1;
+		int bestH = Integer.MAX_VALUE;
+
+		for (int i = 0; i < SearchBoard.NUM_NEIGHBOURS; i++) {
+			int pos = this.board.neighbours[base + i];
+
+			if (pos < 0) {
+				continue;
+			}
+
+			int tile = this.board.moveTileAt(pos);
+			int newH = this.heuristic.tileMoved(this.h, tile, pos, emptyPos);
+			this.board.moveTileAt(emptyPos);
+			this.heuristic.tileMoved(newH, tile, emptyPos, pos);
+
+			if (tile == this.lastMovedTile) {
+				newH = Integer.MAX_VALUE - 1;
+			}
+
+			if (newH < bestH) {
+				bestH = newH;
+				bestTile = tile;
+			}
+		}
+
+		return bestTile;
+	}
+}
@@ -0,0 +1,259 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Iterative deepening A* search over a {@link SearchBoard}. Each iteration runs a depth-first
+ * search that prunes every node whose estimated cost exceeds the current bound, and the bound is
+ * raised to the smallest pruned cost until a solution is found. With an admissible heuristic, the
+ * first solution found is optimal.
+ * <p>
+ * The search modifies the board in place and undoes every move on the way back, and the heuristic
+ * is updated incrementally, so the recursion does not allocate memory. The only allocation is the
+ * array that holds the current path, which grows once per iteration at most.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+class IDAStarSearch {
+	/**
+	 * Value returned by {@link #search(int, int, int, int)} when a solution has been found.
+	 */
+	static final int FOUND = -1;
+
+	/**
+	 * Value returned by {@link #search(int, int, int, int)} when the budget has been exhausted.
+	 */
+	static final int BUDGET_EXHAUSTED = -2;
+
+	/**
+	 * Value returned by {@link #search(int, int, int, int)} when no node has been pruned, that is,
+	 * when the whole search space has been explored.
+	 */
+	static final int NOT_FOUND = Integer.MAX_VALUE;
+
+	/**
+	 * The board being searched.
+	 */
+	private final SearchBoard board;
+
+	/**
+	 * The heuristic, bound to {@link #board}.
+	 */
+	private final IHeuristic heuristic;
+
+	/**
+	 * The budget of the search.
+	 */
+	private final SearchBudget budget;
+
+	/**
+	 * Tiles moved so far. Entry <code>i</code> is the tile moved at depth <code>i</code>.
+	 */
+	private int[] path;
+
+	/**
+	 * Length of the path that leads to the solution, once found.
+	 */
+	private int solutionLength;
+
+	/**
+	 * Nodes expanded since the last time they were reported to {@link #budget}.
+	 */
+	private int pendingNodes;
+
+	/**
+	 * Creates a search.
+	 * 
+	 * @param board
+	 *            the board to solve. It is modified while searching.
+	 * @param heuristic
+	 *            the heuristic. It must not be bound to any other board that is being searched.
+	 * @param budget
+	 *            the budget of the search.
+	 */
+	IDAStarSearch(SearchBoard board, IHeuristic heuristic, SearchBudget budget) {
+		this.board = board;
+		this.heuristic = heuristic;
+		this.budget = budget;
+		this.path = new int[0];
+	}
+
+	/**
+	 * Runs the search until a solution is found or the budget is exhausted. The board must be
+	 * solvable; otherwise, the search would go on until the budget is exhausted.
+	 * 
+	 * @param result
+	 *            the result where the status, moves and lower bound of the search are stored.
+	 */
+	void run(SolverResult result) {
+		this.run(result, 0);
+	}
+
+	/**
+	 * Runs the search until a solution is found or the budget is exhausted, starting with a bound
+	 * that is known in advance, such as the lower bound of a previous search. This saves the
+	 * iterations below that bound.
+	 * 
+	 * @param result
+	 *            the result where the status, moves and lower bound of the search are stored.
+	 * @param minBound
+	 *            a lower bound of the number of moves needed to solve the board. If it is greater
+	 *            than the actual number of moves, the solution will not be optimal.
+	 */
+	void run(SolverResult result, int minBound) {
+		int h = this.heuristic.initialize(this.board);
+		int bound = Math.max(h, minBound);
+
+		while (true) {
+			result.lowerBound = bound;
+			this.ensurePathCapacity(bound + 1);
+
+			int t = this.search(0, h, bound, -1);
+
+			if (t == FOUND) {
+				result.status = SolverResult.Status.SOLVED;
+				result.moves = this.getSolution();
+				result.lowerBound = this.solutionLength;
+				break;
+			}
+
+			if (t == BUDGET_EXHAUSTED) {
+				result.status = this.budget.isCancelled() ? SolverResult.Status.CANCELLED
+						: SolverResult.Status.BUDGET_EXCEEDED;
+				break;
+			}
+
+			if (t == NOT_FOUND) {
+				result.status = SolverResult.Status.UNSOLVABLE;
+				break;
+			}
+
+			bound = t;
+		}
+
+		this.flushNodes();
+	}
+
+	/**
+	 * Runs a depth-first search bounded by <code>bound</code> from the current state of the board.
+	 * 
+	 * @param g
+	 *            number of moves made so far.
+	 * @param h
+	 *            value of the heuristic for the current state of the board.
+	 * @param bound
+	 *            nodes whose estimated cost is greater than this value are pruned.
+	 * @param previousEmptyPos
+	 *            position of the empty tile before the last move, or -1 if there is no last move.
+	 *            Moving the tile at this position would undo the last move, so it is skipped.
+	 * @return {@link #FOUND} if a solution has been found, in which case the board is left solved;
+	 *         {@link #BUDGET_EXHAUSTED} if the budget has been exhausted; otherwise, the smallest
+	 *         estimated cost among the pruned nodes, or {@link #NOT_FOUND} if no node was pruned.
+	 */
+	int search(int g, int h, int bound, int previousEmptyPos) {
+		int f = g + h;
+
+		if (f > bound) {
+			return f;
+		}
+
+		if (h == 0 && this.board.isSolved()) {
+			this.solutionLength = g;
+			return FOUND;
+		}
+
+		if (++this.pendingNodes == SearchBudget.CHECK_INTERVAL) {
+			this.pendingNodes = 0;
+
+			if (!this.budget.consume(SearchBudget.CHECK_INTERVAL)) {
+				return BUDGET_EXHAUSTED;
+			}
+		}
+
+		SearchBoard board = this.board;
+		int[] neighbours = board.neighbours;
+		int emptyPos = board.emptyPos;
+		int base = emptyPos * SearchBoard.NUM_NEIGHBOURS;
+		int min = NOT_FOUND;
+
+		for (int i = 0; i < SearchBoard.NUM_NEIGHBOURS; i++) {
+			int next = neighbours[base + i];
+
+			if (next < 0 || next == previousEmptyPos) {
+				continue;
+			}
+
+			int tile = board.moveTileAt(next);
+			int newH = this.heuristic.tileMoved(h, tile, next, emptyPos);
+			this.path[g] = tile;
+
+			int t = this.search(g + 1, newH, bound, emptyPos);
+
+			if (t == FOUND) {
+				return FOUND;
+			}
+
+			/*
+			 * Undo the move. The heuristic has to be notified as well so that its internal state
+			 * matches the board again.
+			 */
+			board.moveTileAt(emptyPos);
+			this.heuristic.tileMoved(newH, tile, emptyPos, next);
+
+			if (t == BUDGET_EXHAUSTED) {
+				return BUDGET_EXHAUSTED;
+			}
+
+			if (t < min) {
+				min = t;
+			}
+		}
+
+		return min;
+	}
+
+	/**
+	 * Makes sure that the path can hold at least <code>capacity</code> moves, keeping the moves
+	 * already stored in it.
+	 */
+	void ensurePathCapacity(int capacity) {
+		if (this.path.length < capacity) {
+			int[] newPath = new int[capacity];
+			System.arraycopy(this.path, 0, newPath, 0, this.path.length);
+			this.path = newPath;
+		}
+	}
+
+	/**
+	 * Sets the first moves of the path. Used when the search does not start from the original
+	 * board, but from a board reached by moving the tiles in <code>moves</code>, from index
+	 * <code>offset</code> to <code>offset+length-1</code>.
+	 */
+	void setPathPrefix(int[] moves, int offset, int length) {
+		this.ensurePathCapacity(length);
+		System.arraycopy(moves, offset, this.path, 0, length);
+	}
+
+	/**
+	 * Returns the tiles moved to reach the solution, once found.
+	 */
+	List<Integer> getSolution() {
+		List<Integer> result = new ArrayList<Integer>(this.solutionLength);
+
+		for (int i = 0; i < this.solutionLength; i++) {
+			result.add(this.path[i]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reports to the budget the nodes that have not been reported yet.
+	 */
+	void flushNodes() {
+		this.budget.consume(this.pendingNodes);
+		this.pendingNodes = 0;
+	}
+}
@@ -0,0 +1,51 @@
+package es.odracirnumira.npuzzle.solver;
+
+/**
+ * Interface for a heuristic that estimates the number of moves needed to solve a
+ * {@link SearchBoard}. Heuristics used by the solvers must be admissible, that is, they must never
+ * overestimate the actual number of moves. Otherwise, solutions would not be optimal.
+ * <p>
+ * Heuristics are stateful and are bound to a single board: {@link #initialize(SearchBoard)}
+ * computes the estimate from scratch, and {@link #tileMoved(int, int, int, int)} updates it
+ * incrementally every time a tile of that board moves. Undoing a move is just another move (the
+ * tile goes back to its previous position), so the heuristic must return the same value it had
+ * before the original move.
+ * <p>
+ * Instances are not thread safe. Use {@link #copy()} to get an independent instance for each
+ * search that runs concurrently.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IHeuristic {
+	/**
+	 * Computes the estimate for <code>board</code> from scratch. From now on, the heuristic will be
+	 * bound to <code>board</code>.
+	 * 
+	 * @param board
+	 *            the board.
+	 * @return the estimated number of moves needed to solve the board.
+	 */
+	public int initialize(SearchBoard board);
+
+	/**
+	 * Updates the estimate after a tile of the board has moved. When this method is called, the
+	 * board already reflects the move.
+	 * 
+	 * @param value
+	 *            the estimate before the move.
+	 * @param tile
+	 *            the tile that has been moved.
+	 * @param oldPos
+	 *            the position the tile had before moving.
+	 * @param newPos
+	 *            the position the tile has after moving.
+	 * @return the estimate after the move.
+	 */
+	public int tileMoved(int value, int tile, int oldPos, int newPos);
+
+	/**
+	 * Returns a new instance of this heuristic that is not bound to any board.
+	 */
+	public IHeuristic copy();
+}
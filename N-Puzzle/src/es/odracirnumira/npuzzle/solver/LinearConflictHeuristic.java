@@ -0,0 +1,178 @@
+package es.odracirnumira.npuzzle.solver;
+
+/**
+ * {@link IHeuristic} that adds linear conflicts to the Manhattan distance. Two tiles are in linear
+ * conflict if both are in the row (or column) they belong to in the solved board, but in reverse
+ * order. At least one of them must leave the line and come back to let the other one pass, which
+ * costs two extra moves that the Manhattan distance does not count.
+ * <p>
+ * For each line, this heuristic adds two moves for each tile that has to leave the line, which is
+ * the number of tiles of the line that belong to it minus the length of the longest increasing
+ * subsequence of their goal positions. This keeps the heuristic admissible even when several
+ * tiles are in conflict with each other.
+ * <p>
+ * Only the lines that a move touches are recomputed in {@link #tileMoved(int, int, int, int)}.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class LinearConflictHeuristic extends ManhattanHeuristic {
+	/**
+	 * Number of tiles that must leave each row.
+	 */
+	private int[] rowConflicts;
+
+	/**
+	 * Number of tiles that must leave each column.
+	 */
+	private int[] columnConflicts;
+
+	/**
+	 * Scratch array that holds the goal positions of the tiles of a line.
+	 */
+	private int[] lineGoals;
+
+	/**
+	 * Scratch array used to compute longest increasing subsequences.
+	 */
+	private int[] lisTails;
+
+	public int initialize(SearchBoard board) {
+		int result = super.initialize(board);
+
+		this.rowConflicts = new int[board.sideSize];
+		this.columnConflicts = new int[board.sideSize];
+		this.lineGoals = new int[board.sideSize];
+		this.lisTails = new int[board.sideSize];
+
+		for (int line = 0; line < board.sideSize; line++) {
+			this.rowConflicts[line] = this.computeRowConflicts(line);
+			this.columnConflicts[line] = this.computeColumnConflicts(line);
+			result += 2 * (this.rowConflicts[line] + this.columnConflicts[line]);
+		}
+
+		return result;
+	}
+
+	public int tileMoved(int value, int tile, int oldPos, int newPos) {
+		int result = super.tileMoved(value, tile, oldPos, newPos);
+		int sideSize = this.board.sideSize;
+
+		/*
+		 * A horizontal move does not change the order of the tiles of the row (the tile only swaps
+		 * with the empty tile), but it does change the set of tiles of two columns. Conversely, a
+		 * vertical move only affects two rows.
+		 */
+		if (oldPos / sideSize == newPos / sideSize) {
+			result += this.updateColumn(oldPos % sideSize);
+			result += this.updateColumn(newPos % sideSize);
+		} else {
+			result += this.updateRow(oldPos / sideSize);
+			result += this.updateRow(newPos / sideSize);
+		}
+
+		return result;
+	}
+
+	public IHeuristic copy() {
+		return new LinearConflictHeuristic();
+	}
+
+	/**
+	 * Recomputes the conflicts of row <code>row</code> and returns the change in the heuristic
+	 * value.
+	 */
+	private int updateRow(int row) {
+		int conflicts = this.computeRowConflicts(row);
+		int delta = 2 * (conflicts - this.rowConflicts[row]);
+		this.rowConflicts[row] = conflicts;
+		return delta;
+	}
+
+	/**
+	 * Recomputes the conflicts of column <code>column</code> and returns the change in the
+	 * heuristic value.
+	 */
+	private int updateColumn(int column) {
+		int conflicts = this.computeColumnConflicts(column);
+		int delta = 2 * (conflicts - this.columnConflicts[column]);
+		this.columnConflicts[column] = conflicts;
+		return delta;
+	}
+
+	/**
+	 * Returns the number of tiles that must leave row <code>row</code>.
+	 */
+	private int computeRowConflicts(int row) {
+		int sideSize = this.board.sideSize;
+		int[] contents = this.board.positionContents;
+		int emptyTile = this.board.emptyTile;
+		int numGoals = 0;
+
+		for (int pos = row * sideSize; pos < (row + 1) * sideSize; pos++) {
+			int tile = contents[pos];
+
+			if (tile != emptyTile && tile / sideSize == row) {
+				this.lineGoals[numGoals++] = tile % sideSize;
+			}
+		}
+
+		return numGoals - this.longestIncreasingSubsequence(numGoals);
+	}
+
+	/**
+	 * Returns the number of tiles that must leave column <code>column</code>.
+	 */
+	private int computeColumnConflicts(int column) {
+		int sideSize = this.board.sideSize;
+		int[] contents = this.board.positionContents;
+		int emptyTile = this.board.emptyTile;
+		int numGoals = 0;
+
+		for (int pos = column; pos < this.board.numTiles; pos += sideSize) {
+			int tile = contents[pos];
+
+			if (tile != emptyTile && tile % sideSize == column) {
+				this.lineGoals[numGoals++] = tile / sideSize;
+			}
+		}
+
+		return numGoals - this.longestIncreasingSubsequence(numGoals);
+	}
+
+	/**
+	 * Returns the length of the longest increasing subsequence of the first <code>length</code>
+	 * elements of {@link #lineGoals}.
+	 */
+	private int longestIncreasingSubsequence(int length) {
+		int result = 0;
+
+		for (int i = 0; i < length; i++) {
+			int goal = this.lineGoals[i];
+
+			/*
+			 * Binary search of the first tail that is not smaller than the goal.
+			 */
+			int low = 0;
+			int high = result;
+
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+
+				if (this.lisTails[middle] < goal) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			this.lisTails[low] = goal;
+
+			if (low == result) {
+				result++;
+			}
+		}
+
+		return result;
+	}
+}
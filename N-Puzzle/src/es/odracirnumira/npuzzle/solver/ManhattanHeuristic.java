@@ -0,0 +1,46 @@
+package es.odracirnumira.npuzzle.solver;
+
+/**
+ * {@link IHeuristic} that computes the Manhattan distance of a board, that is, the sum of the
+ * horizontal and vertical distances between each tile (except the empty tile) and its position
+ * in the solved board.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ManhattanHeuristic implements IHeuristic {
+	/**
+	 * The board the heuristic is bound to.
+	 */
+	protected SearchBoard board;
+
+	public int initialize(SearchBoard board) {
+		this.board = board;
+
+		int result = 0;
+
+		for (int tile = 0; tile < board.emptyTile; tile++) {
+			result += distance(tile, board.tilePositions[tile], board.sideSize);
+		}
+
+		return result;
+	}
+
+	public int tileMoved(int value, int tile, int oldPos, int newPos) {
+		int sideSize = this.board.sideSize;
+		return value - distance(tile, oldPos, sideSize) + distance(tile, newPos, sideSize);
+	}
+
+	public IHeuristic copy() {
+		return new ManhattanHeuristic();
+	}
+
+	/**
+	 * Returns the Manhattan distance between position <code>pos</code> and the position of tile
+	 * <code>tile</code> in the solved board.
+	 */
+	static int distance(int tile, int pos, int sideSize) {
+		return Math.abs(tile / sideSize - pos / sideSize)
+				+ Math.abs(tile % sideSize - pos % sideSize);
+	}
+}
@@ -0,0 +1,237 @@
+package es.odracirnumira.npuzzle.solver;
+
+import es.odracirnumira.npuzzle.model.NPuzzle;
+
+/**
+ * Solver that computes optimal solutions for {@link NPuzzle}s, using IDA* (see
+ * {@link IDAStarSearch}).
+ * <p>
+ * The solver can be given a budget, both in number of expanded nodes ({@link #setMaxNodes(long)})
+ * and in time ({@link #setMaxTime(long)}). When the budget is exceeded, {@link #solve(NPuzzle)}
+ * returns a {@link SolverResult} with status {@link SolverResult.Status#BUDGET_EXCEEDED} and the
+ * best lower bound found so far. A running search can also be cancelled from another thread
+ * through {@link #cancel()}.
+ * <p>
+ * The heuristic is {@link LinearConflictHeuristic} unless another one is set through
+ * {@link #setHeuristic(IHeuristic)}, or a {@link HeuristicFactory} is set through
+ * {@link #setHeuristicFactory(HeuristicFactory)} to pick the best heuristic for each puzzle.
+ * <p>
+ * By default, the search runs on the calling thread. {@link #setNumThreads(int)} makes it spread
+ * the search over several threads (see {@link ParallelIDAStarSearch}), which speeds up big boards
+ * on multicore devices. The length of the solutions is the same either way.
+ * <p>
+ * A solver can be reused for several puzzles, but only one puzzle can be solved at a time.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class NPuzzleSolver {
+	/**
+	 * The heuristic used by the solver. A copy of it is used for each search.
+	 */
+	private IHeuristic heuristic;
+
+	/**
+	 * The factory that creates the heuristic for each search, or null to use {@link #heuristic}.
+	 */
+	private HeuristicFactory heuristicFactory;
+
+	/**
+	 * Maximum number of nodes to expand, or a negative number for no limit.
+	 */
+	private long maxNodes;
+
+	/**
+	 * Maximum time for a search, in milliseconds, or a negative number for no limit.
+	 */
+	private long maxTime;
+
+	/**
+	 * The number of threads used by a search.
+	 */
+	private int numThreads;
+
+	/**
+	 * The budget of the search that is currently running, if any.
+	 */
+	private volatile SearchBudget currentBudget;
+
+	/**
+	 * Whether {@link #cancel()} has been called since the search that is currently running, if
+	 * any, started.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a solver with no budget that uses a {@link LinearConflictHeuristic}.
+	 */
+	public NPuzzleSolver() {
+		this.heuristic = new LinearConflictHeuristic();
+		this.maxNodes = -1;
+		this.maxTime = -1;
+		this.numThreads = 1;
+	}
+
+	/**
+	 * Sets the heuristic used by the solver. It must be admissible, or solutions will not be
+	 * optimal.
+	 * 
+	 * @param heuristic
+	 *            the heuristic.
+	 */
+	public void setHeuristic(IHeuristic heuristic) {
+		if (heuristic == null) {
+			throw new IllegalArgumentException("The heuristic cannot be null");
+		}
+
+		this.heuristic = heuristic;
+	}
+
+	/**
+	 * Returns the heuristic used by the solver.
+	 */
+	public IHeuristic getHeuristic() {
+		return this.heuristic;
+	}
+
+	/**
+	 * Sets the factory that creates the heuristic used by each search, according to the size of the
+	 * puzzle. While it is set, the heuristic set through {@link #setHeuristic(IHeuristic)} is not
+	 * used.
+	 * 
+	 * @param heuristicFactory
+	 *            the factory, or null to use the heuristic set through
+	 *            {@link #setHeuristic(IHeuristic)}.
+	 */
+	public void setHeuristicFactory(HeuristicFactory heuristicFactory) {
+		this.heuristicFactory = heuristicFactory;
+	}
+
+	/**
+	 * Returns the factory that creates the heuristic used by each search, or null if there is none.
+	 */
+	public HeuristicFactory getHeuristicFactory() {
+		return this.heuristicFactory;
+	}
+
+	/**
+	 * Sets the maximum number of nodes that a search can expand. A negative number means no limit.
+	 */
+	public void setMaxNodes(long maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * Returns the maximum number of nodes that a search can expand. A negative number means no
+	 * limit.
+	 */
+	public long getMaxNodes() {
+		return this.maxNodes;
+	}
+
+	/**
+	 * Sets the maximum time, in milliseconds, that a search can take. A negative number means no
+	 * limit.
+	 */
+	public void setMaxTime(long maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * Returns the maximum time, in milliseconds, that a search can take. A negative number means no
+	 * limit.
+	 */
+	public long getMaxTime() {
+		return this.maxTime;
+	}
+
+	/**
+	 * Sets the number of threads used by a search. If it is 1, the search runs on the calling
+	 * thread. Otherwise, it runs on a pool of <code>numThreads</code> threads, which is created for
+	 * each search and destroyed when it finishes. A good value is the number of available
+	 * processors.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive");
+		}
+
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Returns the number of threads used by a search.
+	 */
+	public int getNumThreads() {
+		return this.numThreads;
+	}
+
+	/**
+	 * Computes an optimal solution for <code>puzzle</code>. The puzzle is not modified.
+	 * 
+	 * @param puzzle
+	 *            the puzzle to solve.
+	 * @return the result of the search.
+	 */
+	public SolverResult solve(NPuzzle puzzle) {
+		if (puzzle == null) {
+			throw new IllegalArgumentException("The puzzle cannot be null");
+		}
+
+		/*
+		 * Calls to cancel() made before this search started are meant for another one.
+		 */
+		this.cancelled = false;
+
+		long startTime = System.currentTimeMillis();
+		SolverResult result = new SolverResult();
+
+		if (!puzzle.isSolvable()) {
+			result.status = SolverResult.Status.UNSOLVABLE;
+			return result;
+		}
+
+		SearchBudget budget = new SearchBudget(this.maxNodes, this.maxTime);
+		this.currentBudget = budget;
+
+		try {
+			/*
+			 * cancel() may have been called before the budget was published.
+			 */
+			if (this.cancelled) {
+				budget.cancel();
+			}
+
+			SearchBoard board = new SearchBoard(puzzle);
+			IHeuristic heuristic = this.heuristicFactory != null ? this.heuristicFactory
+					.createHeuristic(board.sideSize) : this.heuristic.copy();
+
+			if (this.numThreads == 1) {
+				new IDAStarSearch(board, heuristic, budget).run(result);
+			} else {
+				new ParallelIDAStarSearch(board, heuristic, budget, this.numThreads).run(result);
+			}
+		} finally {
+			this.currentBudget = null;
+		}
+
+		result.nodesExpanded = budget.getNodesExpanded();
+		result.elapsedTime = System.currentTimeMillis() - startTime;
+		return result;
+	}
+
+	/**
+	 * Cancels the search that is currently running, if any. The search will return a
+	 * {@link SolverResult} whose status is {@link SolverResult.Status#CANCELLED}, even if it has not
+	 * got to start searching yet. Later searches are not affected. This method can be called from
+	 * any thread.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+		SearchBudget budget = this.currentBudget;
+
+		if (budget != null) {
+			budget.cancel();
+		}
+	}
+}
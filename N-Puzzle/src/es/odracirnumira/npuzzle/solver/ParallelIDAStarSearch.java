@@ -0,0 +1,434 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multithreaded version of {@link IDAStarSearch}. For each iteration, the first levels of the
+ * search tree are expanded into a frontier of subtrees, and a pool of workers searches them. Each
+ * worker owns a copy of the board and of the heuristic, and takes the next unsearched subtree from
+ * the shared frontier as soon as it finishes the previous one, so threads that get small subtrees
+ * keep taking work from the others until the frontier is empty.
+ * <p>
+ * All the workers share the bound of the iteration and the {@link SearchBudget}. When a worker
+ * finds a solution, it stops the rest through the budget. Since IDA* only finds solutions whose
+ * cost equals the bound of the iteration, any solution found is optimal, although it may be a
+ * different one than the one found by {@link IDAStarSearch}.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+class ParallelIDAStarSearch {
+	/**
+	 * Minimum number of subtrees per thread that the frontier must have, so that the work is
+	 * evenly distributed among threads.
+	 */
+	private static final int MIN_SUBTREES_PER_THREAD = 32;
+
+	/**
+	 * Maximum depth of the frontier.
+	 */
+	private static final int MAX_FRONTIER_DEPTH = 16;
+
+	/**
+	 * The board being searched. It is only modified while building the frontier.
+	 */
+	private final SearchBoard board;
+
+	/**
+	 * The heuristic, bound to {@link #board}. Workers use copies of it.
+	 */
+	private final IHeuristic heuristic;
+
+	/**
+	 * The budget shared by all the workers.
+	 */
+	private final SearchBudget budget;
+
+	/**
+	 * The number of worker threads.
+	 */
+	private final int numThreads;
+
+	/**
+	 * The frontier. Subtree <code>i</code> is reached by moving the tiles from
+	 * <code>frontier[i*frontierDepth]</code> to <code>frontier[(i+1)*frontierDepth-1]</code>.
+	 */
+	private int[] frontier;
+
+	/**
+	 * Number of subtrees in {@link #frontier}.
+	 */
+	private int frontierSize;
+
+	/**
+	 * Depth of the subtrees of the frontier.
+	 */
+	private int frontierDepth;
+
+	/**
+	 * Smallest estimated cost among the nodes pruned while building the frontier.
+	 */
+	private int frontierMinPruned;
+
+	/**
+	 * Tiles moved to reach the node being visited while building the frontier.
+	 */
+	private final int[] frontierPath;
+
+	/**
+	 * Index of the next subtree of the frontier to search.
+	 */
+	private final AtomicInteger nextSubtree;
+
+	/**
+	 * The solution, once found.
+	 */
+	private List<Integer> solution;
+
+	/**
+	 * Creates a search.
+	 * 
+	 * @param board
+	 *            the board to solve.
+	 * @param heuristic
+	 *            the heuristic. It must not be bound to any other board that is being searched.
+	 * @param budget
+	 *            the budget of the search.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 */
+	ParallelIDAStarSearch(SearchBoard board, IHeuristic heuristic, SearchBudget budget,
+			int numThreads) {
+		this.board = board;
+		this.heuristic = heuristic;
+		this.budget = budget;
+		this.numThreads = numThreads;
+		this.frontier = new int[0];
+		this.frontierPath = new int[MAX_FRONTIER_DEPTH];
+		this.nextSubtree = new AtomicInteger();
+	}
+
+	/**
+	 * Runs the search until a solution is found or the budget is exhausted. The board must be
+	 * solvable; otherwise, the search would go on until the budget is exhausted.
+	 * 
+	 * @param result
+	 *            the result where the status, moves and lower bound of the search are stored.
+	 */
+	void run(SolverResult result) {
+		ExecutorService executor = Executors.newFixedThreadPool(this.numThreads);
+
+		try {
+			int h = this.heuristic.initialize(this.board);
+			int bound = h;
+			List<Worker> workers = new ArrayList<Worker>(this.numThreads);
+
+			for (int i = 0; i < this.numThreads; i++) {
+				workers.add(new Worker(new SearchBoard(this.board)));
+			}
+
+			while (true) {
+				result.lowerBound = bound;
+
+				int t = this.runIteration(h, bound, workers, executor);
+
+				if (t == IDAStarSearch.FOUND) {
+					result.status = SolverResult.Status.SOLVED;
+					result.moves = this.solution;
+					result.lowerBound = this.solution.size();
+					break;
+				}
+
+				if (t == IDAStarSearch.BUDGET_EXHAUSTED) {
+					result.status = this.budget.isCancelled() ? SolverResult.Status.CANCELLED
+							: SolverResult.Status.BUDGET_EXCEEDED;
+					break;
+				}
+
+				if (t == IDAStarSearch.NOT_FOUND) {
+					result.status = SolverResult.Status.UNSOLVABLE;
+					break;
+				}
+
+				bound = t;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs an iteration of the search.
+	 * 
+	 * @return the same values as {@link IDAStarSearch#search(int, int, int, int)}.
+	 */
+	private int runIteration(int h, int bound, List<Worker> workers, ExecutorService executor) {
+		if (this.buildFrontier(h, bound)) {
+			return IDAStarSearch.FOUND;
+		}
+
+		if (this.frontierSize == 0) {
+			return this.frontierMinPruned;
+		}
+
+		for (Worker worker : workers) {
+			worker.bound = bound;
+		}
+
+		this.nextSubtree.set(0);
+
+		int min = this.frontierMinPruned;
+		boolean found = false;
+		boolean exhausted = false;
+
+		try {
+			for (Future<Integer> future : executor.invokeAll(workers)) {
+				int t = future.get();
+
+				if (t == IDAStarSearch.FOUND) {
+					found = true;
+				} else if (t == IDAStarSearch.BUDGET_EXHAUSTED) {
+					exhausted = true;
+				} else if (t < min) {
+					min = t;
+				}
+			}
+		} catch (InterruptedException e) {
+			this.budget.cancel();
+			Thread.currentThread().interrupt();
+			return IDAStarSearch.BUDGET_EXHAUSTED;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+
+		if (found) {
+			return IDAStarSearch.FOUND;
+		}
+
+		return exhausted ? IDAStarSearch.BUDGET_EXHAUSTED : min;
+	}
+
+	/**
+	 * Builds the frontier for an iteration. The depth of the frontier grows until it has enough
+	 * subtrees for all the threads.
+	 * 
+	 * @return true if a solution has been found while building the frontier.
+	 */
+	private boolean buildFrontier(int h, int bound) {
+		int minSize = this.numThreads * MIN_SUBTREES_PER_THREAD;
+
+		for (int depth = 1; depth <= MAX_FRONTIER_DEPTH; depth++) {
+			this.frontierDepth = depth;
+			this.frontierSize = 0;
+			this.frontierMinPruned = IDAStarSearch.NOT_FOUND;
+
+			if (this.collect(0, h, bound, -1)) {
+				return true;
+			}
+
+			if (this.frontierSize == 0 || this.frontierSize >= minSize) {
+				break;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds to the frontier the nodes at depth {@link #frontierDepth} that are not pruned by
+	 * <code>bound</code>. The arguments are the same as those of
+	 * {@link IDAStarSearch#search(int, int, int, int)}.
+	 * 
+	 * @return true if a solution has been found.
+	 */
+	private boolean collect(int g, int h, int bound, int previousEmptyPos) {
+		int f = g + h;
+
+		if (f > bound) {
+			this.frontierMinPruned = Math.min(this.frontierMinPruned, f);
+			return false;
+		}
+
+		if (h == 0 && this.board.isSolved()) {
+			this.setSolution(this.frontierPath, 0, g);
+			return true;
+		}
+
+		if (g == this.frontierDepth) {
+			int offset = this.frontierSize * this.frontierDepth;
+
+			if (offset + this.frontierDepth > this.frontier.length) {
+				int[] newFrontier = new int[Math.max(this.frontier.length * 2, offset
+						+ this.frontierDepth)];
+				System.arraycopy(this.frontier, 0, newFrontier, 0, offset);
+				this.frontier = newFrontier;
+			}
+
+			System.arraycopy(this.frontierPath, 0, this.frontier, offset, this.frontierDepth);
+			this.frontierSize++;
+			return false;
+		}
+
+		int emptyPos = this.board.emptyPos;
+		int base = emptyPos * SearchBoard.NUM_NEIGHBOURS;
+
+		for (int i = 0; i < SearchBoard.NUM_NEIGHBOURS; i++) {
+			int next = this.board.neighbours[base + i];
+
+			if (next < 0 || next == previousEmptyPos) {
+				continue;
+			}
+
+			int tile = this.board.moveTileAt(next);
+			int newH = this.heuristic.tileMoved(h, tile, next, emptyPos);
+			this.frontierPath[g] = tile;
+
+			boolean found = this.collect(g + 1, newH, bound, emptyPos);
+
+			this.board.moveTileAt(emptyPos);
+			this.heuristic.tileMoved(newH, tile, emptyPos, next);
+
+			if (found) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Sets the solution, unless another one has already been set.
+	 */
+	private synchronized void setSolution(int[] moves, int offset, int length) {
+		if (this.solution == null) {
+			this.solution = new ArrayList<Integer>(length);
+
+			for (int i = 0; i < length; i++) {
+				this.solution.add(moves[offset + i]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the solution found by a worker, unless another one has already been set.
+	 */
+	private synchronized void setSolution(List<Integer> solution) {
+		if (this.solution == null) {
+			this.solution = solution;
+		}
+	}
+
+	/**
+	 * A worker that searches subtrees of the frontier until there are none left.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private class Worker implements Callable<Integer> {
+		/**
+		 * The board of this worker.
+		 */
+		private final SearchBoard board;
+
+		/**
+		 * The heuristic of this worker, bound to {@link #board}.
+		 */
+		private final IHeuristic heuristic;
+
+		/**
+		 * The search used for each subtree.
+		 */
+		private final IDAStarSearch search;
+
+		/**
+		 * Value of the heuristic for the initial state of the board.
+		 */
+		private final int initialH;
+
+		/**
+		 * Bound of the current iteration.
+		 */
+		private int bound;
+
+		public Worker(SearchBoard board) {
+			this.board = board;
+			this.heuristic = ParallelIDAStarSearch.this.heuristic.copy();
+			this.initialH = this.heuristic.initialize(board);
+			this.search = new IDAStarSearch(board, this.heuristic,
+					ParallelIDAStarSearch.this.budget);
+		}
+
+		public Integer call() {
+			int[] frontier = ParallelIDAStarSearch.this.frontier;
+			int depth = ParallelIDAStarSearch.this.frontierDepth;
+			int min = IDAStarSearch.NOT_FOUND;
+
+			this.search.ensurePathCapacity(this.bound + 1);
+
+			try {
+				while (true) {
+					int subtree = ParallelIDAStarSearch.this.nextSubtree.getAndIncrement();
+
+					if (subtree >= ParallelIDAStarSearch.this.frontierSize) {
+						return min;
+					}
+
+					if (ParallelIDAStarSearch.this.budget.isExhausted()) {
+						return IDAStarSearch.BUDGET_EXHAUSTED;
+					}
+
+					int offset = subtree * depth;
+					int h = this.initialH;
+
+					/*
+					 * Move the board to the root of the subtree.
+					 */
+					for (int i = offset; i < offset + depth; i++) {
+						int tile = frontier[i];
+						int oldPos = this.board.tilePositions[tile];
+						int newPos = this.board.emptyPos;
+						this.board.moveTileAt(oldPos);
+						h = this.heuristic.tileMoved(h, tile, oldPos, newPos);
+					}
+
+					this.search.setPathPrefix(frontier, offset, depth);
+
+					int t = this.search.search(depth, h, this.bound,
+							this.board.tilePositions[frontier[offset + depth - 1]]);
+
+					if (t == IDAStarSearch.FOUND) {
+						ParallelIDAStarSearch.this.setSolution(this.search.getSolution());
+						ParallelIDAStarSearch.this.budget.stop();
+						return IDAStarSearch.FOUND;
+					}
+
+					/*
+					 * Move the board back to its initial state.
+					 */
+					for (int i = offset + depth - 1; i >= offset; i--) {
+						int tile = frontier[i];
+						int oldPos = this.board.tilePositions[tile];
+						int newPos = this.board.emptyPos;
+						this.board.moveTileAt(oldPos);
+						h = this.heuristic.tileMoved(h, tile, oldPos, newPos);
+					}
+
+					if (t == IDAStarSearch.BUDGET_EXHAUSTED) {
+						return IDAStarSearch.BUDGET_EXHAUSTED;
+					}
+
+					min = Math.min(min, t);
+				}
+			} finally {
+				this.search.flushNodes();
+			}
+		}
+	}
+}
@@ -0,0 +1,534 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import es.odracirnumira.npuzzle.model.NPuzzle;
+
+/**
+ * A pattern database for a subset of the tiles of a board (the pattern). For each placement of
+ * the pattern tiles, it stores the minimum number of moves of pattern tiles needed to take them to
+ * their positions in the solved board. Moves of other tiles are free, so the costs of disjoint
+ * patterns can be added together to get an admissible heuristic (see
+ * {@link PatternDatabaseHeuristic}).
+ * <p>
+ * Placements are indexed by their rank as partial permutations of the positions of the board, so
+ * a pattern of <code>k</code> tiles on a board of <code>n</code> positions has
+ * <code>n!/(n-k)!</code> entries. The cost of a placement is always its Manhattan distance plus an
+ * even number of moves, so each entry only stores half the difference, in 4 bits. Differences
+ * greater than 15 are stored as 15, which keeps the heuristic admissible.
+ * <p>
+ * Databases are generated by {@link #generate(int, int[])}, which runs a breadth first search
+ * backwards from the solved board, and are stored with {@link #save(File)}. {@link #load(File)}
+ * maps the file into memory instead of reading it, so loading is immediate and the table does not
+ * take Java heap.
+ * <p>
+ * Instances are immutable and can be shared among threads.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class PatternDatabase {
+	/**
+	 * Value that identifies pattern database files ("NPDB").
+	 */
+	private static final int MAGIC = 0x4e504442;
+
+	/**
+	 * Maximum value that an entry can store.
+	 */
+	private static final int MAX_ENTRY = 15;
+
+	/**
+	 * Value used by {@link #generate(int, int[])} for states that have not been reached yet.
+	 */
+	private static final int UNSEEN = 0xff;
+
+	/**
+	 * The number of tiles on the side of the board.
+	 */
+	private final int sideSize;
+
+	/**
+	 * The number of positions of the board.
+	 */
+	private final int numPositions;
+
+	/**
+	 * The tiles of the pattern.
+	 */
+	private final int[] tiles;
+
+	/**
+	 * Entry <code>i</code> is the number of partial permutations of
+	 * <code>k-1-i</code> elements out of <code>numPositions-1-i</code>, where <code>k</code> is the
+	 * size of the pattern. Used to compute ranks.
+	 */
+	private final int[] rankFactors;
+
+	/**
+	 * The entries of the database, two per byte. The entry for rank <code>r</code> is in the low
+	 * nibble of byte <code>r/2</code> if <code>r</code> is even, and in the high nibble otherwise.
+	 */
+	private final ByteBuffer entries;
+
+	/**
+	 * Creates a database.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the board.
+	 * @param tiles
+	 *            the tiles of the pattern.
+	 * @param entries
+	 *            the nibble-packed entries.
+	 */
+	private PatternDatabase(int sideSize, int[] tiles, ByteBuffer entries) {
+		this.sideSize = sideSize;
+		this.numPositions = sideSize * sideSize;
+		this.tiles = tiles.clone();
+		this.rankFactors = computeRankFactors(this.numPositions, tiles.length);
+		this.entries = entries;
+	}
+
+	/**
+	 * Returns the number of tiles on the side of the board.
+	 */
+	public int getSideSize() {
+		return this.sideSize;
+	}
+
+	/**
+	 * Returns a copy of the tiles of the pattern.
+	 */
+	public int[] getTiles() {
+		return this.tiles.clone();
+	}
+
+	/**
+	 * Returns the number of entries of the database.
+	 */
+	public int getNumEntries() {
+		return numPartialPermutations(this.numPositions, this.tiles.length);
+	}
+
+	/**
+	 * Returns a lower bound of the number of moves of pattern tiles needed to solve a board.
+	 * 
+	 * @param tilePositions
+	 *            for each tile of the board, the position it occupies.
+	 * @return the lower bound.
+	 */
+	public int getCost(int[] tilePositions) {
+		int rank = 0;
+		int manhattan = 0;
+
+		for (int i = 0; i < this.tiles.length; i++) {
+			int tile = this.tiles[i];
+			int pos = tilePositions[tile];
+			int digit = pos;
+
+			for (int j = 0; j < i; j++) {
+				if (tilePositions[this.tiles[j]] < pos) {
+					digit--;
+				}
+			}
+
+			rank += digit * this.rankFactors[i];
+			manhattan += ManhattanHeuristic.distance(tile, pos, this.sideSize);
+		}
+
+		return manhattan + 2 * this.getEntry(rank);
+	}
+
+	/**
+	 * Stores the database in <code>file</code>, so that it can be loaded later by
+	 * {@link #load(File)}.
+	 * 
+	 * @param file
+	 *            the file.
+	 * @throws IOException
+	 *             if any error writing the file.
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				file)));
+
+		try {
+			os.writeInt(MAGIC);
+			os.writeInt(this.sideSize);
+			os.writeInt(this.tiles.length);
+
+			for (int tile : this.tiles) {
+				os.writeInt(tile);
+			}
+
+			int numBytes = this.entries.capacity();
+
+			for (int i = 0; i < numBytes; i++) {
+				os.write(this.entries.get(i));
+			}
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Loads a database stored by {@link #save(File)}. The file is mapped into memory, so it must
+	 * not be modified while the database is in use.
+	 * 
+	 * @param file
+	 *            the file.
+	 * @return the database.
+	 * @throws IOException
+	 *             if any error reading the file, or if it is not a valid pattern database.
+	 */
+	public static PatternDatabase load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a pattern database: " + file);
+			}
+
+			int sideSize = buffer.getInt();
+			int numTiles = buffer.getInt();
+
+			if (sideSize < 2 || numTiles < 1 || numTiles >= sideSize * sideSize
+					|| buffer.remaining() < numTiles * 4) {
+				throw new IOException("Corrupt pattern database: " + file);
+			}
+
+			int[] tiles = new int[numTiles];
+
+			for (int i = 0; i < numTiles; i++) {
+				tiles[i] = buffer.getInt();
+			}
+
+			checkPattern(sideSize, tiles);
+
+			int numEntries = numPartialPermutations(sideSize * sideSize, numTiles);
+
+			if (buffer.remaining() != (numEntries + 1) / 2) {
+				throw new IOException("Corrupt pattern database: " + file);
+			}
+
+			/*
+			 * The mapping stays valid after the channel is closed.
+			 */
+			return new PatternDatabase(sideSize, tiles, buffer.slice());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt pattern database: " + file);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Generates the database for a pattern. The search runs over the placements of the pattern
+	 * tiles and the empty tile, so it needs one byte of memory for each of them (about 58 MB for a
+	 * pattern of 6 tiles on a 4x4 board). It is meant to be run once and its result stored with
+	 * {@link #save(File)}.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the board.
+	 * @param tiles
+	 *            the tiles of the pattern. They must be different and cannot include the empty
+	 *            tile.
+	 * @return the database.
+	 */
+	public static PatternDatabase generate(int sideSize, int[] tiles) {
+		checkPattern(sideSize, tiles);
+
+		int numPositions = sideSize * sideSize;
+		int k = tiles.length;
+		int numFree = numPositions - k;
+		long numStates = (long) numPartialPermutations(numPositions, k) * numFree;
+
+		if (numStates > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The pattern is too big");
+		}
+
+		int[] factors = computeRankFactors(numPositions, k);
+		int[] neighbours = NPuzzle.getNeighbourTable(sideSize);
+		byte[] depths = new byte[(int) numStates];
+		BitSet expanded = new BitSet((int) numStates);
+
+		Arrays.fill(depths, (byte) UNSEEN);
+
+		/*
+		 * positions[i] is the position of pattern tile i, and occupants[p] is the index of the
+		 * pattern tile at position p, or -1 if there is none.
+		 */
+		int[] positions = new int[k];
+		int[] occupants = new int[numPositions];
+		boolean[] used = new boolean[numPositions];
+		int[] stack = new int[numPositions];
+		int[] visitedMarks = new int[numPositions];
+		int visitedMark = 0;
+
+		for (int i = 0; i < k; i++) {
+			positions[i] = tiles[i];
+		}
+
+		IntList current = new IntList();
+		IntList next = new IntList();
+		int goal = rankState(positions, numPositions - 1, factors, numFree);
+		depths[goal] = 0;
+		current.add(goal);
+
+		for (int depth = 0; current.size > 0; depth++) {
+			if (depth + 1 >= UNSEEN) {
+				throw new IllegalStateException("Pattern database depth overflow");
+			}
+
+			next.size = 0;
+
+			for (int c = 0; c < current.size; c++) {
+				int state = current.data[c];
+
+				if (expanded.get(state)) {
+					continue;
+				}
+
+				int blank = unrankState(state, positions, used, factors, numFree);
+				Arrays.fill(occupants, -1);
+
+				for (int i = 0; i < k; i++) {
+					occupants[positions[i]] = i;
+				}
+
+				/*
+				 * Moves of tiles that are not in the pattern are free, so every placement of the
+				 * empty tile reachable through them has the same depth. Expand all of them now.
+				 */
+				visitedMark++;
+				int stackSize = 0;
+				stack[stackSize++] = blank;
+				visitedMarks[blank] = visitedMark;
+
+				while (stackSize > 0) {
+					int blankPos = stack[--stackSize];
+					int blankState = rankState(positions, blankPos, factors, numFree);
+					expanded.set(blankState);
+					depths[blankState] = (byte) depth;
+
+					for (int n = blankPos * SearchBoard.NUM_NEIGHBOURS; n < (blankPos + 1)
+							* SearchBoard.NUM_NEIGHBOURS; n++) {
+						int neighbour = neighbours[n];
+
+						if (neighbour < 0) {
+							continue;
+						}
+
+						int occupant = occupants[neighbour];
+
+						if (occupant < 0) {
+							if (visitedMarks[neighbour] != visitedMark) {
+								visitedMarks[neighbour] = visitedMark;
+								stack[stackSize++] = neighbour;
+							}
+						} else {
+							positions[occupant] = blankPos;
+							int child = rankState(positions, neighbour, factors, numFree);
+							positions[occupant] = neighbour;
+
+							if ((depths[child] & 0xff) == UNSEEN) {
+								depths[child] = (byte) (depth + 1);
+								next.add(child);
+							}
+						}
+					}
+				}
+			}
+
+			IntList aux = current;
+			current = next;
+			next = aux;
+		}
+
+		/*
+		 * The cost of a placement of the pattern is the minimum over all the placements of the
+		 * empty tile. They are stored consecutively.
+		 */
+		int numEntries = numPartialPermutations(numPositions, k);
+		byte[] packed = new byte[(numEntries + 1) / 2];
+
+		for (int rank = 0; rank < numEntries; rank++) {
+			int min = UNSEEN;
+
+			for (int i = rank * numFree; i < (rank + 1) * numFree; i++) {
+				min = Math.min(min, depths[i] & 0xff);
+			}
+
+			unrankState(rank * numFree, positions, used, factors, numFree);
+			int manhattan = 0;
+
+			for (int i = 0; i < k; i++) {
+				manhattan += ManhattanHeuristic.distance(tiles[i], positions[i], sideSize);
+			}
+
+			int entry = Math.min((min - manhattan) / 2, MAX_ENTRY);
+			packed[rank >> 1] |= (rank & 1) == 0 ? entry : entry << 4;
+		}
+
+		return new PatternDatabase(sideSize, tiles, ByteBuffer.wrap(packed));
+	}
+
+	/**
+	 * Returns the entry for rank <code>rank</code>.
+	 */
+	private int getEntry(int rank) {
+		int value = this.entries.get(rank >> 1);
+		return (rank & 1) == 0 ? value & 0x0f : (value >> 4) & 0x0f;
+	}
+
+	/**
+	 * Throws an IllegalArgumentException if <code>tiles</code> is not a valid pattern for a board
+	 * whose side has <code>sideSize</code> tiles.
+	 */
+	static void checkPattern(int sideSize, int[] tiles) {
+		int emptyTile = sideSize * sideSize - 1;
+
+		if (tiles.length == 0 || tiles.length >= emptyTile + 1) {
+			throw new IllegalArgumentException("Invalid number of pattern tiles");
+		}
+
+		boolean[] used = new boolean[emptyTile];
+
+		for (int tile : tiles) {
+			if (tile < 0 || tile >= emptyTile || used[tile]) {
+				throw new IllegalArgumentException("Invalid pattern tile: " + tile);
+			}
+
+			used[tile] = true;
+		}
+	}
+
+	/**
+	 * Returns the number of partial permutations of <code>k</code> elements out of
+	 * <code>n</code>, or Integer.MAX_VALUE if it does not fit in an int.
+	 */
+	private static int numPartialPermutations(int n, int k) {
+		long result = 1;
+
+		for (int i = 0; i < k; i++) {
+			result *= n - i;
+
+			if (result > Integer.MAX_VALUE) {
+				return Integer.MAX_VALUE;
+			}
+		}
+
+		return (int) result;
+	}
+
+	/**
+	 * Computes the factors used to rank placements of <code>k</code> tiles on a board of
+	 * <code>numPositions</code> positions. See {@link #rankFactors}.
+	 */
+	private static int[] computeRankFactors(int numPositions, int k) {
+		int[] result = new int[k];
+
+		for (int i = 0; i < k; i++) {
+			result[i] = numPartialPermutations(numPositions - 1 - i, k - 1 - i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the rank of a placement of the pattern tiles and the empty tile. The rank of the
+	 * empty tile is its index among the positions not used by the pattern, so the placements that
+	 * only differ in the position of the empty tile have consecutive ranks.
+	 */
+	private static int rankState(int[] positions, int blank, int[] factors, int numFree) {
+		int rank = 0;
+		int blankDigit = blank;
+
+		for (int i = 0; i < positions.length; i++) {
+			int pos = positions[i];
+			int digit = pos;
+
+			for (int j = 0; j < i; j++) {
+				if (positions[j] < pos) {
+					digit--;
+				}
+			}
+
+			rank += digit * factors[i];
+
+			if (pos < blank) {
+				blankDigit--;
+			}
+		}
+
+		return rank * numFree + blankDigit;
+	}
+
+	/**
+	 * Inverse of {@link #rankState(int[], int, int[], int)}. Stores the positions of the pattern
+	 * tiles in <code>positions</code> and returns the position of the empty tile.
+	 * <code>used</code> is a scratch array with an entry for each position of the board.
+	 */
+	private static int unrankState(int state, int[] positions, boolean[] used, int[] factors,
+			int numFree) {
+		int rank = state / numFree;
+		int blankDigit = state % numFree;
+
+		Arrays.fill(used, false);
+
+		for (int i = 0; i < positions.length; i++) {
+			int digit = rank / factors[i];
+			rank %= factors[i];
+			positions[i] = nthUnused(used, digit);
+			used[positions[i]] = true;
+		}
+
+		return nthUnused(used, blankDigit);
+	}
+
+	/**
+	 * Returns the <code>n</code>-th position (starting at 0) that is not set in <code>used</code>.
+	 */
+	private static int nthUnused(boolean[] used, int n) {
+		for (int pos = 0; pos < used.length; pos++) {
+			if (!used[pos] && n-- == 0) {
+				return pos;
+			}
+		}
+
+		throw new IllegalStateException("Invalid rank");
+	}
+
+	/**
+	 * Growable list of ints, used as the frontier of the search.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static class IntList {
+		private int[] data = new int[1024];
+		private int size;
+
+		public void add(int value) {
+			if (this.size == this.data.length) {
+				int[] newData = new int[this.data.length * 2];
+				System.arraycopy(this.data, 0, newData, 0, this.size);
+				this.data = newData;
+			}
+
+			this.data[this.size++] = value;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * {@link IHeuristic} that adds the costs of several disjoint {@link PatternDatabase}s. Tiles that
+ * are not in any pattern contribute their Manhattan distance. Since each database only counts the
+ * moves of its own tiles, the sum never overestimates the actual number of moves.
+ * <p>
+ * When a tile moves, only the database that contains it has to be looked up again, so updates
+ * cost a single table access.
+ * <p>
+ * The databases are shared among the copies returned by {@link #copy()}, so running several
+ * searches in parallel does not take more memory.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class PatternDatabaseHeuristic implements IHeuristic {
+	/**
+	 * The databases.
+	 */
+	private final PatternDatabase[] databases;
+
+	/**
+	 * For each tile, the index of the database that contains it, or -1 if it is not in any
+	 * database.
+	 */
+	private final int[] tileDatabases;
+
+	/**
+	 * The number of tiles on the side of the boards this heuristic works with.
+	 */
+	private final int sideSize;
+
+	/**
+	 * The current cost of each database.
+	 */
+	private final int[] costs;
+
+	/**
+	 * The board the heuristic is bound to.
+	 */
+	private SearchBoard board;
+
+	/**
+	 * Creates a heuristic from a set of disjoint databases for the same board size.
+	 * 
+	 * @param databases
+	 *            the databases.
+	 */
+	public PatternDatabaseHeuristic(PatternDatabase... databases) {
+		if (databases.length == 0) {
+			throw new IllegalArgumentException("At least one pattern database is needed");
+		}
+
+		this.sideSize = databases[0].getSideSize();
+		this.databases = databases.clone();
+		this.tileDatabases = new int[this.sideSize * this.sideSize];
+		this.costs = new int[databases.length];
+
+		for (int i = 0; i < this.tileDatabases.length; i++) {
+			this.tileDatabases[i] = -1;
+		}
+
+		for (int i = 0; i < databases.length; i++) {
+			if (databases[i].getSideSize() != this.sideSize) {
+				throw new IllegalArgumentException("Pattern databases for different board sizes");
+			}
+
+			for (int tile : databases[i].getTiles()) {
+				if (this.tileDatabases[tile] != -1) {
+					throw new IllegalArgumentException("Pattern databases are not disjoint");
+				}
+
+				this.tileDatabases[tile] = i;
+			}
+		}
+	}
+
+	public int initialize(SearchBoard board) {
+		if (board.sideSize != this.sideSize) {
+			throw new IllegalArgumentException("The board size does not match the pattern databases");
+		}
+
+		this.board = board;
+
+		int result = 0;
+
+		for (int i = 0; i < this.databases.length; i++) {
+			this.costs[i] = this.databases[i].getCost(board.tilePositions);
+			result += this.costs[i];
+		}
+
+		for (int tile = 0; tile < board.emptyTile; tile++) {
+			if (this.tileDatabases[tile] == -1) {
+				result += ManhattanHeuristic.distance(tile, board.tilePositions[tile],
+						this.sideSize);
+			}
+		}
+
+		return result;
+	}
+
+	public int tileMoved(int value, int tile, int oldPos, int newPos) {
+		int database = this.tileDatabases[tile];
+
+		if (database == -1) {
+			return value - ManhattanHeuristic.distance(tile, oldPos, this.sideSize)
+					+ ManhattanHeuristic.distance(tile, newPos, this.sideSize);
+		}
+
+		int cost = this.databases[database].getCost(this.board.tilePositions);
+		int result = value - this.costs[database] + cost;
+		this.costs[database] = cost;
+		return result;
+	}
+
+	public IHeuristic copy() {
+		return new PatternDatabaseHeuristic(this.databases);
+	}
+
+	/**
+	 * Returns the default partition of the tiles of a board into patterns: 4-4 for 3x3 boards,
+	 * 5-5-5 for 4x4 boards and 5-5-5-5-4 for 5x5 boards. Bigger patterns would give better
+	 * estimates, but their databases take too much memory to be generated: a 6 tile pattern of a
+	 * 4x4 board needs about ten times as much memory as a 5 tile one.
+	 * 
+	 * @param sideSize
+	 *            the number of tiles on the side of the board. It must be 3, 4 or 5.
+	 * @return the patterns.
+	 */
+	public static int[][] getDefaultPatterns(int sideSize) {
+		switch (sideSize) {
+		case 3:
+			return new int[][] { { 0, 1, 2, 3 }, { 4, 5, 6, 7 } };
+		case 4:
+			return new int[][] { { 0, 1, 4, 5, 8 }, { 2, 3, 6, 7, 11 }, { 9, 10, 12, 13, 14 } };
+		case 5:
+			return new int[][] { { 0, 1, 2, 5, 6 }, { 3, 4, 7, 8, 9 }, { 10, 11, 15, 16, 20 },
+					{ 12, 13, 14, 17, 18 }, { 19, 21, 22, 23 } };
+		default:
+			throw new IllegalArgumentException("No default patterns for side size " + sideSize);
+		}
+	}
+
+	/**
+	 * Returns the name of the file where the database of a pattern is stored by
+	 * {@link #load(File, int, boolean)}.
+	 */
+	public static String getFileName(int sideSize, int[] pattern) {
+		StringBuilder result = new StringBuilder("pdb_" + sideSize);
+
+		for (int tile : pattern) {
+			result.append("_").append(tile);
+		}
+
+		return result.append(".dat").toString();
+	}
+
+	/**
+	 * Creates a heuristic from the databases of the default patterns (see
+	 * {@link #getDefaultPatterns(int)}) stored in <code>directory</code>.
+	 * 
+	 * @param directory
+	 *            the directory where the databases are stored.
+	 * @param sideSize
+	 *            the number of tiles on the side of the board.
+	 * @param generateMissing
+	 *            if true, the databases that are not found are generated and stored in
+	 *            <code>directory</code>. This may take a long time and a lot of memory, so it
+	 *            should never be done on the UI thread.
+	 * @return the heuristic.
+	 * @throws IOException
+	 *             if any error reading or writing the databases, or if a database is not found and
+	 *             <code>generateMissing</code> is false.
+	 */
+	public static PatternDatabaseHeuristic load(File directory, int sideSize,
+			boolean generateMissing) throws IOException {
+		int[][] patterns = getDefaultPatterns(sideSize);
+		PatternDatabase[] databases = new PatternDatabase[patterns.length];
+
+		for (int i = 0; i < patterns.length; i++) {
+			File file = new File(directory, getFileName(sideSize, patterns[i]));
+
+			if (file.exists()) {
+				databases[i] = PatternDatabase.load(file);
+			} else if (generateMissing) {
+				/*
+				 * Write to a temporary file first, so that an interrupted write does not leave a
+				 * corrupt database behind.
+				 */
+				File tempFile = new File(directory, file.getName() + ".tmp");
+				databases[i] = PatternDatabase.generate(sideSize, patterns[i]);
+				databases[i].save(tempFile);
+
+				if (!tempFile.renameTo(file)) {
+					tempFile.delete();
+					throw new IOException("Cannot write " + file);
+				}
+			} else {
+				throw new FileNotFoundException(file.getPath());
+			}
+		}
+
+		return new PatternDatabaseHeuristic(databases);
+	}
+}
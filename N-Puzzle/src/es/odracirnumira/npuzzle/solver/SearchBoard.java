@@ -0,0 +1,163 @@
+package es.odracirnumira.npuzzle.solver;
+
+import es.odracirnumira.npuzzle.model.NPuzzle;
+
+/**
+ * A lightweight copy of the state of an {@link NPuzzle}, used by the solvers while searching.
+ * Unlike {@code NPuzzle}, this class performs no validation and notifies no listeners when tiles
+ * are moved, so it can be modified millions of times per second without allocating memory.
+ * <p>
+ * Positions and tiles follow the same conventions as {@code NPuzzle}: the empty tile is tile
+ * <code>N</code>, and the puzzle is solved when every tile <code>i</code> is at position
+ * <code>i</code>.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class SearchBoard {
+	/**
+	 * Number of entries that each position has in {@link #neighbours}.
+	 */
+	static final int NUM_NEIGHBOURS = NPuzzle.NUM_NEIGHBOURS;
+
+	/**
+	 * The number of tiles on the side of the board.
+	 */
+	final int sideSize;
+
+	/**
+	 * The number of tiles of the board, including the empty tile.
+	 */
+	final int numTiles;
+
+	/**
+	 * The empty tile. It equals {@link #numTiles} - 1.
+	 */
+	final int emptyTile;
+
+	/**
+	 * For each position, the tile that is placed at that position.
+	 */
+	final int[] positionContents;
+
+	/**
+	 * For each tile, the position that it occupies.
+	 */
+	final int[] tilePositions;
+
+	/**
+	 * The neighbour table of the board, as returned by {@link NPuzzle#getNeighbourTable(int)}. It
+	 * is shared among all the puzzles and boards of the same size, so it must not be modified.
+	 */
+	final int[] neighbours;
+
+	/**
+	 * The position of the empty tile.
+	 */
+	int emptyPos;
+
+	/**
+	 * Creates a board whose state is that of <code>puzzle</code>.
+	 * 
+	 * @param puzzle
+	 *            the puzzle to copy.
+	 */
+	public SearchBoard(NPuzzle puzzle) {
+		this.sideSize = puzzle.getSideNumTiles();
+		this.numTiles = puzzle.getNumTiles();
+		this.emptyTile = this.numTiles - 1;
+		this.positionContents = new int[this.numTiles];
+		this.tilePositions = new int[this.numTiles];
+
+		for (int pos = 0; pos < this.numTiles; pos++) {
+			int tile = puzzle.getPositionTile(pos);
+			this.positionContents[pos] = tile;
+			this.tilePositions[tile] = pos;
+		}
+
+		this.emptyPos = this.tilePositions[this.emptyTile];
+		this.neighbours = NPuzzle.getNeighbourTable(this.sideSize);
+	}
+
+	/**
+	 * Creates a copy of <code>board</code>.
+	 * 
+	 * @param board
+	 *            the board to copy.
+	 */
+	public SearchBoard(SearchBoard board) {
+		this.sideSize = board.sideSize;
+		this.numTiles = board.numTiles;
+		this.emptyTile = board.emptyTile;
+		this.positionContents = board.positionContents.clone();
+		this.tilePositions = board.tilePositions.clone();
+		this.neighbours = board.neighbours;
+		this.emptyPos = board.emptyPos;
+	}
+
+	/**
+	 * Moves the tile at position <code>pos</code> to the position of the empty tile. No check is
+	 * performed, so <code>pos</code> must be next to the empty tile.
+	 * 
+	 * @param pos
+	 *            the position of the tile to move.
+	 * @return the tile that has been moved.
+	 */
+	public int moveTileAt(int pos) {
+		int tile = this.positionContents[pos];
+		this.positionContents[this.emptyPos] = tile;
+		this.tilePositions[tile] = this.emptyPos;
+		this.positionContents[pos] = this.emptyTile;
+		this.tilePositions[this.emptyTile] = pos;
+		this.emptyPos = pos;
+		return tile;
+	}
+
+	/**
+	 * Returns true if every tile <code>i</code> is placed at position <code>i</code>.
+	 */
+	public boolean isSolved() {
+		for (int i = 0; i < this.numTiles; i++) {
+			if (this.tilePositions[i] != i) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of tiles on the side of the board.
+	 */
+	public int getSideSize() {
+		return this.sideSize;
+	}
+
+	/**
+	 * Returns the number of tiles of the board, including the empty tile.
+	 */
+	public int getNumTiles() {
+		return this.numTiles;
+	}
+
+	/**
+	 * Returns the tile placed at position <code>pos</code>.
+	 */
+	public int getPositionTile(int pos) {
+		return this.positionContents[pos];
+	}
+
+	/**
+	 * Returns the position of tile <code>tile</code>.
+	 */
+	public int getTilePosition(int tile) {
+		return this.tilePositions[tile];
+	}
+
+	/**
+	 * Returns the position of the empty tile.
+	 */
+	public int getEmptyTilePosition() {
+		return this.emptyPos;
+	}
+}
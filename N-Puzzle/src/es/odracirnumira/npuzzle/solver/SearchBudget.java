@@ -0,0 +1,125 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the work that a search may perform. A budget may limit the number of expanded nodes,
+ * the running time, or both, and can be cancelled at any time from any thread.
+ * <p>
+ * Searches do not check the budget for every node they expand. Instead, they report the nodes
+ * they have expanded in batches of {@link #CHECK_INTERVAL} through {@link #consume(long)}, so
+ * checking the budget has no measurable cost. Several searches running in parallel may share the
+ * same budget.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+class SearchBudget {
+	/**
+	 * Number of nodes that a search expands between two checks of the budget. Must be a power of
+	 * two.
+	 */
+	static final int CHECK_INTERVAL = 4096;
+
+	/**
+	 * Maximum number of nodes to expand, or a negative number for no limit.
+	 */
+	private final long maxNodes;
+
+	/**
+	 * Value of {@link System#nanoTime()} at which the search must stop, or a negative number for no
+	 * limit.
+	 */
+	private final long deadline;
+
+	/**
+	 * Number of nodes that have been reported so far.
+	 */
+	private final AtomicLong nodesExpanded = new AtomicLong();
+
+	/**
+	 * Whether the search has been cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Whether the budget has been exceeded.
+	 */
+	private volatile boolean exceeded;
+
+	/**
+	 * Whether the searches have been stopped because one of them found a solution.
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * Creates a budget.
+	 * 
+	 * @param maxNodes
+	 *            maximum number of nodes to expand, or a negative number for no limit.
+	 * @param maxTime
+	 *            maximum time, in milliseconds, or a negative number for no limit. The time starts
+	 *            counting when the budget is created.
+	 */
+	SearchBudget(long maxNodes, long maxTime) {
+		this.maxNodes = maxNodes;
+		this.deadline = maxTime < 0 ? -1 : System.nanoTime() + maxTime * 1000000L;
+	}
+
+	/**
+	 * Reports that <code>nodes</code> more nodes have been expanded and returns whether the search
+	 * can go on.
+	 */
+	boolean consume(long nodes) {
+		long total = this.nodesExpanded.addAndGet(nodes);
+
+		if (this.cancelled || this.exceeded || this.stopped) {
+			return false;
+		}
+
+		if ((this.maxNodes >= 0 && total > this.maxNodes)
+				|| (this.deadline >= 0 && System.nanoTime() - this.deadline > 0)) {
+			this.exceeded = true;
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Cancels the search. Searches notice it the next time they check the budget.
+	 */
+	void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Stops the searches that share this budget because one of them has found a solution. Unlike
+	 * {@link #cancel()}, this is not reported as a cancellation.
+	 */
+	void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * Returns true if {@link #cancel()} has been called.
+	 */
+	boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Returns true if the search can no longer go on, either because the budget has been exceeded
+	 * or because it has been cancelled or stopped.
+	 */
+	boolean isExhausted() {
+		return this.cancelled || this.exceeded || this.stopped;
+	}
+
+	/**
+	 * Returns the number of nodes that have been reported so far.
+	 */
+	long getNodesExpanded() {
+		return this.nodesExpanded.get();
+	}
+}
@@ -0,0 +1,67 @@
+package es.odracirnumira.npuzzle.solver;
+
+import java.util.List;
+
+/**
+ * The result of running a solver on a puzzle.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class SolverResult {
+	/**
+	 * How a search finished.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public enum Status {
+		/**
+		 * An optimal solution has been found.
+		 */
+		SOLVED,
+
+		/**
+		 * The puzzle cannot be solved.
+		 */
+		UNSOLVABLE,
+
+		/**
+		 * The search ran out of nodes or time before finding a solution.
+		 */
+		BUDGET_EXCEEDED,
+
+		/**
+		 * The search was cancelled before finding a solution.
+		 */
+		CANCELLED
+	}
+
+	/**
+	 * How the search finished.
+	 */
+	public Status status;
+
+	/**
+	 * If {@link #status} is {@link Status#SOLVED}, the sequence of tiles to move in order to solve
+	 * the puzzle. This is the same format used for the moves of a game, so it can be passed to
+	 * {@link es.odracirnumira.npuzzle.model.NPuzzle#moveTiles(List)}. Null otherwise.
+	 */
+	public List<Integer> moves;
+
+	/**
+	 * The number of nodes expanded by the search.
+	 */
+	public long nodesExpanded;
+
+	/**
+	 * The time that the search took, in milliseconds.
+	 */
+	public long elapsedTime;
+
+	/**
+	 * A lower bound of the number of moves needed to solve the puzzle. If the puzzle has been
+	 * solved, this is the exact number of moves of the solution.
+	 */
+	public int lowerBound;
+}
@@ -11,6 +11,7 @@ import android.os.RemoteException;
 import android.util.Log;
 import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
+import es.odracirnumira.npuzzle.util.cache.DiskBitmapCache;
 
 /**
  * Task that deletes a set of games. This uses the ContentProvider specified by
@@ -31,6 +32,16 @@ public class DeleteGamesTask extends AsyncTask<long[], Void, Void> {
 
 		try {
 			contentResolver.applyBatch(NPuzzleContract.AUTHORITY, deleteOperations);
+
+			/*
+			 * Remove the thumbnails of the games from disk.
+			 */
+			DiskBitmapCache thumbnailCache = NPuzzleApplication.getApplication()
+					.getThumbnailCache();
+
+			for (long id : params[0]) {
+				thumbnailCache.removeAll(id + "_");
+			}
 		} catch (RemoteException e) {
 			Log.e("NPuzzle", "Error deleting games", e);
 		} catch (OperationApplicationException e) {
@@ -8,6 +8,7 @@ import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
 import es.odracirnumira.npuzzle.model.FinishedNPuzzleGame;
+import es.odracirnumira.npuzzle.model.MoveCodec;
 import es.odracirnumira.npuzzle.model.NPuzzle;
 
 public class SaveFinishedGameTask extends AsyncTask<FinishedNPuzzleGame, Void, Long> {
@@ -20,7 +21,8 @@ public class SaveFinishedGameTask extends AsyncTask<FinishedNPuzzleGame, Void, L
 		ContentValues values = new ContentValues();
 		values.put(NPuzzleContract.FinishedGames.INITIAL_STATE, game.initialState);
 		values.put(NPuzzleContract.FinishedGames.ELAPSED_TIME, game.elapsedTime);
-		values.put(NPuzzleContract.FinishedGames.MOVES, NPuzzle.sequenceOfIntegersToString(game.moves));
+		values.put(NPuzzleContract.FinishedGames.MOVES, MoveCodec.encode(
+				NPuzzle.stringToSequenceOfIntegers(game.initialState), game.moves));
 		values.put(NPuzzleContract.FinishedGames.START_TIME, game.startTime);
 		values.put(NPuzzleContract.FinishedGames.IMAGE_PATH, game.puzzleImagePath);
 		values.put(NPuzzleContract.FinishedGames.FINISHED_TIME, game.finishedTime);
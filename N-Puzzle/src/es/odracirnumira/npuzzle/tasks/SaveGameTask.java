@@ -3,18 +3,24 @@ package es.odracirnumira.npuzzle.tasks;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.os.AsyncTask;
+import android.util.Log;
 import android.widget.Toast;
 import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
+import es.odracirnumira.npuzzle.model.MoveCodec;
 import es.odracirnumira.npuzzle.model.NPuzzle;
 import es.odracirnumira.npuzzle.model.NPuzzleGame;
+import es.odracirnumira.npuzzle.model.PackedNPuzzleState;
 
 /**
  * Task that saves a game ({@link NPuzzleGame}) into the content provider. A new entry is
  * created in the database for the game. If there is any error saving the game, a toast message
  * is shown.
  * <p>
+ * The data to save is taken from the game when the task is created, so the task must be created
+ * on the thread that moves the tiles of the game.
+ * <p>
  * This task sets a new value for the game's ID ({@link NPuzzleGame#gameID}): if the game is
  * properly saved, it will be a value > 0. Otherwise, it will be -1. The result of the task is
  * the ID of the game (-1 if it could not be saved).
@@ -22,30 +28,55 @@ import es.odracirnumira.npuzzle.model.NPuzzleGame;
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class SaveGameTask extends AsyncTask<NPuzzleGame, Void, Long> {
-	protected Long doInBackground(NPuzzleGame... params) {
-		NPuzzleGame game = params[0];
+public class SaveGameTask extends AsyncTask<Void, Void, Long> {
+	/**
+	 * The game.
+	 */
+	private final NPuzzleGame game;
+
+	/**
+	 * The values of the row of the game.
+	 */
+	private final ContentValues values;
+
+	/**
+	 * Constructor. It must be called on the thread that moves the tiles of the game.
+	 * 
+	 * @param game
+	 *            the game to save.
+	 */
+	public SaveGameTask(NPuzzleGame game) {
+		this.game = game;
 
+		int numMoves = game.moves.size();
+		this.values = new ContentValues();
+		this.values.put(NPuzzleContract.Games.INITIAL_STATE, game.initialState);
+		this.values.put(NPuzzleContract.Games.ELAPSED_TIME, game.elapsedTime);
+		this.values.put(NPuzzleContract.Games.MOVES, MoveCodec.encode(
+				NPuzzle.stringToSequenceOfIntegers(game.initialState), game.moves));
+		this.values.put(NPuzzleContract.Games.START_TIME, game.startTime);
+		this.values.put(NPuzzleContract.Games.IMAGE_PATH, game.puzzleImagePath);
+		this.values.put(NPuzzleContract.Games.LAST_PLAYED_TIME, game.lastPlayedTime);
+		this.values.put(NPuzzleContract.Games.IMAGE_ROTATION, game.imageRotation);
+		this.values.put(NPuzzleContract.Games.CURRENT_STATE,
+				PackedNPuzzleState.fromNPuzzle(game.nPuzzle).toByteArray());
+		this.values.put(NPuzzleContract.Games.CURRENT_STATE_NUM_MOVES, numMoves);
+		game.savedMoves = numMoves;
+	}
+
+	protected Long doInBackground(Void... params) {
 		/*
 		 * Try to save the game.
 		 */
-		ContentValues values = new ContentValues();
-		values.put(NPuzzleContract.Games.INITIAL_STATE, game.initialState);
-		values.put(NPuzzleContract.Games.ELAPSED_TIME, game.elapsedTime);
-		values.put(NPuzzleContract.Games.MOVES, NPuzzle.sequenceOfIntegersToString(game.moves));
-		values.put(NPuzzleContract.Games.START_TIME, game.startTime);
-		values.put(NPuzzleContract.Games.IMAGE_PATH, game.puzzleImagePath);
-		values.put(NPuzzleContract.Games.LAST_PLAYED_TIME, game.lastPlayedTime);
-		values.put(NPuzzleContract.Games.IMAGE_ROTATION, game.imageRotation);
-
 		try {
-			game.gameID = ContentUris.parseId(NPuzzleApplication.getApplication()
-					.getContentResolver().insert(NPuzzleContract.Games.CONTENT_URI, values));
+			this.game.gameID = ContentUris.parseId(NPuzzleApplication.getApplication()
+					.getContentResolver().insert(NPuzzleContract.Games.CONTENT_URI, this.values));
 		} catch (Exception e) {
-			game.gameID = -1L;
+			Log.e("NPuzzle", "Error saving game", e);
+			this.game.gameID = -1L;
 		}
 
-		return game.gameID;
+		return this.game.gameID;
 	}
 
 	protected void onPostExecute(Long result) {
@@ -54,4 +85,4 @@ public class SaveGameTask extends AsyncTask<NPuzzleGame, Void, Long> {
 					Toast.LENGTH_SHORT).show();
 		}
 	}
-}
+}
\ No newline at end of file
@@ -1,20 +1,38 @@
 package es.odracirnumira.npuzzle.tasks;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.net.Uri;
 import android.os.AsyncTask;
+import android.util.Log;
 import android.widget.Toast;
 import es.odracirnumira.npuzzle.NPuzzleApplication;
 import es.odracirnumira.npuzzle.R;
 import es.odracirnumira.npuzzle.contentproviders.NPuzzleContract;
+import es.odracirnumira.npuzzle.model.MoveCodec;
 import es.odracirnumira.npuzzle.model.NPuzzle;
 import es.odracirnumira.npuzzle.model.NPuzzleGame;
+import es.odracirnumira.npuzzle.model.PackedNPuzzleState;
 
 /**
  * Task that updates in the content provider a game. The input {@link NPuzzleGame} should have a
  * valid ID. If it has {@link NPuzzleGame#gameID} -1, this task will try to save the game
  * instead. If there is any error updating the game, a toast message is shown.
  * <p>
+ * Only the moves made since the game was last saved ({@link NPuzzleGame#savedMoves}) are written,
+ * and they are appended to the moves already stored. If a previous update failed, all the moves
+ * are written again instead.
+ * <p>
+ * The data to write is taken from the game when the task is created, so the task must be created
+ * on the thread that moves the tiles of the game. The game can then keep changing while the task
+ * waits for its turn to run.
+ * <p>
  * If the game had an ID and it could be updated, the result of this task is a Boolean with
  * value true. If the game had an ID and it could not be updated, the result is a Boolean with
  * value false. If the game did not have an ID, the result is null.
@@ -22,31 +40,111 @@ import es.odracirnumira.npuzzle.model.NPuzzleGame;
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class UpdateGameTask extends AsyncTask<NPuzzleGame, Void, Object> {
-	private NPuzzleGame game;
-
-	protected Object doInBackground(NPuzzleGame... params) {
-		this.game = params[0];
-
-		if (game.gameID != -1) {
-			// Update
-			ContentValues values = new ContentValues();
-			values.put(NPuzzleContract.Games.INITIAL_STATE, game.initialState);
-			values.put(NPuzzleContract.Games.ELAPSED_TIME, game.elapsedTime);
-			values.put(NPuzzleContract.Games.MOVES,
-					NPuzzle.sequenceOfIntegersToString(game.moves));
-			values.put(NPuzzleContract.Games.START_TIME, game.startTime);
-			values.put(NPuzzleContract.Games.IMAGE_PATH, game.puzzleImagePath);
-			values.put(NPuzzleContract.Games.LAST_PLAYED_TIME, game.lastPlayedTime);
-			values.put(NPuzzleContract.Games.IMAGE_ROTATION, game.imageRotation);
-
-			return NPuzzleApplication.getApplication().getContentResolver().update(
-					ContentUris.withAppendedId(NPuzzleContract.Games.CONTENT_URI, game.gameID),
-					values, null, null) > 0;
+public class UpdateGameTask extends AsyncTask<Void, Void, Object> {
+	/**
+	 * IDs of the games whose last update failed. Moves made after the failed update cannot be
+	 * appended to the stored ones until all the moves have been written again.
+	 */
+	private static final Set<Long> failedGames = Collections.synchronizedSet(new HashSet<Long>());
+
+	/**
+	 * The game.
+	 */
+	private final NPuzzleGame game;
+
+	/**
+	 * The values of the row of the game to update.
+	 */
+	private final ContentValues values;
+
+	/**
+	 * The moves to append, encoded by {@link MoveCodec#encodeTail(NPuzzle, java.util.List, int)},
+	 * or null if there are none or all the moves are in {@link #values}.
+	 */
+	private final byte[] newMoves;
+
+	/**
+	 * Constructor. It must be called on the thread that moves the tiles of the game.
+	 * 
+	 * @param game
+	 *            the game to update.
+	 */
+	public UpdateGameTask(NPuzzleGame game) {
+		this.game = game;
+
+		int numMoves = game.moves.size();
+
+		/*
+		 * The snapshot of the current state lets the game be loaded without replaying its moves.
+		 */
+		this.values = new ContentValues();
+		this.values.put(NPuzzleContract.Games.ELAPSED_TIME, game.elapsedTime);
+		this.values.put(NPuzzleContract.Games.IMAGE_PATH, game.puzzleImagePath);
+		this.values.put(NPuzzleContract.Games.LAST_PLAYED_TIME, game.lastPlayedTime);
+		this.values.put(NPuzzleContract.Games.IMAGE_ROTATION, game.imageRotation);
+		this.values.put(NPuzzleContract.Games.CURRENT_STATE,
+				PackedNPuzzleState.fromNPuzzle(game.nPuzzle).toByteArray());
+		this.values.put(NPuzzleContract.Games.CURRENT_STATE_NUM_MOVES, numMoves);
+
+		if (game.savedMoves < 0) {
+			this.values.put(NPuzzleContract.Games.MOVES, MoveCodec.encode(
+					NPuzzle.stringToSequenceOfIntegers(game.initialState), game.moves));
+			this.newMoves = null;
+		} else if (numMoves > game.savedMoves) {
+			/*
+			 * Only the moves made since the last save are written, so the cost does not depend on
+			 * the length of the game.
+			 */
+			this.newMoves = MoveCodec.encodeTail(game.nPuzzle, game.moves, game.savedMoves);
 		} else {
+			this.newMoves = null;
+		}
+
+		game.savedMoves = numMoves;
+	}
+
+	protected Object doInBackground(Void... params) {
+		if (this.game.gameID == -1) {
 			// Save. Signal save by returning null.
 			return null;
 		}
+
+		// Update
+		long gameID = this.game.gameID;
+
+		if (this.newMoves != null && failedGames.contains(gameID)) {
+			/*
+			 * The moves of the failed update are not stored, so these ones cannot follow them.
+			 */
+			return false;
+		}
+
+		ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+		Uri gameUri = ContentUris.withAppendedId(NPuzzleContract.Games.CONTENT_URI, gameID);
+
+		operations.add(ContentProviderOperation.newUpdate(gameUri).withValues(this.values)
+				.withExpectedCount(1).build());
+
+		if (this.newMoves != null) {
+			operations.add(ContentProviderOperation
+					.newInsert(NPuzzleContract.Games.getMovesUri(gameID))
+					.withValue(NPuzzleContract.Games.MOVES, this.newMoves).build());
+		}
+
+		try {
+			NPuzzleApplication.getApplication().getContentResolver()
+					.applyBatch(NPuzzleContract.AUTHORITY, operations);
+
+			if (this.values.containsKey(NPuzzleContract.Games.MOVES)) {
+				failedGames.remove(gameID);
+			}
+
+			return true;
+		} catch (Exception e) {
+			Log.e("NPuzzle", "Error updating game " + gameID, e);
+			failedGames.add(gameID);
+			return false;
+		}
 	}
 
 	protected void onPostExecute(Object result) {
@@ -54,11 +152,15 @@ public class UpdateGameTask extends AsyncTask<NPuzzleGame, Void, Object> {
 			boolean updated = (Boolean) result;
 
 			if (!updated) {
+				/*
+				 * Write all the moves the next time.
+				 */
+				this.game.savedMoves = -1;
 				Toast.makeText(NPuzzleApplication.getApplication(),
 						R.string.could_not_update_game, Toast.LENGTH_SHORT).show();
 			}
 		} else {
-			new SaveGameTask().executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, game);
+			new SaveGameTask(this.game).executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
 		}
 	}
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Random;
 
 import es.odracirnumira.npuzzle.NPuzzleApplication;
+import es.odracirnumira.npuzzle.util.cache.BitmapPool;
 import android.content.ContentResolver;
 import android.database.Cursor;
 import android.database.MergeCursor;
@@ -18,6 +19,7 @@ import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.BitmapFactory.Options;
 import android.graphics.Rect;
@@ -43,6 +45,12 @@ public class ImageUtilities {
 	 */
 	private static final Random random = new Random();
 
+	/**
+	 * Number of bytes of each pixel of a decoded image. Images are decoded as
+	 * {@link Config#ARGB_8888} by default.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
 	/**
 	 * Checks if <code>extension</code> is a supported image extension. It must be a lowercase
 	 * extension without the dot. Otherwise false will be returned.
@@ -62,9 +70,9 @@ public class ImageUtilities {
 	}
 
 	/**
-	 * Tries to decode a Bitmap from a file path. If possible, the bitmap is decode at maximum
-	 * quality. However, if an out if memory error is throw in the process, the bitmap is resampled
-	 * so it is not as big in memory.
+	 * Tries to decode a Bitmap from a file path. If possible, the bitmap is decoded at maximum
+	 * quality. However, if there is not enough memory for it, the bitmap is resampled so it is not
+	 * as big in memory.
 	 * <p>
 	 * If even after resampling no bitmap is obtained, null is returned.
 	 * 
@@ -74,39 +82,7 @@ public class ImageUtilities {
 	 *         not exist or because there was not enough memory to allocate the bitmap.
 	 */
 	public static Bitmap secureDecode(String path) {
-		int currentSample = 1;
-
-		Options options = new Options();
-		options.inSampleSize = 1;
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeFile(path, options);
-		int originalWidth = options.outWidth;
-		int originalHeight = options.outHeight;
-
-		if (originalWidth == -1 || originalHeight == -1) {
-			return null;
-		}
-
-		while (currentSample <= originalWidth && currentSample <= originalHeight) {
-			options.inSampleSize = currentSample;
-			options.inJustDecodeBounds = true;
-
-			BitmapFactory.decodeFile(path, options);
-
-			if (options.outHeight > 0 && options.outWidth > 0) {
-				options.inJustDecodeBounds = false;
-
-				try {
-					return BitmapFactory.decodeFile(path, options);
-				} catch (OutOfMemoryError e) {
-					currentSample++;
-				}
-			} else {
-				return null;
-			}
-		}
-
-		return null;
+		return decodeFile(path, Integer.MAX_VALUE, Integer.MAX_VALUE);
 	}
 
 	/**
@@ -252,9 +228,9 @@ public class ImageUtilities {
 	}
 
 	/**
-	 * Tries to decode a Bitmap from a file path. If possible, the bitmap is decode at maximum size,
-	 * determined by <code>maxWidth</code> and <code>maxHeight</code>. However, if an out if memory
-	 * error is throw in the process, the bitmap is resampled so it is not as big in memory.
+	 * Tries to decode a Bitmap from a file path. If possible, the bitmap is decoded at maximum size,
+	 * determined by <code>maxWidth</code> and <code>maxHeight</code>. However, if there is not
+	 * enough memory for it, the bitmap is resampled so it is not as big in memory.
 	 * <p>
 	 * If even after resampling no bitmap is obtained, null is returned.
 	 * 
@@ -268,51 +244,7 @@ public class ImageUtilities {
 	 *         not exist or because there was not enough memory to allocate the bitmap.
 	 */
 	public static Bitmap secureDecode(String path, int maxWidth, int maxHeight) {
-		try {
-			/*
-			 * Find out the initial sample size. We know the size of the image and the maximum size
-			 * allowed, so we can figure out the initial sample size.
-			 */
-			Options options = new Options();
-			options.inJustDecodeBounds = true;
-			BitmapFactory.decodeFile(path, options);
-			int originalWidth = options.outWidth;
-			int originalHeight = options.outHeight;
-
-			if (originalWidth == -1 || originalHeight == -1) {
-				return null;
-			}
-
-			int currentSample = (int) Math.max(originalWidth / ((float) maxWidth), originalHeight
-					/ ((float) maxHeight));
-
-			while (currentSample <= originalWidth && currentSample <= originalHeight) {
-				options.inJustDecodeBounds = true;
-				options.inSampleSize = currentSample;
-
-				BitmapFactory.decodeFile(path, options);
-
-				if (options.outHeight <= 0 && options.outWidth <= 0) {
-					return null;
-				}
-
-				options.inJustDecodeBounds = false;
-
-				if (options.outHeight <= maxHeight && options.outWidth <= maxWidth) {
-					try {
-						return BitmapFactory.decodeFile(path, options);
-					} catch (OutOfMemoryError e) {
-
-					}
-				}
-
-				currentSample++;
-			}
-
-			return null;
-		} catch (OutOfMemoryError e) {
-			return null;
-		}
+		return decodeFile(path, maxWidth, maxHeight);
 	}
 
 	/**
@@ -438,8 +370,16 @@ public class ImageUtilities {
 
 		while (currentResultHeight > 0 && currentResultWidth > 0) {
 			try {
-				Bitmap result = Bitmap.createBitmap(currentResultWidth, currentResultHeight,
-						Config.ARGB_8888);
+				Bitmap result = NPuzzleApplication.getApplication().getBitmapPool()
+						.get(currentResultWidth, currentResultHeight, Config.ARGB_8888);
+
+				if (result != null) {
+					result.eraseColor(Color.TRANSPARENT);
+				} else {
+					result = Bitmap.createBitmap(currentResultWidth, currentResultHeight,
+							Config.ARGB_8888);
+				}
+
 				Canvas canvas = new Canvas(result);
 				canvas.drawBitmap(image, null,
 						new Rect(0, 0, result.getWidth() - 1, result.getHeight() - 1), null);
@@ -652,4 +592,138 @@ public class ImageUtilities {
 
 	private ImageUtilities() {
 	}
+
+	/**
+	 * Decodes a file so that the result is within <code>maxWidth</code> and <code>maxHeight</code>
+	 * and fits in the available memory. The size of the image is read once, the sample size is
+	 * computed from it (see {@link #computeSampleSize(int, int, int, int)}), and then the image is
+	 * decoded. Only if the decoding runs out of memory anyway is the sample size doubled and the
+	 * image decoded again.
+	 * 
+	 * @return the decoded Bitmap, or null if it could not be decoded.
+	 */
+	private static Bitmap decodeFile(String path, int maxWidth, int maxHeight) {
+		Options options = new Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, options);
+		int originalWidth = options.outWidth;
+		int originalHeight = options.outHeight;
+
+		if (originalWidth <= 0 || originalHeight <= 0) {
+			return null;
+		}
+
+		options.inJustDecodeBounds = false;
+		options.inMutable = true;
+		options.inSampleSize = computeSampleSize(originalWidth, originalHeight, maxWidth,
+				maxHeight);
+
+		while (options.inSampleSize <= originalWidth && options.inSampleSize <= originalHeight) {
+			try {
+				return decodeFileFromPool(path, options);
+			} catch (OutOfMemoryError e) {
+				options.inSampleSize *= 2;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the sample size to decode an image so that the result is within
+	 * <code>maxWidth</code> and <code>maxHeight</code>, and its pixels fit in the memory that is
+	 * still available in the heap. The sample size is a power of two, since decoders round other
+	 * values down to a power of two anyway.
+	 * 
+	 * @param width
+	 *            the width of the image.
+	 * @param height
+	 *            the height of the image.
+	 * @param maxWidth
+	 *            the maximum width of the decoded image.
+	 * @param maxHeight
+	 *            the maximum height of the decoded image.
+	 * @return the sample size.
+	 */
+	private static int computeSampleSize(int width, int height, int maxWidth, int maxHeight) {
+		int sampleSize = 1;
+
+		while ((divideRoundingUp(width, sampleSize) > maxWidth || divideRoundingUp(height,
+				sampleSize) > maxHeight) && (sampleSize < width || sampleSize < height)) {
+			sampleSize *= 2;
+		}
+
+		/*
+		 * Bitmaps are allocated in the heap, so make sure the decoded image fits in the part of the
+		 * heap that is not used yet.
+		 */
+		Runtime runtime = Runtime.getRuntime();
+		long availableMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+
+		while ((long) divideRoundingUp(width, sampleSize) * divideRoundingUp(height, sampleSize)
+				* BYTES_PER_PIXEL > availableMemory && sampleSize < width && sampleSize < height) {
+			sampleSize *= 2;
+		}
+
+		return sampleSize;
+	}
+
+	/**
+	 * Returns <code>a/b</code> rounded up.
+	 */
+	private static int divideRoundingUp(int a, int b) {
+		return (a + b - 1) / b;
+	}
+
+	/**
+	 * Decodes a file with {@link BitmapFactory#decodeFile(String, Options)}, reusing a bitmap of
+	 * the application's {@link BitmapPool} if possible (see
+	 * {@link NPuzzleApplication#getBitmapPool()}).
+	 * <p>
+	 * Bitmaps can only be reused if they have exactly the same size as the decoded image and
+	 * <code>options.inSampleSize</code> is 1, so <code>options</code> must contain the size of the
+	 * image for the sample size, as returned by decoding with
+	 * <code>options.inJustDecodeBounds</code> set to true. If the decoder rejects the reused bitmap,
+	 * the bitmap is given back to the pool and the image is decoded into a new one.
+	 * 
+	 * @param path
+	 *            the path of the image to decode.
+	 * @param options
+	 *            the decoding options. <code>options.inJustDecodeBounds</code> must be false.
+	 * @return the decoded bitmap, or null if it could not be decoded.
+	 */
+	private static Bitmap decodeFileFromPool(String path, Options options) {
+		options.inBitmap = null;
+
+		if (options.inSampleSize <= 1 && options.outWidth > 0 && options.outHeight > 0) {
+			BitmapPool pool = NPuzzleApplication.getApplication().getBitmapPool();
+			options.inBitmap = pool.get(options.outWidth, options.outHeight, Config.ARGB_8888);
+
+			if (options.inBitmap != null) {
+				Bitmap result = null;
+
+				try {
+					result = BitmapFactory.decodeFile(path, options);
+				} catch (IllegalArgumentException e) {
+					/*
+					 * Some versions of the decoder throw instead of returning null.
+					 */
+				}
+
+				if (result != null) {
+					return result;
+				}
+
+				/*
+				 * The image cannot be decoded into the bitmap, for instance because it is not a
+				 * JPEG or PNG image. The decoder reports it by returning null, so give the bitmap
+				 * back and decode into a new one.
+				 */
+				pool.put(options.inBitmap);
+				options.inBitmap = null;
+			}
+		}
+
+		return BitmapFactory.decodeFile(path, options);
+	}
 }
@@ -13,6 +13,62 @@ package es.odracirnumira.npuzzle.util.cache;
  *            the object type.
  */
 public abstract class BaseCache<K, V> implements ICache<K, V> {
+	/**
+	 * The statistics, or null if they are disabled. It is not volatile, so that checking it costs
+	 * nothing when statistics are disabled.
+	 */
+	private CacheStats stats;
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#setStatsEnabled(boolean)
+	 */
+	public void setStatsEnabled(boolean enabled) {
+		this.stats = enabled ? new CacheStats() : null;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getStats()
+	 */
+	public CacheStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Records a hit or a miss of {@link #get(Object)} if statistics are enabled. Subclasses must
+	 * call it every time {@link #get(Object)} is called.
+	 * 
+	 * @param hit
+	 *            true if the object was found.
+	 */
+	protected final void recordGet(boolean hit) {
+		CacheStats stats = this.stats;
+
+		if (stats != null) {
+			if (hit) {
+				stats.recordHit();
+			} else {
+				stats.recordMiss();
+			}
+		}
+	}
+
+	/**
+	 * Records the removal of an object if statistics are enabled, and calls
+	 * {@link #entryRemoved(boolean, Object, Object)}. Subclasses must call it instead of
+	 * {@link #entryRemoved(boolean, Object, Object)} every time an object is removed.
+	 */
+	protected final void notifyEntryRemoved(boolean evicted, K key, V value) {
+		CacheStats stats = this.stats;
+
+		if (stats != null) {
+			stats.recordRemoval(evicted);
+		}
+
+		this.entryRemoved(evicted, key, value);
+	}
+
 	/**
 	 * Subclasses should implement this method if they want to handle releasing special resources
 	 * that should be released when objects are removed from the cache. The default implementation
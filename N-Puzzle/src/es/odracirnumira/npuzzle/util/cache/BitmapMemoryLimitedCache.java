@@ -4,11 +4,22 @@ import android.graphics.Bitmap;
 
 /**
  * {@link MemoryLimitedCache} specialized in storing {@link Bitmap} objects.
+ * <p>
+ * If a {@link BitmapPool} is given, bitmaps evicted by the cache are put into it so that their
+ * memory can be reused. Bitmaps removed explicitly are not, since the caller may still be using
+ * them. A pool should only be given if the bitmaps are only used while they are in the cache, and
+ * if the removal order is {@link MemoryLimitedCache.RemovalOrder#LRU}, so that evicted bitmaps are
+ * really the least recently used ones.
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
 public class BitmapMemoryLimitedCache<K> extends MemoryLimitedCache<K, Bitmap> {
+	/**
+	 * The pool where evicted bitmaps are put, or null.
+	 */
+	private BitmapPool pool;
+
 	/**
 	 * Constructor. Removal order is {@link MemoryLimitedCache.RemovalOrder#FIFO}.
 	 * 
@@ -19,7 +30,40 @@ public class BitmapMemoryLimitedCache<K> extends MemoryLimitedCache<K, Bitmap> {
 		super(maxSize);
 	}
 
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize
+	 *            the size limit of the cache, in bytes.
+	 * @param order
+	 *            the order in which items will be removed from the cache.
+	 */
+	public BitmapMemoryLimitedCache(long maxSize, RemovalOrder order) {
+		this(maxSize, order, null);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize
+	 *            the size limit of the cache, in bytes.
+	 * @param order
+	 *            the order in which items will be removed from the cache.
+	 * @param pool
+	 *            the pool where evicted bitmaps are put. May be null.
+	 */
+	public BitmapMemoryLimitedCache(long maxSize, RemovalOrder order, BitmapPool pool) {
+		super(maxSize, order);
+		this.pool = pool;
+	}
+
 	public long getSize(Bitmap value) {
 		return value.getByteCount();
 	}
+
+	protected void entryRemoved(boolean evicted, K key, Bitmap value) {
+		if (evicted && this.pool != null) {
+			this.pool.put(value);
+		}
+	}
 }
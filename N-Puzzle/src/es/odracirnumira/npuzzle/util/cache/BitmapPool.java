@@ -0,0 +1,211 @@
+package es.odracirnumira.npuzzle.util.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+/**
+ * Pool of {@link Bitmap} objects that are no longer used, so that their memory can be reused for
+ * new bitmaps of the same size instead of being allocated again. This reduces the garbage that is
+ * generated when many images of the same size, such as thumbnails, are decoded one after another.
+ * <p>
+ * Bitmaps are grouped by width, height and configuration. Only mutable bitmaps can be reused, so
+ * that they can be passed to {@link android.graphics.BitmapFactory.Options#inBitmap} or drawn on.
+ * The total size of the bitmaps in the pool is limited. When it is exceeded, the bitmaps that have
+ * been in the pool for the longest time are recycled.
+ * <p>
+ * A bitmap must not be put into the pool while it is still being used, since it may be returned by
+ * {@link #get(int, int, Config)} and overwritten at any moment.
+ * <p>
+ * The pool can be used by several threads at the same time. Its statistics (see
+ * {@link #getStats()}) are always recorded: a hit is a call to {@link #get(int, int, Config)} that
+ * returns a bitmap, and an eviction is a bitmap recycled because the pool was full.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class BitmapPool {
+	/**
+	 * The maximum size (in bytes) of the bitmaps in the pool.
+	 */
+	private long maxSize;
+
+	/**
+	 * The current size (in bytes) of the bitmaps in the pool.
+	 */
+	private long currentSize;
+
+	/**
+	 * The bitmaps, grouped by their size and configuration. Keys are computed by
+	 * {@link #getBucketKey(int, int, Config)}.
+	 */
+	private HashMap<Long, ArrayList<Bitmap>> buckets;
+
+	/**
+	 * All the bitmaps, in the order they were put into the pool.
+	 */
+	private LinkedList<Bitmap> bitmaps;
+
+	/**
+	 * The statistics of the pool.
+	 */
+	private CacheStats stats;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize
+	 *            the maximum size of the bitmaps in the pool, in bytes. Must be a positive value.
+	 */
+	public BitmapPool(long maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("The pool size must be positive");
+		}
+
+		this.maxSize = maxSize;
+		this.buckets = new HashMap<Long, ArrayList<Bitmap>>();
+		this.bitmaps = new LinkedList<Bitmap>();
+		this.stats = new CacheStats();
+	}
+
+	/**
+	 * Puts a bitmap that is no longer used into the pool. If the bitmap cannot be reused, it is
+	 * recycled.
+	 * 
+	 * @param bitmap
+	 *            the bitmap.
+	 * @return true if the bitmap was put into the pool, and false if it was recycled.
+	 */
+	public synchronized boolean put(Bitmap bitmap) {
+		if (bitmap == null) {
+			throw new IllegalArgumentException("null bitmap");
+		}
+
+		if (bitmap.isRecycled()) {
+			return false;
+		}
+
+		long size = bitmap.getByteCount();
+
+		if (!bitmap.isMutable() || bitmap.getConfig() == null || size > this.maxSize) {
+			bitmap.recycle();
+			return false;
+		}
+
+		Long key = getBucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		ArrayList<Bitmap> bucket = this.buckets.get(key);
+
+		if (bucket == null) {
+			bucket = new ArrayList<Bitmap>();
+			this.buckets.put(key, bucket);
+		} else if (bucket.contains(bitmap)) {
+			return true;
+		}
+
+		bucket.add(bitmap);
+		this.bitmaps.add(bitmap);
+		this.currentSize += size;
+
+		/*
+		 * If the limit has been exceeded, recycle the oldest bitmaps.
+		 */
+		while (this.currentSize > this.maxSize) {
+			Bitmap oldest = this.bitmaps.removeFirst();
+			this.removeFromBucket(oldest);
+			this.currentSize -= oldest.getByteCount();
+			this.stats.recordRemoval(true);
+			oldest.recycle();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Takes a bitmap out of the pool. Its content is undefined, so it must be completely overwritten
+	 * or erased before being used.
+	 * 
+	 * @param width
+	 *            the width of the bitmap.
+	 * @param height
+	 *            the height of the bitmap.
+	 * @param config
+	 *            the configuration of the bitmap.
+	 * @return a mutable bitmap with the given width, height and configuration, or null if there is
+	 *         none in the pool.
+	 */
+	public synchronized Bitmap get(int width, int height, Config config) {
+		ArrayList<Bitmap> bucket = this.buckets.get(getBucketKey(width, height, config));
+
+		if (bucket == null || bucket.isEmpty()) {
+			this.stats.recordMiss();
+			return null;
+		}
+
+		/*
+		 * Take the most recently added bitmap, which is the cheapest one to remove from the bucket.
+		 */
+		Bitmap result = bucket.remove(bucket.size() - 1);
+		this.bitmaps.remove(result);
+		this.currentSize -= result.getByteCount();
+		this.stats.recordHit();
+		return result;
+	}
+
+	/**
+	 * Recycles all the bitmaps in the pool.
+	 */
+	public synchronized void clear() {
+		for (Bitmap bitmap : this.bitmaps) {
+			this.stats.recordRemoval(false);
+			bitmap.recycle();
+		}
+
+		this.bitmaps.clear();
+		this.buckets.clear();
+		this.currentSize = 0;
+	}
+
+	/**
+	 * Returns the current size of the bitmaps in the pool, in bytes.
+	 */
+	public synchronized long getCurrentSize() {
+		return this.currentSize;
+	}
+
+	/**
+	 * Returns the maximum size of the bitmaps in the pool, in bytes.
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Returns the statistics of the pool.
+	 */
+	public CacheStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Removes <code>bitmap</code> from its bucket.
+	 */
+	private void removeFromBucket(Bitmap bitmap) {
+		Long key = getBucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		ArrayList<Bitmap> bucket = this.buckets.get(key);
+		bucket.remove(bitmap);
+
+		if (bucket.isEmpty()) {
+			this.buckets.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the key of the bucket of the bitmaps with the given width, height and configuration.
+	 */
+	private static Long getBucketKey(int width, int height, Config config) {
+		return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+	}
+}
@@ -0,0 +1,126 @@
+package es.odracirnumira.npuzzle.util.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of an {@link ICache}. Statistics are disabled by default, and are only recorded after
+ * calling {@link ICache#setStatsEnabled(boolean)}. The counters can be updated from several threads
+ * at the same time.
+ * <p>
+ * Hits, misses and removals are recorded by the cache itself. Loads, however, are done by the users
+ * of the cache, which should call {@link #recordLoad(long)} every time they load an object after a
+ * miss, so that the average load time can be computed.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class CacheStats {
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong removalCount = new AtomicLong();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong totalLoadTime = new AtomicLong();
+
+	/**
+	 * Records a call to {@link ICache#get(Object)} that found the object.
+	 */
+	public void recordHit() {
+		this.hitCount.incrementAndGet();
+	}
+
+	/**
+	 * Records a call to {@link ICache#get(Object)} that did not find the object.
+	 */
+	public void recordMiss() {
+		this.missCount.incrementAndGet();
+	}
+
+	/**
+	 * Records the removal of an object.
+	 * 
+	 * @param evicted
+	 *            true if the cache decided to remove the object, and false if it was removed by
+	 *            {@link ICache#remove(Object)}, {@link ICache#put(Object, Object)} or
+	 *            {@link ICache#clear()}. See {@link BaseCache#entryRemoved(boolean, Object, Object)}.
+	 */
+	public void recordRemoval(boolean evicted) {
+		if (evicted) {
+			this.evictionCount.incrementAndGet();
+		} else {
+			this.removalCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the time it took to load an object that was not in the cache.
+	 * 
+	 * @param nanos
+	 *            the load time, in nanoseconds.
+	 */
+	public void recordLoad(long nanos) {
+		this.loadCount.incrementAndGet();
+		this.totalLoadTime.addAndGet(nanos);
+	}
+
+	/**
+	 * Returns the number of calls to {@link ICache#get(Object)} that found the object.
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Returns the number of calls to {@link ICache#get(Object)} that did not find the object.
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Returns the ratio of hits to calls to {@link ICache#get(Object)}, or 0 if there have been no
+	 * calls.
+	 */
+	public double getHitRate() {
+		long hits = this.hitCount.get();
+		long total = hits + this.missCount.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns the number of objects that the cache decided to remove.
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.get();
+	}
+
+	/**
+	 * Returns the number of objects removed by {@link ICache#remove(Object)},
+	 * {@link ICache#put(Object, Object)} or {@link ICache#clear()}.
+	 */
+	public long getRemovalCount() {
+		return this.removalCount.get();
+	}
+
+	/**
+	 * Returns the number of loads recorded by {@link #recordLoad(long)}.
+	 */
+	public long getLoadCount() {
+		return this.loadCount.get();
+	}
+
+	/**
+	 * Returns the average load time, in nanoseconds, or 0 if no load has been recorded.
+	 */
+	public long getAverageLoadTime() {
+		long loads = this.loadCount.get();
+		return loads == 0 ? 0 : this.totalLoadTime.get() / loads;
+	}
+
+	public String toString() {
+		return "hits=" + this.getHitCount() + " misses=" + this.getMissCount() + " hitRate="
+				+ Math.round(this.getHitRate() * 100) + "% evictions=" + this.getEvictionCount()
+				+ " removals=" + this.getRemovalCount() + " loads=" + this.getLoadCount()
+				+ " averageLoadTime=" + this.getAverageLoadTime() / 1000000 + "ms";
+	}
+}
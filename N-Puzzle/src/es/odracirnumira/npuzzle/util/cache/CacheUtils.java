@@ -59,6 +59,30 @@ public class CacheUtils {
 				this.originalCache.clear();
 			}
 		}
+
+		public long getCurrentSize() {
+			synchronized (lock) {
+				return this.originalCache.getCurrentSize();
+			}
+		}
+
+		public long getMaxSize() {
+			synchronized (lock) {
+				return this.originalCache.getMaxSize();
+			}
+		}
+
+		public void setStatsEnabled(boolean enabled) {
+			synchronized (lock) {
+				this.originalCache.setStatsEnabled(enabled);
+			}
+		}
+
+		public CacheStats getStats() {
+			synchronized (lock) {
+				return this.originalCache.getStats();
+			}
+		}
 	}
 
 	private CacheUtils() {
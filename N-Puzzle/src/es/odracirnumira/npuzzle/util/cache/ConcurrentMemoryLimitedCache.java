@@ -0,0 +1,325 @@
+package es.odracirnumira.npuzzle.util.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.odracirnumira.npuzzle.util.cache.LinkedEntryMap.Entry;
+
+/**
+ * A {@link ICache} that has a limited memory size, like {@link MemoryLimitedCache}, but that can be
+ * used by several threads at the same time without any external synchronization.
+ * <p>
+ * Instead of a single lock, the cache is split into segments, each one with its own lock, and keys
+ * are spread among them by hash code. Threads that access different segments do not block each
+ * other, so, for instance, the UI thread can read objects while a background thread is putting
+ * new ones.
+ * <p>
+ * The memory limit is global. Each segment keeps its objects in least recently used order. When a
+ * put exceeds the limit, the least recently used object of the same segment is evicted, and, if
+ * that is not enough, objects are evicted from the other segments in turns. Therefore, eviction is
+ * only an approximation of a global LRU order. The limit may also be exceeded for a short while when
+ * several threads put objects at the same time.
+ * <p>
+ * {@link #entryRemoved(boolean, Object, Object)} is called without holding any lock, so it may be
+ * called from any thread that uses the cache.
+ * <p>
+ * This is an abstract class. Subclasses must define the way size of objects is computed by
+ * implementing the {@link #getSize(Object)} method.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ * @param <K>
+ *            the key type.
+ * @param <V>
+ *            the object type.
+ */
+public abstract class ConcurrentMemoryLimitedCache<K, V> extends BaseCache<K, V> {
+	/**
+	 * Default number of segments.
+	 */
+	public static final int DEFAULT_NUM_SEGMENTS = 16;
+
+	/**
+	 * The maximun size (in bytes) of the objects in the cache.
+	 */
+	private final long maxSize;
+
+	/**
+	 * The current size (in bytes) of all the objects in the cache.
+	 */
+	private final AtomicLong currentSize;
+
+	/**
+	 * The segments. Their number is a power of two.
+	 */
+	private final Segment<K, V>[] segments;
+
+	/**
+	 * Index of the next segment to evict an object from.
+	 */
+	private final AtomicInteger nextEvictedSegment;
+
+	/**
+	 * A segment of the cache. All the accesses to a segment must be synchronized on it.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static class Segment<K, V> {
+		/**
+		 * The objects, in least recently used order.
+		 */
+		final LinkedEntryMap<K, V> objects = new LinkedEntryMap<K, V>();
+	}
+
+	/**
+	 * Constructor. The cache has {@link #DEFAULT_NUM_SEGMENTS} segments.
+	 * 
+	 * @param maxSize
+	 *            the maximum size of the objects in the cache. Must be a positive value.
+	 */
+	public ConcurrentMemoryLimitedCache(long maxSize) {
+		this(maxSize, DEFAULT_NUM_SEGMENTS);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize
+	 *            the maximum size of the objects in the cache. Must be a positive value.
+	 * @param numSegments
+	 *            the number of segments. It is rounded up to a power of two. More segments mean
+	 *            less contention, but a less accurate eviction order.
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentMemoryLimitedCache(long maxSize, int numSegments) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("The cache size must be positive");
+		}
+
+		if (numSegments <= 0) {
+			throw new IllegalArgumentException("The number of segments must be positive");
+		}
+
+		int size = 1;
+
+		while (size < numSegments) {
+			size <<= 1;
+		}
+
+		this.maxSize = maxSize;
+		this.currentSize = new AtomicLong();
+		this.nextEvictedSegment = new AtomicInteger();
+		this.segments = (Segment<K, V>[]) new Segment<?, ?>[size];
+
+		for (int i = 0; i < size; i++) {
+			this.segments[i] = new Segment<K, V>();
+		}
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#put(java.lang.Object, java.lang.Object)
+	 */
+	public boolean put(K key, V value) {
+		if (key == null || value == null) {
+			throw new IllegalArgumentException("null key or value");
+		}
+
+		Segment<K, V> segment = this.getSegment(key);
+		long size = this.getSize(value);
+		V oldValue = null;
+		Entry<K, V> evicted = null;
+		long currentSize;
+
+		synchronized (segment) {
+			Entry<K, V> entry = segment.objects.get(key);
+
+			if (entry == null) {
+				entry = segment.objects.add(key, value);
+			} else {
+				oldValue = entry.value;
+				entry.value = value;
+				segment.objects.moveToEnd(entry);
+				size -= this.getSize(oldValue);
+			}
+
+			currentSize = this.currentSize.addAndGet(size);
+
+			/*
+			 * Most of the times, evicting the least recently used object of this segment is enough
+			 * to get back within the limit, and it can be done without taking another lock.
+			 */
+			if (currentSize > this.maxSize) {
+				Entry<K, V> first = segment.objects.getFirst();
+
+				if (first != entry) {
+					segment.objects.remove(first);
+					evicted = first;
+					currentSize = this.currentSize.addAndGet(-this.getSize(first.value));
+				}
+			}
+		}
+
+		if (oldValue != null) {
+			this.notifyEntryRemoved(false, key, oldValue);
+		}
+
+		if (evicted != null) {
+			this.notifyEntryRemoved(true, evicted.key, evicted.value);
+		}
+
+		/*
+		 * If the limit is still exceeded, remove objects from the other segments.
+		 */
+		if (currentSize > this.maxSize) {
+			this.evict();
+		}
+
+		return oldValue != null;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#get(java.lang.Object)
+	 */
+	public V get(K key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+
+		Segment<K, V> segment = this.getSegment(key);
+
+		synchronized (segment) {
+			Entry<K, V> entry = segment.objects.get(key);
+
+			if (entry == null) {
+				this.recordGet(false);
+				return null;
+			}
+
+			segment.objects.moveToEnd(entry);
+			this.recordGet(true);
+			return entry.value;
+		}
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#remove(java.lang.Object)
+	 */
+	public boolean remove(K key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+
+		Segment<K, V> segment = this.getSegment(key);
+		Entry<K, V> entry;
+
+		synchronized (segment) {
+			entry = segment.objects.remove(key);
+		}
+
+		if (entry == null) {
+			return false;
+		}
+
+		this.currentSize.addAndGet(-this.getSize(entry.value));
+		this.notifyEntryRemoved(false, key, entry.value);
+		return true;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#clear()
+	 */
+	public void clear() {
+		for (Segment<K, V> segment : this.segments) {
+			while (true) {
+				Entry<K, V> entry;
+
+				synchronized (segment) {
+					entry = segment.objects.getFirst();
+
+					if (entry == null) {
+						break;
+					}
+
+					segment.objects.remove(entry);
+				}
+
+				this.currentSize.addAndGet(-this.getSize(entry.value));
+				this.notifyEntryRemoved(false, entry.key, entry.value);
+			}
+		}
+	}
+
+	/**
+	 * Given an object of type <code>V</code>, this method returns an estimation of the number of
+	 * bytes it occupies. It must always return the same value for the same object.
+	 * 
+	 * @param value
+	 *            the object whose size is to be computed.
+	 * @return an estimation of the number of bytes of the object.
+	 */
+	public abstract long getSize(V value);
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getCurrentSize()
+	 */
+	public long getCurrentSize() {
+		return this.currentSize.get();
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getMaxSize()
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Returns the segment where <code>key</code> is stored.
+	 */
+	private Segment<K, V> getSegment(K key) {
+		/*
+		 * Spread the high bits of the hash code, since only the low ones select the segment.
+		 */
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		hash ^= (hash >>> 8);
+		return this.segments[hash & (this.segments.length - 1)];
+	}
+
+	/**
+	 * Removes the least recently used objects of the segments, taking turns, until the size of the
+	 * cache is within the limit or the cache is empty.
+	 */
+	private void evict() {
+		int emptySegments = 0;
+
+		while (this.currentSize.get() > this.maxSize && emptySegments < this.segments.length) {
+			Segment<K, V> segment = this.segments[this.nextEvictedSegment.getAndIncrement()
+					& (this.segments.length - 1)];
+			Entry<K, V> entry;
+
+			synchronized (segment) {
+				entry = segment.objects.getFirst();
+
+				if (entry != null) {
+					segment.objects.remove(entry);
+				}
+			}
+
+			if (entry == null) {
+				emptySegments++;
+			} else {
+				emptySegments = 0;
+				this.currentSize.addAndGet(-this.getSize(entry.value));
+				this.notifyEntryRemoved(true, entry.key, entry.value);
+			}
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package es.odracirnumira.npuzzle.util.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import es.odracirnumira.npuzzle.util.ImageUtilities;
+import es.odracirnumira.npuzzle.util.cache.LinkedEntryMap.Entry;
+
+/**
+ * {@link ICache} that stores {@link Bitmap} objects as files in a directory, so they survive the
+ * process. It is meant to be used as a second tier under a memory cache, for images that are
+ * expensive to compute, such as thumbnails scaled down from big images.
+ * <p>
+ * Each object is stored in a file whose name is its key, so keys may only contain letters, digits,
+ * '_' and '-'. Opaque bitmaps are stored as JPEG, and the rest as PNG.
+ * <p>
+ * The total size of the files is limited. When it is exceeded, the least recently used files are
+ * deleted. The last modification time of the files is used to remember the order of use between
+ * executions.
+ * <p>
+ * All the methods access the disk, so they should not be called from the UI thread. The cache can be
+ * used by several threads at the same time. Images are encoded and decoded outside the lock of the
+ * cache, so threads only wait for each other to update the list of files.
+ * {@link #entryRemoved(boolean, Object, Object)} is always called with a null value, since removed
+ * objects are not read from disk.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class DiskBitmapCache extends BaseCache<String, Bitmap> {
+	/**
+	 * Quality used to compress JPEG files.
+	 */
+	private static final int JPEG_QUALITY = 90;
+
+	/**
+	 * Suffix of the temporary files that are written before being renamed to their final name.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * The directory where the files are stored.
+	 */
+	private File directory;
+
+	/**
+	 * The maximum size (in bytes) of the files in the cache.
+	 */
+	private long maxSize;
+
+	/**
+	 * The current size (in bytes) of the files in the cache.
+	 */
+	private long currentSize;
+
+	/**
+	 * For each key, the size of its file. Keys are in least recently used order. Null until the
+	 * directory is read for the first time.
+	 */
+	private LinkedEntryMap<String, Long> files;
+
+	/**
+	 * Number used to name the next temporary file, so that concurrent writes of the same key do not
+	 * use the same file.
+	 */
+	private int nextTempFile;
+
+	/**
+	 * Constructor. The directory is not read until the cache is used for the first time.
+	 * 
+	 * @param directory
+	 *            the directory where the files are stored. It is created if it does not exist. It
+	 *            should not be used for anything else.
+	 * @param maxSize
+	 *            the maximum size of the files in the cache, in bytes. Must be a positive value.
+	 */
+	public DiskBitmapCache(File directory, long maxSize) {
+		if (directory == null) {
+			throw new IllegalArgumentException("null directory");
+		}
+
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("The cache size must be positive");
+		}
+
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#put(java.lang.Object, java.lang.Object)
+	 */
+	public boolean put(String key, Bitmap value) {
+		if (key == null || value == null) {
+			throw new IllegalArgumentException("null key or value");
+		}
+
+		checkKey(key);
+
+		/*
+		 * Write to a temporary file first, so that an interrupted write does not leave a corrupt
+		 * file behind. Since '.' cannot be part of a key, temporary files never clash with the
+		 * files of the cache.
+		 */
+		File file = new File(this.directory, key);
+		File tempFile;
+
+		synchronized (this) {
+			this.loadFiles();
+			tempFile = new File(this.directory, key + "." + this.nextTempFile++ + TEMP_SUFFIX);
+		}
+
+		OutputStream out = null;
+		boolean written = false;
+
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(tempFile));
+
+			if (value.hasAlpha()) {
+				written = value.compress(Bitmap.CompressFormat.PNG, 100, out);
+			} else {
+				written = value.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+			}
+		} catch (IOException e) {
+			Log.e("NPuzzle", "Error writing " + tempFile, e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					written = false;
+				}
+			}
+		}
+
+		synchronized (this) {
+			boolean result = this.removeFile(key, false);
+
+			if (!written || !tempFile.renameTo(file)) {
+				tempFile.delete();
+				return result;
+			}
+
+			this.files.add(key, file.length());
+			this.currentSize += file.length();
+
+			/*
+			 * Check if the size limit has been exceeded. If so, remove the least recently used
+			 * files until it is not exceeded anymore.
+			 */
+			while (this.currentSize > this.maxSize) {
+				this.removeFile(this.files.getFirst().key, true);
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#get(java.lang.Object)
+	 */
+	public Bitmap get(String key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+
+		checkKey(key);
+
+		Entry<String, Long> entry;
+
+		synchronized (this) {
+			this.loadFiles();
+			entry = this.files.get(key);
+		}
+
+		if (entry == null) {
+			this.recordGet(false);
+			return null;
+		}
+
+		File file = new File(this.directory, key);
+		Bitmap result = ImageUtilities.secureDecode(file.getPath());
+
+		/*
+		 * secureDecode() also returns null when there is not enough memory. The file is only
+		 * removed if it is really missing or corrupt, for instance because the system deleted it.
+		 */
+		boolean corrupt = result == null && !canBeDecoded(file);
+
+		synchronized (this) {
+			/*
+			 * The file may have been removed or replaced while it was being decoded.
+			 */
+			if (this.files.get(key) == entry) {
+				if (result != null) {
+					this.files.moveToEnd(entry);
+					file.setLastModified(System.currentTimeMillis());
+				} else if (corrupt) {
+					this.removeFile(key, true);
+				}
+			}
+		}
+
+		this.recordGet(result != null);
+		return result;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#remove(java.lang.Object)
+	 */
+	public synchronized boolean remove(String key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+
+		checkKey(key);
+		this.loadFiles();
+		return this.removeFile(key, false);
+	}
+
+	/**
+	 * Removes all the objects whose key starts with <code>prefix</code>. This is useful to
+	 * invalidate all the versions of an object when the version is part of the key.
+	 * 
+	 * @param prefix
+	 *            the prefix of the keys to remove.
+	 * @return the number of objects removed.
+	 */
+	public synchronized int removeAll(String prefix) {
+		if (prefix == null) {
+			throw new IllegalArgumentException("null prefix");
+		}
+
+		this.loadFiles();
+
+		int numRemoved = 0;
+		Entry<String, Long> entry = this.files.getFirst();
+
+		while (entry != null) {
+			Entry<String, Long> next = this.files.getNext(entry);
+
+			if (entry.key.startsWith(prefix)) {
+				this.removeFile(entry.key, false);
+				numRemoved++;
+			}
+
+			entry = next;
+		}
+
+		return numRemoved;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#clear()
+	 */
+	public synchronized void clear() {
+		this.loadFiles();
+
+		Entry<String, Long> entry;
+
+		while ((entry = this.files.getFirst()) != null) {
+			this.removeFile(entry.key, false);
+		}
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getCurrentSize()
+	 */
+	public synchronized long getCurrentSize() {
+		this.loadFiles();
+		return this.currentSize;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getMaxSize()
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Reads the files of the directory the first time it is called. Temporary files left by
+	 * interrupted writes are deleted, and files that do not fit in the cache are removed.
+	 */
+	private void loadFiles() {
+		if (this.files != null) {
+			return;
+		}
+
+		this.files = new LinkedEntryMap<String, Long>();
+		this.currentSize = 0;
+
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			Log.e("NPuzzle", "Cannot create " + this.directory);
+			return;
+		}
+
+		File[] directoryFiles = this.directory.listFiles();
+
+		if (directoryFiles == null) {
+			return;
+		}
+
+		/*
+		 * Add the files from the least to the most recently used.
+		 */
+		Arrays.sort(directoryFiles, new Comparator<File>() {
+			public int compare(File lhs, File rhs) {
+				long lhsTime = lhs.lastModified();
+				long rhsTime = rhs.lastModified();
+				return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+			}
+		});
+
+		for (File file : directoryFiles) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				file.delete();
+			} else if (file.isFile()) {
+				this.files.add(file.getName(), file.length());
+				this.currentSize += file.length();
+			}
+		}
+
+		while (this.currentSize > this.maxSize) {
+			this.removeFile(this.files.getFirst().key, true);
+		}
+	}
+
+	/**
+	 * Deletes the file of <code>key</code>, if any, and updates the size of the cache.
+	 * 
+	 * @param evicted
+	 *            passed to {@link #entryRemoved(boolean, Object, Object)}.
+	 * @return true if there was a file for <code>key</code>.
+	 */
+	private boolean removeFile(String key, boolean evicted) {
+		Entry<String, Long> entry = this.files.remove(key);
+
+		if (entry == null) {
+			return false;
+		}
+
+		new File(this.directory, key).delete();
+		this.currentSize -= entry.value;
+		this.notifyEntryRemoved(evicted, key, null);
+		return true;
+	}
+
+	/**
+	 * Returns true if <code>file</code> exists and its header can be read as an image.
+	 */
+	private static boolean canBeDecoded(File file) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(file.getPath(), options);
+		return options.outWidth > 0 && options.outHeight > 0;
+	}
+
+	/**
+	 * Checks that <code>key</code> can be used as a file name.
+	 */
+	private static void checkKey(String key) {
+		if (key.length() == 0) {
+			throw new IllegalArgumentException("Empty key");
+		}
+
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_'
+					|| c == '-')) {
+				throw new IllegalArgumentException("Invalid key: " + key);
+			}
+		}
+	}
+}
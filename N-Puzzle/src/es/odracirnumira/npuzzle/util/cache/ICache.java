@@ -53,4 +53,33 @@ public interface ICache<K, V> {
 	 * Clears all the objects from the cache.
 	 */
 	public void clear();
+
+	/**
+	 * Returns the current size of the objects in the cache, measured in the same units as
+	 * {@link #getMaxSize()}.
+	 */
+	public long getCurrentSize();
+
+	/**
+	 * Returns the size limit of the cache, or -1 if it has no limit. Its units depend on the cache,
+	 * for instance bytes for a {@link MemoryLimitedCache} or number of objects for a
+	 * {@link SizeLimitedCache}.
+	 */
+	public long getMaxSize();
+
+	/**
+	 * Enables or disables recording statistics. When enabled, statistics start from zero. When
+	 * disabled, which is the default, the cache does not record anything.
+	 * <p>
+	 * Caches that are shared between threads should enable statistics before being shared.
+	 * 
+	 * @param enabled
+	 *            whether statistics should be recorded.
+	 */
+	public void setStatsEnabled(boolean enabled);
+
+	/**
+	 * Returns the statistics of the cache, or null if they are not enabled.
+	 */
+	public CacheStats getStats();
 }
@@ -0,0 +1,210 @@
+package es.odracirnumira.npuzzle.util.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Map used by the caches to keep track of their entries. Besides looking entries up by key, entries
+ * are linked in a doubly linked list, and stored in an array, so that the oldest entry, the newest
+ * entry and a random entry can be found, and any entry removed or moved to the end of the list, in
+ * constant time.
+ * <p>
+ * New entries are added at the end of the list. The caches decide what the order of the list
+ * means: insertion order if entries are never moved, or recency of use if entries are moved to the
+ * end every time they are accessed.
+ *
+ * @author Ricardo Juan Palma Durán
+ *
+ * @param <K>
+ *            the key type.
+ * @param <V>
+ *            the value type.
+ */
+class LinkedEntryMap<K, V> {
+	/**
+	 * An entry of the map.
+	 *
+	 * @author Ricardo Juan Palma Durán
+	 *
+	 * @param <K>
+	 *            the key type.
+	 * @param <V>
+	 *            the value type.
+	 */
+	static class Entry<K, V> {
+		final K key;
+		V value;
+		Entry<K, V> previous;
+		Entry<K, V> next;
+
+		/**
+		 * Position of the entry in {@link LinkedEntryMap#entries}.
+		 */
+		int index;
+
+		Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The entries, by key.
+	 */
+	private HashMap<K, Entry<K, V>> map;
+
+	/**
+	 * The entries, in no particular order. Used to pick random entries.
+	 */
+	private ArrayList<Entry<K, V>> entries;
+
+	/**
+	 * Sentinel of the circular list of entries. Its next entry is the first one, and its previous
+	 * entry is the last one.
+	 */
+	private Entry<K, V> header;
+
+	public LinkedEntryMap() {
+		this.map = new HashMap<K, Entry<K, V>>();
+		this.entries = new ArrayList<Entry<K, V>>();
+		this.header = new Entry<K, V>(null, null);
+		this.header.previous = this.header;
+		this.header.next = this.header;
+	}
+
+	/**
+	 * Returns the entry of <code>key</code>, or null if there is none.
+	 */
+	public Entry<K, V> get(K key) {
+		return this.map.get(key);
+	}
+
+	/**
+	 * Adds an entry for <code>key</code> at the end of the list. There must be no entry for
+	 * <code>key</code> yet.
+	 *
+	 * @return the new entry.
+	 */
+	public Entry<K, V> add(K key, V value) {
+		Entry<K, V> entry = new Entry<K, V>(key, value);
+		this.map.put(key, entry);
+		entry.index = this.entries.size();
+		this.entries.add(entry);
+		this.link(entry);
+		return entry;
+	}
+
+	/**
+	 * Removes the entry of <code>key</code>.
+	 *
+	 * @return the removed entry, or null if there was none.
+	 */
+	public Entry<K, V> remove(K key) {
+		Entry<K, V> entry = this.map.remove(key);
+
+		if (entry != null) {
+			this.unlink(entry);
+			this.removeFromArray(entry);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Removes <code>entry</code>, which must be in the map.
+	 */
+	public void remove(Entry<K, V> entry) {
+		this.map.remove(entry.key);
+		this.unlink(entry);
+		this.removeFromArray(entry);
+	}
+
+	/**
+	 * Moves <code>entry</code> to the end of the list.
+	 */
+	public void moveToEnd(Entry<K, V> entry) {
+		if (this.header.previous != entry) {
+			this.unlink(entry);
+			this.link(entry);
+		}
+	}
+
+	/**
+	 * Returns the first entry of the list, or null if the map is empty.
+	 */
+	public Entry<K, V> getFirst() {
+		return this.header.next != this.header ? this.header.next : null;
+	}
+
+	/**
+	 * Returns the last entry of the list, or null if the map is empty.
+	 */
+	public Entry<K, V> getLast() {
+		return this.header.previous != this.header ? this.header.previous : null;
+	}
+
+	/**
+	 * Returns the entry that follows <code>entry</code> in the list, or null if it is the last one.
+	 */
+	public Entry<K, V> getNext(Entry<K, V> entry) {
+		return entry.next != this.header ? entry.next : null;
+	}
+
+	/**
+	 * Returns a random entry, or null if the map is empty.
+	 */
+	public Entry<K, V> getRandom(Random random) {
+		return this.entries.isEmpty() ? null : this.entries.get(random.nextInt(this.entries.size()));
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public void clear() {
+		this.map.clear();
+		this.entries.clear();
+		this.header.previous = this.header;
+		this.header.next = this.header;
+	}
+
+	/**
+	 * Links <code>entry</code> at the end of the list.
+	 */
+	private void link(Entry<K, V> entry) {
+		entry.previous = this.header.previous;
+		entry.next = this.header;
+		this.header.previous.next = entry;
+		this.header.previous = entry;
+	}
+
+	/**
+	 * Unlinks <code>entry</code> from the list.
+	 */
+	private void unlink(Entry<K, V> entry) {
+		entry.previous.next = entry.next;
+		entry.next.previous = entry.previous;
+		entry.previous = null;
+		entry.next = null;
+	}
+
+	/**
+	 * Removes <code>entry</code> from {@link #entries}, moving the last entry of the array to its
+	 * position.
+	 */
+	private void removeFromArray(Entry<K, V> entry) {
+		Entry<K, V> last = this.entries.remove(this.entries.size() - 1);
+
+		if (last != entry) {
+			last.index = entry.index;
+			this.entries.set(entry.index, last);
+		}
+	}
+}
@@ -1,17 +1,17 @@
 package es.odracirnumira.npuzzle.util.cache;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Random;
 
+import es.odracirnumira.npuzzle.util.cache.LinkedEntryMap.Entry;
+
 /**
  * A {@link ICache} that has a limited memory size. Objects in this cache are inserted as long as
  * the total amount of memory they occupy is not greater than a specified limit. When the limit is
  * reached, other entries are removed to accommodate enough room in the cache. If there is not
  * enough space to keep a single item, its insertion will fail.
  * <p>
+ * All the operations take constant time, whatever the {@link RemovalOrder}.
+ * <p>
  * This is an abstract class. Subclasses must define the way size of objects is computed by
  * implementing the {@link #getSize(Object)} method.
  * 
@@ -34,15 +34,12 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 	private long currentSize;
 
 	/**
-	 * The set of objects. DO NOT change from HashMap, since we are using it specifically.
+	 * The objects. They are ordered according to their insertion time, that is, first entries
+	 * represent the objects that were inserted first. If the removal order is
+	 * {@link RemovalOrder#LRU}, objects are moved to the end every time they are used, so they are
+	 * ordered according to their last use instead.
 	 */
-	private HashMap<K, V> objects;
-
-	/**
-	 * List of all the keys present in the cache. This keys are ordered according to their insertion
-	 * time, that is, first elements represent the keys of those objects that were inserted first.
-	 */
-	private LinkedList<K> keys;
+	private LinkedEntryMap<K, V> objects;
 
 	/**
 	 * The order in which items will be removed from the cache.
@@ -72,7 +69,11 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 		/**
 		 * Undefined.
 		 */
-		UNDEFINED
+		UNDEFINED,
+		/**
+		 * Least recently used. Both getting and putting an object count as using it.
+		 */
+		LRU
 	}
 
 	/**
@@ -103,10 +104,9 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 		}
 
 		this.maxSize = maxSize;
-		this.objects = new HashMap<K, V>();
+		this.objects = new LinkedEntryMap<K, V>();
 		this.order = order;
 		this.random = new Random();
-		this.keys = new LinkedList<K>();
 	}
 
 	/**
@@ -118,19 +118,23 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 			throw new IllegalArgumentException("null key or value");
 		}
 
-		V oldValue = this.objects.put(key, value);
+		Entry<K, V> entry = this.objects.get(key);
+		V oldValue = null;
 
-		/*
-		 * Add key to the set of used keys.
-		 */
-		if (oldValue == null) {
-			this.keys.add(key);
+		if (entry == null) {
+			this.objects.add(key, value);
 		} else {
 			/*
 			 * If there was a previous value with the same key, substract its size and release it.
 			 */
+			oldValue = entry.value;
+			entry.value = value;
 			this.currentSize -= this.getSize(oldValue);
-			this.entryRemoved(false, key, oldValue);
+			this.notifyEntryRemoved(false, key, oldValue);
+
+			if (this.order == RemovalOrder.LRU) {
+				this.objects.moveToEnd(entry);
+			}
 		}
 
 		/*
@@ -156,7 +160,19 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 			throw new IllegalArgumentException("null key");
 		}
 
-		return this.objects.get(key);
+		Entry<K, V> entry = this.objects.get(key);
+
+		if (entry == null) {
+			this.recordGet(false);
+			return null;
+		}
+
+		if (this.order == RemovalOrder.LRU) {
+			this.objects.moveToEnd(entry);
+		}
+
+		this.recordGet(true);
+		return entry.value;
 	}
 
 	/**
@@ -168,15 +184,15 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 			throw new IllegalArgumentException("null key");
 		}
 
-		V value = this.objects.remove(key);
+		Entry<K, V> entry = this.objects.remove(key);
 
-		if (value != null) {
-			this.keys.remove(key);
-			this.currentSize -= this.getSize(value);
+		if (entry == null) {
+			return false;
 		}
 
-		this.entryRemoved(false, key, value);
-		return value != null;
+		this.currentSize -= this.getSize(entry.value);
+		this.notifyEntryRemoved(false, key, entry.value);
+		return true;
 	}
 
 	/**
@@ -208,46 +224,60 @@ public abstract class MemoryLimitedCache<K, V> extends BaseCache<K, V> {
 	 */
 	public abstract long getSize(V value);
 
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getCurrentSize()
+	 */
+	public long getCurrentSize() {
+		return this.currentSize;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getMaxSize()
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
 	/**
 	 * 
 	 * @see es.csic.mobilecypher.util.cache.ICache#clear()
 	 */
 	public void clear() {
-		for (K key : new HashSet<K>(this.objects.keySet())) {
-			this.remove(key);
+		Entry<K, V> entry;
+
+		while ((entry = this.objects.getFirst()) != null) {
+			this.objects.remove(entry);
+			this.notifyEntryRemoved(false, entry.key, entry.value);
 		}
 
-		this.objects.clear();
-		this.keys.clear();
 		this.currentSize = 0;
 	}
 
 	/**
-	 * Removes one element from the {@link #objects} according to {@link #order} and {@link #keys}.
-	 * This method does not check the number of elements in the cache, so it should not be called in
-	 * it is empty. This method updates the current size of the cache ({@link #currentSize}).
+	 * Removes one element from the {@link #objects} according to {@link #order}. This method does
+	 * not check the number of elements in the cache, so it should not be called in it is empty. This
+	 * method updates the current size of the cache ({@link #currentSize}).
 	 */
 	private void removeAccordingToOrder() {
-		V toRemove = null;
-		K key = null;
+		Entry<K, V> entry = null;
 
 		switch (this.order) {
 			case FIFO:
-				toRemove = this.objects.remove(this.keys.getFirst());
-				key = this.keys.removeFirst();
+			case LRU:
+				entry = this.objects.getFirst();
 				break;
 			case LIFO:
-				toRemove = this.objects.remove(this.keys.getLast());
-				key = this.keys.removeLast();
+				entry = this.objects.getLast();
 				break;
 			case UNDEFINED:
-				int keyPos = this.random.nextInt(this.keys.size());
-				toRemove = this.objects.remove(this.keys.get(keyPos));
-				key = this.keys.remove(keyPos);
+				entry = this.objects.getRandom(this.random);
 				break;
 		}
 
-		this.currentSize -= this.getSize(toRemove);
-		this.entryRemoved(true, key, toRemove);
+		this.objects.remove(entry);
+		this.currentSize -= this.getSize(entry.value);
+		this.notifyEntryRemoved(true, entry.key, entry.value);
 	}
 }
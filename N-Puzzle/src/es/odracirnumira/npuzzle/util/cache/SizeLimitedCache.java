@@ -1,12 +1,14 @@
 package es.odracirnumira.npuzzle.util.cache;
 
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Random;
 
+import es.odracirnumira.npuzzle.util.cache.LinkedEntryMap.Entry;
+
 /**
  * A {@link ICache} that can contain a limited number of elements. When the maximum number of
  * elements is exceeded, old elements are removed to accommodate room for new ones.
+ * <p>
+ * All the operations take constant time, whatever the {@link RemovalOrder}.
  * 
  * @author Ricardo Juan Palma Durán
  * 
@@ -22,16 +24,12 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 	private int sizeLimit;
 
 	/**
-	 * The set of objects. DO NOT change from HashMap, since we are using it specifically.
-	 */
-	private HashMap<K, V> objects;
-
-	/**
-	 * List of all the keys present in the cache. This keys are ordered according to their insertion
-	 * time, that is, first elements represent the keys of those objects that were inserted first.
-	 * This field is only used if the size of the cache is limited (<code>sizeLimit!=-1</code>).
+	 * The objects. They are ordered according to their insertion time, that is, first entries
+	 * represent the objects that were inserted first. If the removal order is
+	 * {@link RemovalOrder#LRU}, objects are moved to the end every time they are used, so they are
+	 * ordered according to their last use instead.
 	 */
-	private LinkedList<K> keys;
+	private LinkedEntryMap<K, V> objects;
 
 	/**
 	 * The order in which items will be removed from the cache if the size is not unlimited.
@@ -61,7 +59,11 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 		/**
 		 * Undefined.
 		 */
-		UNDEFINED
+		UNDEFINED,
+		/**
+		 * Least recently used. Both getting and putting an object count as using it.
+		 */
+		LRU
 	}
 
 	/**
@@ -94,8 +96,7 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 		}
 
 		this.sizeLimit = sizeLimit;
-		this.objects = new HashMap<K, V>();
-		this.keys = new LinkedList<K>();
+		this.objects = new LinkedEntryMap<K, V>();
 		this.order = order;
 		this.random = new Random();
 	}
@@ -109,13 +110,19 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 			throw new IllegalArgumentException("null key or value");
 		}
 
-		boolean result = this.objects.put(key, value) != null;
+		Entry<K, V> entry = this.objects.get(key);
+		boolean result = entry != null;
 
-		/*
-		 * Add key to the set of used keys.
-		 */
-		if (this.sizeLimit != -1 && !result) {
-			this.keys.add(key);
+		if (entry == null) {
+			this.objects.add(key, value);
+		} else {
+			V oldValue = entry.value;
+			entry.value = value;
+			this.notifyEntryRemoved(false, key, oldValue);
+
+			if (this.order == RemovalOrder.LRU) {
+				this.objects.moveToEnd(entry);
+			}
 		}
 
 		/*
@@ -135,7 +142,19 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 			throw new IllegalArgumentException("null key");
 		}
 
-		return this.objects.get(key);
+		Entry<K, V> entry = this.objects.get(key);
+
+		if (entry == null) {
+			this.recordGet(false);
+			return null;
+		}
+
+		if (this.order == RemovalOrder.LRU) {
+			this.objects.moveToEnd(entry);
+		}
+
+		this.recordGet(true);
+		return entry.value;
 	}
 
 	/**
@@ -147,13 +166,14 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 			throw new IllegalArgumentException("null key");
 		}
 
-		V value = this.objects.remove(key);
+		Entry<K, V> entry = this.objects.remove(key);
 
-		if (value != null) {
-			this.keys.remove(key);
+		if (entry == null) {
+			return false;
 		}
 
-		return value != null;
+		this.notifyEntryRemoved(false, key, entry.value);
+		return true;
 	}
 
 	/**
@@ -161,8 +181,28 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 	 * @see es.csic.mobilecypher.util.cache.ICache#clear()
 	 */
 	public void clear() {
-		this.objects.clear();
-		this.keys.clear();
+		Entry<K, V> entry;
+
+		while ((entry = this.objects.getFirst()) != null) {
+			this.objects.remove(entry);
+			this.notifyEntryRemoved(false, entry.key, entry.value);
+		}
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getCurrentSize()
+	 */
+	public long getCurrentSize() {
+		return this.objects.size();
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.util.cache.ICache#getMaxSize()
+	 */
+	public long getMaxSize() {
+		return this.sizeLimit;
 	}
 
 	/**
@@ -178,25 +218,26 @@ public class SizeLimitedCache<K, V> extends BaseCache<K, V> {
 	}
 
 	/**
-	 * Removes one element from the {@link #objects} according to {@link #order} and {@link #keys}.
-	 * This method does not check the number of elements in the cache, so it should not be called in
-	 * it is empty.
+	 * Removes one element from the {@link #objects} according to {@link #order}. This method does
+	 * not check the number of elements in the cache, so it should not be called in it is empty.
 	 */
 	private void removeAccordingToOrder() {
+		Entry<K, V> entry = null;
+
 		switch (this.order) {
 			case FIFO:
-				this.objects.remove(this.keys.getFirst());
-				this.keys.removeFirst();
+			case LRU:
+				entry = this.objects.getFirst();
 				break;
 			case LIFO:
-				this.objects.remove(this.keys.getLast());
-				this.keys.removeLast();
+				entry = this.objects.getLast();
 				break;
 			case UNDEFINED:
-				int keyPos = this.random.nextInt(this.keys.size());
-				this.objects.remove(this.keys.get(keyPos));
-				this.keys.remove(keyPos);
+				entry = this.objects.getRandom(this.random);
 				break;
 		}
+
+		this.objects.remove(entry);
+		this.notifyEntryRemoved(true, entry.key, entry.value);
 	}
 }
@@ -0,0 +1,83 @@
+package es.odracirnumira.npuzzle.view;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * Source of the pixels of the tiles of an {@link NPuzzleView}. By default, the view takes the
+ * pixels of the tiles from the bitmap set by {@link NPuzzleView#setImage(android.graphics.Bitmap)},
+ * but a tile source can be used instead (see {@link NPuzzleView#setTileSource(ITileSource)}) so
+ * that the whole image does not have to be kept in memory.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface ITileSource {
+	/**
+	 * Interface for objects that want to be notified when a tile source can draw regions that it
+	 * could not draw before.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public interface ITileSourceListener {
+		/**
+		 * Called from the UI thread when some of the regions for which
+		 * {@link ITileSource#drawRegion(Canvas, Rect, Rect)} returned false can be drawn, so that
+		 * they are drawn again.
+		 * 
+		 * @param source
+		 *            the tile source.
+		 */
+		public void regionsAvailable(ITileSource source);
+	}
+
+	/**
+	 * Returns the width of the full image, in pixels.
+	 */
+	public int getWidth();
+
+	/**
+	 * Returns the height of the full image, in pixels.
+	 */
+	public int getHeight();
+
+	/**
+	 * Draws a region of the image on a canvas, scaling it to fit the destination rectangle. This
+	 * method is called from the UI thread.
+	 * <p>
+	 * If the region is not available yet, nothing is drawn and false is returned, so that the
+	 * caller can draw a preview instead. The listener set by
+	 * {@link #setListener(ITileSourceListener)} is notified once it can be drawn.
+	 * 
+	 * @param canvas
+	 *            the canvas.
+	 * @param src
+	 *            the region of the image to draw, in the coordinates of the full image.
+	 * @param dest
+	 *            the rectangle of the canvas where the region is drawn.
+	 * @return true if the region was drawn, and false otherwise.
+	 */
+	public boolean drawRegion(Canvas canvas, Rect src, Rect dest);
+
+	/**
+	 * Sets the listener that is notified when regions that could not be drawn become available.
+	 * This method is called from the UI thread.
+	 * 
+	 * @param listener
+	 *            the listener, or null to remove it.
+	 */
+	public void setListener(ITileSourceListener listener);
+
+	/**
+	 * Frees the memory that the source uses to draw regions faster, for instance because the caller
+	 * keeps a copy of all the regions it needs. Regions drawn afterwards may take longer to be
+	 * available. This method is called from the UI thread.
+	 */
+	public void clearCache();
+
+	/**
+	 * Releases the resources of the source. The source cannot be used afterwards.
+	 */
+	public void release();
+}
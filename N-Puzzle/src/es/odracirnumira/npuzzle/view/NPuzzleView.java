@@ -1,6 +1,7 @@
 package es.odracirnumira.npuzzle.view;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import es.odracirnumira.npuzzle.NPuzzleApplication;
@@ -11,6 +12,10 @@ import es.odracirnumira.npuzzle.model.NPuzzle.ITileListener;
 import es.odracirnumira.npuzzle.util.ImageUtilities;
 import es.odracirnumira.npuzzle.util.MathUtilities;
 import es.odracirnumira.npuzzle.util.UIUtilities;
+import es.odracirnumira.npuzzle.util.cache.BitmapPool;
+import es.odracirnumira.npuzzle.view.ITileSource.ITileSourceListener;
+import es.odracirnumira.npuzzle.view.TileAnimator.ITileAnimationListener;
+import es.odracirnumira.npuzzle.view.TileAnimator.TileAnimation;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
@@ -22,6 +27,8 @@ import android.graphics.Paint;
 import android.graphics.RectF;
 import android.graphics.Paint.Style;
 import android.graphics.Point;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.util.Pair;
@@ -136,55 +143,96 @@ public class NPuzzleView extends View implements ITileListener {
 	boolean fitWidth;
 
 	/**
-	 * When a tile is being moved automatically because the {@code NPuzzle} changed or because the
-	 * user stopped dragging a tile, this value represents the time when the animation that moves
-	 * the tile started.
+	 * Engine that animates the tiles that are moved automatically, because the {@code NPuzzle}
+	 * changed or because the user stopped dragging a tile.
 	 */
-	private long movingTileStartTime;
+	private TileAnimator tileAnimator;
 
 	/**
-	 * When a tile is being moved automatically because the {@code NPuzzle} changed or because the
-	 * user stopped dragging a tile, this value represents the time when the animation that moves
-	 * the tile must end. It can be equal to {@link #movingTileStartTime} if the animation must end
-	 * immediately.
+	 * The image being displayed.
 	 */
-	private long movingTileEndTime;
+	private Bitmap image;
 
 	/**
-	 * When a tile is being moved automatically because the {@code NPuzzle} changed or because the
-	 * user stopped dragging a tile, this value represents the tile that is being moved. Its value
-	 * is -1 if no tile is being moved.
+	 * The source of the pixels of the tiles, or null to take them from {@link #image}.
 	 */
-	private int movingTile;
+	private ITileSource tileSource;
 
 	/**
-	 * When a tile is being moved automatically because the {@code NPuzzle} changed or because the
-	 * user stopped dragging a tile, this value represents the position that the tile occupied
-	 * before being moved.
+	 * Listener of {@link #tileSource}, which draws the tiles again when their regions have been
+	 * decoded.
 	 */
-	private int movingPos;
+	private ITileSourceListener tileSourceListener;
 
 	/**
-	 * When a tile is being moved automatically because the {@code NPuzzle} changed or because the
-	 * user stopped dragging a tile, this value represents the direction the tile is moving to.
+	 * The tiles of the board, already rotated and framed, placed at their solved positions. Every
+	 * tile is copied from it with a single {@link Canvas#drawBitmap(Bitmap, Rect, Rect, Paint)},
+	 * so the canvas does not have to be rotated and clipped for every tile in every frame. Null if
+	 * there is no board to draw or there is not enough memory for it, in which case the tiles are
+	 * drawn from the image directly.
 	 */
-	private Direction movingTileDirection;
+	private Bitmap tileAtlas;
 
 	/**
-	 * When a tile is being moved automatically because the {@code NPuzzle} changed or because the
-	 * user stopped dragging a tile, this value represents the initial visual coordinates of the
-	 * tile. This value ranges from 0 to 1, and represents how much of the total path it has already
-	 * moved. For instance, if the tile is being moved because the model changed, its value will be
-	 * 0, since the tile that will move is placed at the beginning of the path it has to go through.
-	 * However, if the tile is being dragged by the user and, when it is dropped, the tile has gone
-	 * through 60% of the path, this value would be 0.6.
+	 * Whether every tile of {@link #tileAtlas} is up to date with the image, its rotation and the
+	 * size of the tiles. If not, the tiles that are not are drawn again before the next frame.
 	 */
-	private float movingTileInitialPercentage;
+	private boolean tileAtlasValid;
 
 	/**
-	 * The image being displayed.
+	 * For each tile, whether it is missing from {@link #tileAtlas}, either because the atlas has
+	 * not been drawn yet or because the tile was drawn from a preview while its region of
+	 * {@link #tileSource} was not available. Null if the whole atlas must be drawn again.
 	 */
-	private Bitmap image;
+	private boolean[] missingAtlasTiles;
+
+	/**
+	 * The static tiles of the board, that is, all the tiles but the moving and dragging ones,
+	 * drawn at their current positions. Every frame copies it with a single blit and then draws the
+	 * moving and dragging tiles over it, so the cost of a frame does not depend on the number of
+	 * tiles. Null if it has not been created yet, there is not enough memory for it or the tiles
+	 * cannot move (see {@link #needsBoardBitmap()}), in which case the static tiles that intersect
+	 * the clip bounds are drawn one by one.
+	 */
+	private Bitmap boardBitmap;
+
+	/**
+	 * Canvas that draws on {@link #boardBitmap}.
+	 */
+	private Canvas boardCanvas;
+
+	/**
+	 * For each position of the board, the tile drawn on it in {@link #boardBitmap}, or -1 if it is
+	 * blank. Null if {@link #boardBitmap} must be redrawn completely.
+	 */
+	private int[] boardTiles;
+
+	/**
+	 * Whether some position of {@link #boardBitmap} may be out of date. It is set every time a
+	 * tile moves, or starts or stops being animated or dragged. Before the next frame is drawn,
+	 * only the positions whose tile has changed since the last frame are redrawn.
+	 */
+	private boolean boardBitmapDirty;
+
+	/**
+	 * Paint used to erase positions of {@link #boardBitmap}.
+	 */
+	private Paint clearPaint;
+
+	/**
+	 * Used during drawing.
+	 */
+	private Rect clipBounds;
+
+	/**
+	 * Used by {@link #invalidateTileRegion(int, Direction)}.
+	 */
+	private Rect dirtyRegion;
+
+	/**
+	 * Used by {@link #invalidateTileRegion(int, Direction)}.
+	 */
+	private Point dirtyRegionCoordinates;
 
 	/**
 	 * Used during drawing.
@@ -391,7 +439,47 @@ public class NPuzzleView extends View implements ITileListener {
 		this.tileBorderWidth = (int) UIUtilities.convertDpToPixel(DEFAULT_TILE_BORDER_WIDTH,
 				getContext());
 		this.tileFramePaint.setStrokeWidth(0);
-		this.movingTile = -1;
+		this.clearPaint = new Paint();
+		this.clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+		this.clipBounds = new Rect();
+		this.dirtyRegion = new Rect();
+		this.dirtyRegionCoordinates = new Point();
+		this.tileAnimator = new TileAnimator(new ITileAnimationListener() {
+			public void tileAnimationUpdated(TileAnimation animation) {
+				invalidateAnimationRegion(animation);
+			}
+
+			public void tileAnimationEnded(TileAnimation animation) {
+				/*
+				 * The tiles are now drawn on the board at their new positions.
+				 */
+				boardBitmapDirty = true;
+				invalidateAnimationRegion(animation);
+
+				if (!tileAnimator.isAnimating()) {
+					handleTouchEvents = true;
+				}
+
+				// Report listeners
+				fireAnimationFinishedEvent();
+			}
+		});
+		this.tileSourceListener = new ITileSourceListener() {
+			public void regionsAvailable(ITileSource source) {
+				if (source == tileSource) {
+					/*
+					 * The missing tiles of the atlas are drawn again in the next frame. If there is
+					 * no atlas, the board is drawn from the source directly.
+					 */
+					if (tileAtlas == null) {
+						boardTiles = null;
+						boardBitmapDirty = true;
+					}
+
+					invalidate();
+				}
+			}
+		};
 		this.draggingTile = -1;
 		this.setTileAnimationDuration(DEFAULT_ANIMATION_DURATION);
 		this.handleTouchEvents = true;
@@ -423,9 +511,14 @@ public class NPuzzleView extends View implements ITileListener {
 				if (handleTouchEvents) {
 					int pressedTile = drawingCoordinatesToTile(e.getX(), e.getY());
 
+					/*
+					 * All the tiles between the empty tile and the pressed one are moved at once.
+					 */
 					if (pressedTile != -1) {
-						if (puzzle.canMove(pressedTile)) {
-							puzzle.moveTile(pressedTile);
+						int pressedTilePos = puzzle.getTilePosition(pressedTile);
+
+						if (puzzle.canSlideTo(pressedTilePos)) {
+							puzzle.slideTo(pressedTilePos);
 						}
 					}
 				}
@@ -458,6 +551,7 @@ public class NPuzzleView extends View implements ITileListener {
 						if (pressedTile != -1) {
 							if (puzzle.canMove(pressedTile)) {
 								draggingTile = pressedTile;
+								boardBitmapDirty = true;
 							}
 						}
 					}
@@ -568,6 +662,7 @@ public class NPuzzleView extends View implements ITileListener {
 					}
 
 					this.draggingTile = -1;
+					this.boardBitmapDirty = true;
 				}
 			}
 		}
@@ -575,6 +670,32 @@ public class NPuzzleView extends View implements ITileListener {
 		return true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.view.View#onDetachedFromWindow()
+	 */
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+
+		/*
+		 * Stop the animations, so that the engine does not keep running while the view is not
+		 * displayed. The tiles are drawn at their final positions if the view is displayed again.
+		 */
+		if (this.tileAnimator.isAnimating()) {
+			this.tileAnimator.cancel();
+			this.boardBitmapDirty = true;
+			this.handleTouchEvents = true;
+		}
+
+		/*
+		 * Give the memory of the bitmaps back to the pool. They are built again if the view is
+		 * displayed again.
+		 */
+		this.releaseTileAtlas();
+		this.releaseBoardBitmap();
+	}
+
 	protected void onDraw(Canvas canvas) {
 		/*
 		 * If either the puzzle or the image is not set, draw a blank view.
@@ -587,22 +708,24 @@ public class NPuzzleView extends View implements ITileListener {
 		/*
 		 * Otherwise, draw the board.
 		 */
-		// Draw static tiles
-		for (int i = 0; i < this.puzzle.getNumTiles() - 1; i++) {
-			if (i != this.movingTile && i != this.draggingTile) {
-				int tilePosition = this.puzzle.getTilePosition(i);
+		if (!this.tileAtlasValid) {
+			this.buildTileAtlas();
+		}
 
-				// Convert tile position to canvas coordinates
-				this.tilePositionToCanvasCoordinates(tilePosition, this.tileCoordinates);
+		if (this.boardBitmapDirty) {
+			this.updateBoardBitmap();
+		}
 
-				// Draw tile
-				this.drawTile(canvas, i, this.tileCoordinates);
-			}
+		// Draw static tiles
+		if (this.boardBitmap != null) {
+			canvas.drawBitmap(this.boardBitmap, this.widthGap, this.heightGap, null);
+		} else {
+			this.drawStaticTiles(canvas);
 		}
 
-		// Draw moving tile if there is a tile moving
-		if (this.movingTile != -1) {
-			this.drawMovingTile(canvas);
+		// Draw the tiles that are moving
+		for (int i = 0; i < this.tileAnimator.getNumAnimations(); i++) {
+			this.drawAnimatedTile(canvas, this.tileAnimator.getAnimation(i));
 		}
 
 		// Draw dragging tile if there is a tile being dragged
@@ -634,6 +757,16 @@ public class NPuzzleView extends View implements ITileListener {
 		return this.animationDuration;
 	}
 
+	/**
+	 * Returns the engine that animates the tiles of the view. It can be used to change the
+	 * interpolator of the animations and to read the number of frames dropped while animating.
+	 * 
+	 * @return the engine that animates the tiles of the view.
+	 */
+	public TileAnimator getTileAnimator() {
+		return this.tileAnimator;
+	}
+
 	/**
 	 * Returns the image being displayed by the puzzle, or null if not set. Note that this Bitmap
 	 * may not necessarily be that set in {@link #setImage(Bitmap)}, since it may have been
@@ -794,6 +927,7 @@ public class NPuzzleView extends View implements ITileListener {
 		}
 
 		this.image = bitmap;
+		this.invalidateTileAtlas();
 
 		/*
 		 * If the new image's size is different from the size of the previous image (or the previous
@@ -819,6 +953,46 @@ public class NPuzzleView extends View implements ITileListener {
 		invalidate();
 	}
 
+	/**
+	 * Sets the source of the pixels of the tiles. If it is not null, the tiles are drawn from it
+	 * instead of from the image set by {@link #setImage(Bitmap)}. This allows the view to display
+	 * images that are too big to be kept in memory.
+	 * <p>
+	 * The image is still needed, since it determines the size and aspect ratio of the board and the
+	 * view is not drawn without it, but it can be a small version of the image of the source. Both
+	 * must have the same aspect ratio.
+	 * <p>
+	 * While a region of the source is not available, the tiles that need it are drawn from the
+	 * image, and they are drawn again once it is.
+	 * <p>
+	 * The view does not release the source. It should be released by the caller once it has been
+	 * replaced.
+	 * 
+	 * @param tileSource
+	 *            the source of the pixels of the tiles, or null to draw them from the image.
+	 */
+	public void setTileSource(ITileSource tileSource) {
+		if (this.tileSource != null) {
+			this.tileSource.setListener(null);
+		}
+
+		this.tileSource = tileSource;
+
+		if (this.tileSource != null) {
+			this.tileSource.setListener(this.tileSourceListener);
+		}
+
+		this.invalidateTileAtlas();
+		invalidate();
+	}
+
+	/**
+	 * Returns the source of the pixels of the tiles, or null if they are drawn from the image.
+	 */
+	public ITileSource getTileSource() {
+		return this.tileSource;
+	}
+
 	/**
 	 * Enables or disables touch events for the view.
 	 * 
@@ -827,6 +1001,12 @@ public class NPuzzleView extends View implements ITileListener {
 	 */
 	public void enableTouchEvents(boolean enabled) {
 		this.handleTouchEvents = enabled;
+
+		/*
+		 * Whether the board bitmap is needed may have changed.
+		 */
+		this.boardBitmapDirty = true;
+		invalidate();
 	}
 
 	/**
@@ -1050,6 +1230,9 @@ public class NPuzzleView extends View implements ITileListener {
 		this.resizedImageHeight = this.tileHeight * this.puzzle.getSideNumTiles();
 		this.widthGap = (viewWidth - this.resizedImageWidth) / 2 + getPaddingLeft();
 		this.heightGap = (viewHeight - this.resizedImageHeight) / 2 + getPaddingTop();
+
+		// The size of the tiles or the rotation may have changed
+		this.invalidateTileAtlas();
 	}
 
 	/**
@@ -1084,78 +1267,41 @@ public class NPuzzleView extends View implements ITileListener {
 	}
 
 	/**
-	 * If there is a moving tile ({@link #movingTile} is not -1), this method draws it. It is drawn
-	 * rotated.
+	 * Draws the tiles that are being animated by an animation of {@link #tileAnimator}, at the
+	 * point of their path given by the fraction computed for the current frame.
 	 * 
 	 * @param canvas
 	 *            the canvas.
+	 * @param animation
+	 *            the animation of the tiles.
 	 */
-	private void drawMovingTile(Canvas canvas) {
-		if (this.movingTile != -1) {
-			float percentage;
-
-			if (this.movingTileStartTime == this.movingTileEndTime) {
-				percentage = 1;
-			} else {
-				percentage = (System.currentTimeMillis() - this.movingTileStartTime)
-						/ (float) (this.movingTileEndTime - this.movingTileStartTime);
-			}
-
-			if (percentage > 1) {
-				percentage = 1;
-			}
-
+	private void drawAnimatedTile(Canvas canvas, TileAnimation animation) {
+		for (int i = 0; i < animation.numTiles; i++) {
 			/*
 			 * Get the drawing coordinates of the tile. The coordinates are those that the tile
 			 * would normally occupy if it were not moving, but slightly modified by a factor that
 			 * depends on the direction of the movement as well as how much of the animation is
 			 * completed so far.
 			 */
-			this.tilePositionToCanvasCoordinates(this.movingPos, this.tileCoordinates);
+			this.tilePositionToCanvasCoordinates(animation.positions[i], this.tileCoordinates);
 
-			switch (this.movingTileDirection) {
+			switch (animation.direction) {
 				case UP:
-					this.tileCoordinates.y -= this.tileHeight
-							* this.movingTileInitialPercentage
-							+ (this.tileHeight - this.tileHeight * this.movingTileInitialPercentage)
-							* percentage;
-
+					this.tileCoordinates.y -= this.tileHeight * animation.fraction;
 					break;
 				case DOWN:
-					this.tileCoordinates.y += this.tileHeight
-							* this.movingTileInitialPercentage
-							+ (this.tileHeight - this.tileHeight * this.movingTileInitialPercentage)
-							* percentage;
-
+					this.tileCoordinates.y += this.tileHeight * animation.fraction;
 					break;
 				case LEFT:
-					this.tileCoordinates.x -= this.tileWidth * this.movingTileInitialPercentage
-							+ (this.tileWidth - this.tileWidth * this.movingTileInitialPercentage)
-							* percentage;
-
+					this.tileCoordinates.x -= this.tileWidth * animation.fraction;
 					break;
 				case RIGHT:
-					this.tileCoordinates.x += this.tileWidth * this.movingTileInitialPercentage
-							+ (this.tileWidth - this.tileWidth * this.movingTileInitialPercentage)
-							* percentage;
-
+					this.tileCoordinates.x += this.tileWidth * animation.fraction;
 					break;
 			}
 
 			// Draw the tile
-			this.drawTile(canvas, this.movingTile, this.tileCoordinates);
-
-			// If animation is done, stop by setting movingTile to -1
-			if (percentage >= 1) {
-				this.handleTouchEvents = true;
-				this.movingTile = -1;
-
-				// Report listeners
-				this.fireAnimationFinishedEvent();
-			} else {
-				// Otherwise post a draw request to continue drawing
-				this.invalidateTileRegion(this.movingPos, this.movingTileDirection);
-			}
+			this.drawTile(canvas, animation.tiles[i], this.tileCoordinates);
 		}
 	}
 
@@ -1200,6 +1346,298 @@ public class NPuzzleView extends View implements ITileListener {
 		}
 	}
 
+	/**
+	 * Draws a tile at the given coordinates. The tile is copied from {@link #tileAtlas}, which
+	 * already contains it rotated and framed. If there is no atlas, the tile is drawn by
+	 * {@link #drawRotatedTile(Canvas, int, Point)}.
+	 * <p>
+	 * Note that this method modifies {@link #tileDestRectangle} and {@link #tileSrcRectangle}.
+	 * 
+	 * @param canvas
+	 *            the canvas.
+	 * @param tile
+	 *            the tile to draw.
+	 * @param coordinates
+	 *            the coordinates of the top left corner of the tile.
+	 */
+	private void drawTile(Canvas canvas, int tile, Point coordinates) {
+		if (this.tileAtlas == null) {
+			this.drawRotatedTile(canvas, tile, coordinates);
+			return;
+		}
+
+		int sideNumTiles = this.puzzle.getSideNumTiles();
+
+		this.tileSrcRectangle.left = (tile % sideNumTiles) * this.tileWidth;
+		this.tileSrcRectangle.top = (tile / sideNumTiles) * this.tileHeight;
+		this.tileSrcRectangle.right = this.tileSrcRectangle.left + this.tileWidth;
+		this.tileSrcRectangle.bottom = this.tileSrcRectangle.top + this.tileHeight;
+
+		this.tileDestRectangle.left = coordinates.x;
+		this.tileDestRectangle.top = coordinates.y;
+		this.tileDestRectangle.right = coordinates.x + this.tileWidth;
+		this.tileDestRectangle.bottom = coordinates.y + this.tileHeight;
+
+		canvas.drawBitmap(this.tileAtlas, this.tileSrcRectangle, this.tileDestRectangle, null);
+	}
+
+	/**
+	 * Marks {@link #tileAtlas} and {@link #boardBitmap} as out of date, so that they are built
+	 * again before the next frame is drawn.
+	 */
+	private void invalidateTileAtlas() {
+		this.tileAtlasValid = false;
+		this.missingAtlasTiles = null;
+		this.boardTiles = null;
+		this.boardBitmapDirty = true;
+	}
+
+	/**
+	 * Returns true if {@link #boardBitmap} is worth its memory, that is, if the tiles can be moved
+	 * by the user or are moving. Views that only display a puzzle, such as the thumbnails of the
+	 * saved games, are drawn a few times and draw their tiles directly.
+	 */
+	private boolean needsBoardBitmap() {
+		return this.handleTouchEvents || this.tileAnimator.isAnimating();
+	}
+
+	/**
+	 * Puts {@link #boardBitmap} into the application's {@link BitmapPool}, if there is one.
+	 */
+	private void releaseBoardBitmap() {
+		if (this.boardBitmap != null) {
+			NPuzzleApplication.getApplication().getBitmapPool().put(this.boardBitmap);
+			this.boardBitmap = null;
+			this.boardCanvas = null;
+			this.boardTiles = null;
+			this.boardBitmapDirty = true;
+		}
+	}
+
+	/**
+	 * Puts {@link #tileAtlas} into the application's {@link BitmapPool}, if there is one, so that
+	 * it is built again before the next frame is drawn.
+	 */
+	private void releaseTileAtlas() {
+		if (this.tileAtlas != null) {
+			NPuzzleApplication.getApplication().getBitmapPool().put(this.tileAtlas);
+			this.tileAtlas = null;
+			this.invalidateTileAtlas();
+		}
+	}
+
+	/**
+	 * Redraws the positions of {@link #boardBitmap} whose tile has changed since the last time it
+	 * was drawn, creating the bitmap first if needed. If it cannot be created or it is not needed
+	 * (see {@link #needsBoardBitmap()}), {@link #boardBitmap} is left null.
+	 */
+	private void updateBoardBitmap() {
+		if (this.boardBitmap != null
+				&& (!this.needsBoardBitmap()
+						|| this.boardBitmap.getWidth() != this.resizedImageWidth
+						|| this.boardBitmap.getHeight() != this.resizedImageHeight)) {
+			this.releaseBoardBitmap();
+		}
+
+		this.boardBitmapDirty = false;
+
+		if (!this.needsBoardBitmap() || this.resizedImageWidth <= 0
+				|| this.resizedImageHeight <= 0) {
+			return;
+		}
+
+		BitmapPool pool = NPuzzleApplication.getApplication().getBitmapPool();
+
+		if (this.boardBitmap == null) {
+			this.boardBitmap = pool.get(this.resizedImageWidth, this.resizedImageHeight,
+					Config.ARGB_8888);
+
+			if (this.boardBitmap == null) {
+				try {
+					this.boardBitmap = Bitmap.createBitmap(this.resizedImageWidth,
+							this.resizedImageHeight, Config.ARGB_8888);
+				} catch (OutOfMemoryError e) {
+					return;
+				}
+			}
+
+			this.boardCanvas = new Canvas(this.boardBitmap);
+			this.boardTiles = null;
+		}
+
+		int numTiles = this.puzzle.getNumTiles();
+
+		if (this.boardTiles == null || this.boardTiles.length != numTiles) {
+			this.boardBitmap.eraseColor(Color.TRANSPARENT);
+			this.boardTiles = new int[numTiles];
+			Arrays.fill(this.boardTiles, -1);
+		}
+
+		int sideNumTiles = this.puzzle.getSideNumTiles();
+
+		for (int pos = 0; pos < numTiles; pos++) {
+			int tile = this.puzzle.getPositionTile(pos);
+
+			if (tile == numTiles - 1 || tile == this.draggingTile
+					|| this.tileAnimator.isAnimating(tile)) {
+				tile = -1;
+			}
+
+			if (this.boardTiles[pos] != tile) {
+				this.tileCoordinates.x = (pos % sideNumTiles) * this.tileWidth;
+				this.tileCoordinates.y = (pos / sideNumTiles) * this.tileHeight;
+
+				if (this.boardTiles[pos] != -1) {
+					this.boardCanvas.drawRect(this.tileCoordinates.x, this.tileCoordinates.y,
+							this.tileCoordinates.x + this.tileWidth, this.tileCoordinates.y
+									+ this.tileHeight, this.clearPaint);
+				}
+
+				if (tile != -1) {
+					this.drawTile(this.boardCanvas, tile, this.tileCoordinates);
+				}
+
+				this.boardTiles[pos] = tile;
+			}
+		}
+	}
+
+	/**
+	 * Draws the static tiles, that is, all the tiles but the moving and dragging ones, one by one.
+	 * Only the tiles that intersect the clip bounds of the canvas are drawn. This is used when
+	 * there is no {@link #boardBitmap}.
+	 * 
+	 * @param canvas
+	 *            the canvas.
+	 */
+	private void drawStaticTiles(Canvas canvas) {
+		if (this.tileWidth <= 0 || this.tileHeight <= 0
+				|| !canvas.getClipBounds(this.clipBounds)) {
+			return;
+		}
+
+		int sideNumTiles = this.puzzle.getSideNumTiles();
+		int firstColumn = Math.max(0, (this.clipBounds.left - this.widthGap) / this.tileWidth);
+		int lastColumn = Math.min(sideNumTiles - 1, (this.clipBounds.right - 1 - this.widthGap)
+				/ this.tileWidth);
+		int firstRow = Math.max(0, (this.clipBounds.top - this.heightGap) / this.tileHeight);
+		int lastRow = Math.min(sideNumTiles - 1, (this.clipBounds.bottom - 1 - this.heightGap)
+				/ this.tileHeight);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int tilePosition = row * sideNumTiles + column;
+				int tile = this.puzzle.getPositionTile(tilePosition);
+
+				if (tile != this.puzzle.getNumTiles() - 1 && tile != this.draggingTile
+						&& !this.tileAnimator.isAnimating(tile)) {
+					// Convert tile position to canvas coordinates
+					this.tilePositionToCanvasCoordinates(tilePosition, this.tileCoordinates);
+
+					// Draw tile
+					this.drawTile(canvas, tile, this.tileCoordinates);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds {@link #tileAtlas} by drawing every tile at its solved position with
+	 * {@link #drawRotatedTile(Canvas, int, Point)}. The previous atlas is reused if it has the
+	 * same size, and put into the application's {@link BitmapPool} otherwise.
+	 * <p>
+	 * Only the tiles in {@link #missingAtlasTiles} are drawn, so the atlas is built incrementally
+	 * while the regions of {@link #tileSource} are being decoded. Once every tile has been drawn,
+	 * the atlas is valid and the cache of the source is cleared, since the atlas already holds the
+	 * same pixels.
+	 * <p>
+	 * This method can only be called if there is a puzzle and an image set and the size of the
+	 * tiles has been computed.
+	 */
+	private void buildTileAtlas() {
+		if (this.tileAtlas != null
+				&& (this.tileAtlas.getWidth() != this.resizedImageWidth || this.tileAtlas
+						.getHeight() != this.resizedImageHeight)) {
+			this.releaseTileAtlas();
+		}
+
+		BitmapPool pool = NPuzzleApplication.getApplication().getBitmapPool();
+
+		if (this.resizedImageWidth <= 0 || this.resizedImageHeight <= 0) {
+			this.tileAtlasValid = true;
+			return;
+		}
+
+		if (this.tileAtlas == null) {
+			this.missingAtlasTiles = null;
+			this.tileAtlas = pool.get(this.resizedImageWidth, this.resizedImageHeight,
+					Config.ARGB_8888);
+
+			if (this.tileAtlas == null) {
+				try {
+					this.tileAtlas = Bitmap.createBitmap(this.resizedImageWidth,
+							this.resizedImageHeight, Config.ARGB_8888);
+				} catch (OutOfMemoryError e) {
+					/*
+					 * Tiles will be drawn from the image directly, which is slower but needs no
+					 * extra memory.
+					 */
+					this.tileAtlasValid = true;
+					return;
+				}
+			}
+		}
+
+		int numAtlasTiles = this.puzzle.getNumTiles() - 1;
+		boolean changed = false;
+
+		if (this.missingAtlasTiles == null || this.missingAtlasTiles.length != numAtlasTiles) {
+			changed = true;
+			this.tileAtlas.eraseColor(Color.TRANSPARENT);
+			this.missingAtlasTiles = new boolean[numAtlasTiles];
+			Arrays.fill(this.missingAtlasTiles, true);
+		}
+
+		/*
+		 * The atlas is drawn as a board with no gaps, so the tiles are rotated around its center.
+		 */
+		Canvas atlasCanvas = new Canvas(this.tileAtlas);
+		Point coordinates = new Point();
+		int sideNumTiles = this.puzzle.getSideNumTiles();
+		boolean complete = true;
+
+		for (int i = 0; i < numAtlasTiles; i++) {
+			if (this.missingAtlasTiles[i]) {
+				coordinates.x = (i % sideNumTiles) * this.tileWidth;
+				coordinates.y = (i / sideNumTiles) * this.tileHeight;
+
+				/*
+				 * Erase the preview the tile may have been drawn from.
+				 */
+				atlasCanvas.drawRect(coordinates.x, coordinates.y, coordinates.x + this.tileWidth,
+						coordinates.y + this.tileHeight, this.clearPaint);
+				this.missingAtlasTiles[i] = !this.drawRotatedTile(atlasCanvas, i, coordinates);
+				changed |= !this.missingAtlasTiles[i];
+				complete &= !this.missingAtlasTiles[i];
+			}
+		}
+
+		this.tileAtlasValid = complete;
+
+		/*
+		 * The board has to copy the tiles again. Tiles drawn from the same preview again have not
+		 * changed.
+		 */
+		if (changed) {
+			this.boardTiles = null;
+			this.boardBitmapDirty = true;
+		}
+
+		if (complete && this.tileSource != null) {
+			this.tileSource.clearCache();
+		}
+	}
+
 	/**
 	 * Draws a tile at the given coordinates. The tile is drawn rotated according to
 	 * {@link #imageRotation}. Thus, the tile's coordinates should also account for the rotation.
@@ -1207,6 +1645,9 @@ public class NPuzzleView extends View implements ITileListener {
 	 * appropriate coordinates. For moving tiles, you should compute the specific coordinates to
 	 * use.
 	 * <p>
+	 * If the region of {@link #tileSource} for the tile is not available yet, the tile is drawn
+	 * from {@link #image} instead, which is a smaller version of the same image.
+	 * <p>
 	 * Note that this method modifies {@link #tileDestRectangle} and {@link #tileSrcRectangle}.
 	 * 
 	 * @param canvas
@@ -1215,8 +1656,10 @@ public class NPuzzleView extends View implements ITileListener {
 	 *            the tile to draw.
 	 * @param coordinates
 	 *            the coordinates of the top left corner of the tile.
+	 * @return false if the tile was drawn from the image because its region of the tile source was
+	 *         not available, and true otherwise.
 	 */
-	private void drawTile(Canvas canvas, int tile, Point coordinates) {
+	private boolean drawRotatedTile(Canvas canvas, int tile, Point coordinates) {
 		/*
 		 * Draw tile. We must compute both the coordinates of the tile on the view and the
 		 * coordinates of the tile on the original image. We must also take into account the
@@ -1251,8 +1694,10 @@ public class NPuzzleView extends View implements ITileListener {
 		 * rotation. Rotation is fundamental here, since it determines what portion of the source
 		 * image must be drawn for tile "tile".
 		 */
-		int tileImageW = this.image.getWidth() / this.puzzle.getSideNumTiles();
-		int tileImageH = this.image.getHeight() / this.puzzle.getSideNumTiles();
+		int imageW = this.tileSource != null ? this.tileSource.getWidth() : this.image.getWidth();
+		int imageH = this.tileSource != null ? this.tileSource.getHeight() : this.image.getHeight();
+		int tileImageW = imageW / this.puzzle.getSideNumTiles();
+		int tileImageH = imageH / this.puzzle.getSideNumTiles();
 		int sideNumTiles = this.puzzle.getSideNumTiles();
 
 		/*
@@ -1326,9 +1771,31 @@ public class NPuzzleView extends View implements ITileListener {
 		this.tileDestRectangle.left -= this.tileBorderWidth;
 		this.tileDestRectangle.right += this.tileBorderWidth;
 
-		canvas.drawBitmap(this.image, this.tileSrcRectangle, this.tileDestRectangle, null);
+		boolean drawn = true;
+
+		if (this.tileSource != null) {
+			drawn = this.tileSource.drawRegion(canvas, this.tileSrcRectangle,
+					this.tileDestRectangle);
+
+			if (!drawn) {
+				/*
+				 * Convert the region to the coordinates of the image.
+				 */
+				float scaleX = (float) this.image.getWidth() / imageW;
+				float scaleY = (float) this.image.getHeight() / imageH;
+				this.tileSrcRectangle.left = (int) (this.tileSrcRectangle.left * scaleX);
+				this.tileSrcRectangle.top = (int) (this.tileSrcRectangle.top * scaleY);
+				this.tileSrcRectangle.right = (int) (this.tileSrcRectangle.right * scaleX);
+				this.tileSrcRectangle.bottom = (int) (this.tileSrcRectangle.bottom * scaleY);
+			}
+		}
+
+		if (!drawn || this.tileSource == null) {
+			canvas.drawBitmap(this.image, this.tileSrcRectangle, this.tileDestRectangle, null);
+		}
 
 		canvas.restore();
+		return drawn;
 	}
 
 	/**
@@ -1354,13 +1821,13 @@ public class NPuzzleView extends View implements ITileListener {
 
 	/**
 	 * Starts an animation that moves the tile <code>tile</code> from <code>pos</code> to the next
-	 * tile in the direction <code>direction</code>. This is the animation that gets drawn by the
-	 * {@link #drawMovingTile(Canvas)} method.
+	 * tile in the direction <code>direction</code>. The animation is run by {@link #tileAnimator}
+	 * and drawn by the {@link #drawAnimatedTile(Canvas, TileAnimation)} method.
 	 * <p>
-	 * When this method is called, whatever animation was previously taking place is canceled (it is
-	 * actually ended, so the animation that was taking place ends abruptly instead of doing it
-	 * smoothly). Also, touch events are disabled until the animation ends, because we do not want
-	 * the user to modify the view if an animation is pending.
+	 * Animations of other tiles that were taking place keep running, so several tiles can move at
+	 * the same time. If <code>tile</code> was already moving, its animation is replaced. Also,
+	 * touch events are disabled until all the animations end, because we do not want the user to
+	 * modify the view if an animation is pending.
 	 * <p>
 	 * If the <code>tile</code> was the tile being dragged ({@link #draggingTile}), then the
 	 * animation does not start from scratch. Instead, it starts from the point where the user
@@ -1370,23 +1837,18 @@ public class NPuzzleView extends View implements ITileListener {
 	 */
 	private void startMovingAnimation(int tile, int pos, Direction direction) {
 		// Starts animation
-		this.movingTile = tile;
-		this.movingTileStartTime = System.currentTimeMillis();
-		this.movingPos = pos;
-		this.movingTileDirection = direction;
 		this.handleTouchEvents = false;
 
 		if (this.draggingTile != -1 && tile == this.draggingTile) {
-			this.movingTileEndTime = this.movingTileStartTime
-					+ (long) (this.animationDuration * (1 - this.draggingTilePercentage));
-			this.movingTileInitialPercentage = this.draggingTilePercentage;
+			this.tileAnimator.start(tile, pos, direction, this.draggingTilePercentage,
+					(long) (this.animationDuration * (1 - this.draggingTilePercentage)));
 		} else {
-			this.movingTileEndTime = this.movingTileStartTime + this.animationDuration;
-			this.movingTileInitialPercentage = 0;
+			this.tileAnimator.start(tile, pos, direction, 0, this.animationDuration);
 		}
 
 		// Cancel dragging tile
 		this.draggingTile = -1;
+		this.boardBitmapDirty = true;
 
 		invalidateTileRegion(pos, direction);
 
@@ -1394,6 +1856,38 @@ public class NPuzzleView extends View implements ITileListener {
 		this.fireAnimationStartedEvent();
 	}
 
+	/**
+	 * Starts a single animation that moves all the tiles in <code>tiles</code> one position in the
+	 * direction <code>direction</code>, from the positions in <code>positions</code>. It behaves
+	 * like {@link #startMovingAnimation(int, int, Direction)}, but animation events are reported
+	 * only once for all the tiles.
+	 */
+	private void startSlidingAnimation(int[] tiles, int[] positions, Direction direction) {
+		// Starts animation
+		this.handleTouchEvents = false;
+		this.tileAnimator.start(tiles, positions, direction, this.animationDuration);
+
+		// Cancel dragging tile
+		this.draggingTile = -1;
+		this.boardBitmapDirty = true;
+
+		for (int i = 0; i < positions.length; i++) {
+			invalidateTileRegion(positions[i], direction);
+		}
+
+		// Report listeners
+		this.fireAnimationStartedEvent();
+	}
+
+	/**
+	 * Invalidates the regions of all the tiles moved by <code>animation</code>.
+	 */
+	private void invalidateAnimationRegion(TileAnimation animation) {
+		for (int i = 0; i < animation.numTiles; i++) {
+			this.invalidateTileRegion(animation.positions[i], animation.direction);
+		}
+	}
+
 	/**
 	 * Given a tile position of the puzzle and a direction, this method invalidates (for drawing)
 	 * the region consisting of the tile at <code>tilePos</code> and the tile next to it in the
@@ -1403,11 +1897,10 @@ public class NPuzzleView extends View implements ITileListener {
 	 * method to fire a draw event is much more efficient than re-redrawing the whole view.
 	 */
 	private void invalidateTileRegion(int tilePos, Direction direction) {
-		Point coordinates = new Point();
+		Point coordinates = this.dirtyRegionCoordinates;
+		Rect dirtyRegion = this.dirtyRegion;
 		tilePositionToCanvasCoordinates(tilePos, coordinates);
 
-		Rect dirtyRegion = new Rect();
-
 		switch (direction) {
 			case UP:
 				dirtyRegion.bottom = coordinates.y + this.tileHeight;
@@ -1447,6 +1940,16 @@ public class NPuzzleView extends View implements ITileListener {
 		this.startMovingAnimation(tile, oldPos, puzzle.moveDirection(oldPos, newPos));
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see es.odracirnumira.npuzzle.model.NPuzzle.ITileListener#tilesMoved(int[], int[], int[])
+	 */
+	public void tilesMoved(int[] tiles, int[] oldPositions, int[] newPositions) {
+		this.startSlidingAnimation(tiles, oldPositions,
+				puzzle.moveDirection(oldPositions[0], newPositions[0]));
+	}
+
 	/**
 	 * Fires the event that reports to {@link #listeners} that the animation of the tile moving has
 	 * started.
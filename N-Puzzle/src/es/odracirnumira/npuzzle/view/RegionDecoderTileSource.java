@@ -0,0 +1,368 @@
+package es.odracirnumira.npuzzle.view;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import es.odracirnumira.npuzzle.NPuzzleApplication;
+import es.odracirnumira.npuzzle.util.cache.BitmapMemoryLimitedCache;
+import es.odracirnumira.npuzzle.util.cache.MemoryLimitedCache.RemovalOrder;
+
+/**
+ * {@link ITileSource} that decodes the regions of an image file on demand with a
+ * {@link BitmapRegionDecoder}, so the full image is never in memory. It is meant for big images,
+ * such as photos taken with the camera, that would otherwise have to be scaled down or take a lot
+ * of memory.
+ * <p>
+ * Each region is decoded with the biggest power of two sample size that keeps it at least as big
+ * as the rectangle where it is drawn, so the memory used by the decoded regions is proportional to
+ * the size of the view and not to the size of the image. Decoded regions are kept in a cache, so
+ * they are only decoded again if the region, the size they are drawn at or the cache limit
+ * changes, or the cache is cleared with {@link #clearCache()}. Regions evicted from the cache are
+ * put into the application's bitmap pool (see {@link NPuzzleApplication#getBitmapPool()}): the
+ * cache is LRU and regions are only drawn while they are in it, so evicted regions are no longer
+ * used.
+ * <p>
+ * Regions are decoded in a background thread. When a region that is not decoded yet is drawn,
+ * {@link #drawRegion(Canvas, Rect, Rect)} requests it and returns false, and the listener is
+ * notified on the UI thread once it is in the cache. The cache is only used from the UI thread.
+ * <p>
+ * Only JPEG and PNG files can be decoded by regions.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class RegionDecoderTileSource implements ITileSource {
+	/**
+	 * The decoder of the image.
+	 */
+	private BitmapRegionDecoder decoder;
+
+	/**
+	 * The width of the image.
+	 */
+	private int width;
+
+	/**
+	 * The height of the image.
+	 */
+	private int height;
+
+	/**
+	 * The decoded regions. Only used from the UI thread.
+	 */
+	private BitmapMemoryLimitedCache<RegionKey> regions;
+
+	/**
+	 * The regions that have been requested but are not in {@link #regions} yet, so that they are
+	 * only requested once. Only used from the UI thread.
+	 */
+	private HashSet<RegionKey> pendingRegions;
+
+	/**
+	 * Key used to look up regions in {@link #regions}, so that no key has to be created for every
+	 * region that is drawn.
+	 */
+	private RegionKey lookupKey;
+
+	/**
+	 * The thread where the regions are decoded.
+	 */
+	private ExecutorService decoderExecutorService;
+
+	/**
+	 * Handler of the UI thread, where decoded regions are put into {@link #regions}.
+	 */
+	private Handler handler;
+
+	/**
+	 * The listener notified when regions have been decoded, or null.
+	 */
+	private ITileSourceListener listener;
+
+	/**
+	 * Whether {@link #release()} has been called.
+	 */
+	private volatile boolean released;
+
+	/**
+	 * Key of a decoded region: the region of the image and the sample size it was decoded with.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static class RegionKey {
+		int left;
+		int top;
+		int right;
+		int bottom;
+		int sampleSize;
+
+		RegionKey(Rect region, int sampleSize) {
+			this.set(region, sampleSize);
+		}
+
+		void set(Rect region, int sampleSize) {
+			this.left = region.left;
+			this.top = region.top;
+			this.right = region.right;
+			this.bottom = region.bottom;
+			this.sampleSize = sampleSize;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof RegionKey)) {
+				return false;
+			}
+
+			RegionKey other = (RegionKey) o;
+			return this.left == other.left && this.top == other.top && this.right == other.right
+					&& this.bottom == other.bottom && this.sampleSize == other.sampleSize;
+		}
+
+		public int hashCode() {
+			int result = this.left;
+			result = 31 * result + this.top;
+			result = 31 * result + this.right;
+			result = 31 * result + this.bottom;
+			return 31 * result + this.sampleSize;
+		}
+	}
+
+	/**
+	 * Constructor. Only the header of the image is read.
+	 * 
+	 * @param path
+	 *            the path of the image file.
+	 * @param cacheSize
+	 *            the maximum size of the decoded regions that are kept in memory, in bytes. It
+	 *            should be big enough to hold all the regions that are visible at the same time, or
+	 *            they will be decoded again every time the view is drawn.
+	 * @throws IOException
+	 *             if the file cannot be read or its format cannot be decoded by regions.
+	 */
+	public RegionDecoderTileSource(String path, long cacheSize) throws IOException {
+		if (path == null) {
+			throw new IllegalArgumentException("null path");
+		}
+
+		this.decoder = BitmapRegionDecoder.newInstance(path, false);
+		this.width = this.decoder.getWidth();
+		this.height = this.decoder.getHeight();
+		this.regions = new BitmapMemoryLimitedCache<RegionKey>(cacheSize, RemovalOrder.LRU,
+				NPuzzleApplication.getApplication().getBitmapPool());
+		this.pendingRegions = new HashSet<RegionKey>();
+		this.lookupKey = new RegionKey(new Rect(), 1);
+		this.handler = new Handler(Looper.getMainLooper());
+
+		/*
+		 * Executor whose thread is terminated after three seconds without an incoming task.
+		 */
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+		executor.setKeepAliveTime(3, TimeUnit.SECONDS);
+		executor.allowCoreThreadTimeOut(true);
+		this.decoderExecutorService = executor;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.view.ITileSource#getWidth()
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.view.ITileSource#getHeight()
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.view.ITileSource#drawRegion(android.graphics.Canvas,
+	 *      android.graphics.Rect, android.graphics.Rect)
+	 */
+	public boolean drawRegion(Canvas canvas, Rect src, Rect dest) {
+		if (this.released) {
+			return false;
+		}
+
+		if (src.isEmpty()) {
+			return true;
+		}
+
+		int sampleSize = computeSampleSize(src, dest);
+		this.lookupKey.set(src, sampleSize);
+		Bitmap region = this.regions.get(this.lookupKey);
+
+		if (region == null) {
+			this.requestRegion(new RegionKey(src, sampleSize));
+			return false;
+		}
+
+		canvas.drawBitmap(region, null, dest, null);
+		return true;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.view.ITileSource#setListener(ITileSourceListener)
+	 */
+	public void setListener(ITileSourceListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.view.ITileSource#clearCache()
+	 */
+	public void clearCache() {
+		this.regions.clear();
+	}
+
+	/**
+	 * 
+	 * @see es.odracirnumira.npuzzle.view.ITileSource#release()
+	 */
+	public void release() {
+		if (this.released) {
+			return;
+		}
+
+		this.released = true;
+
+		/*
+		 * Regions are not recycled, since the view may still be drawing them.
+		 */
+		this.regions.clear();
+
+		/*
+		 * The decoder is recycled in its own thread, after the region being decoded, if any. The
+		 * regions that are still waiting are skipped.
+		 */
+		this.decoderExecutorService.execute(new Runnable() {
+			public void run() {
+				decoder.recycle();
+			}
+		});
+		this.decoderExecutorService.shutdown();
+	}
+
+	/**
+	 * Decodes a region in {@link #decoderExecutorService}, unless it has already been requested,
+	 * and puts it into {@link #regions} in the UI thread.
+	 */
+	private void requestRegion(final RegionKey key) {
+		if (!this.pendingRegions.add(key)) {
+			return;
+		}
+
+		try {
+			this.decoderExecutorService.execute(new Runnable() {
+				public void run() {
+					if (released) {
+						return;
+					}
+
+					final Bitmap region = decodeRegion(key);
+
+					handler.post(new Runnable() {
+						public void run() {
+							regionDecoded(key, region);
+						}
+					});
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.pendingRegions.remove(key);
+		}
+	}
+
+	/**
+	 * Decodes a region with the sample size of its key. If there is not enough memory, the sample
+	 * size is doubled until the region can be decoded, so that at least a blurry region is drawn.
+	 * This method is called from {@link #decoderExecutorService}.
+	 * 
+	 * @return the region, or null if it could not be decoded.
+	 */
+	private Bitmap decodeRegion(RegionKey key) {
+		Rect rect = new Rect(key.left, key.top, key.right, key.bottom);
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inMutable = true;
+		options.inSampleSize = key.sampleSize;
+
+		while (options.inSampleSize <= rect.width() && options.inSampleSize <= rect.height()) {
+			try {
+				return this.decoder.decodeRegion(rect, options);
+			} catch (OutOfMemoryError e) {
+				options.inSampleSize *= 2;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Puts a decoded region into {@link #regions} and notifies the listener. This method is called
+	 * from the UI thread.
+	 * 
+	 * @param region
+	 *            the region, or null if it could not be decoded.
+	 */
+	private void regionDecoded(RegionKey key, Bitmap region) {
+		this.pendingRegions.remove(key);
+
+		if (this.released) {
+			return;
+		}
+
+		if (region != null) {
+			this.regions.put(key, region);
+		} else {
+			Log.e("NPuzzle", "Not enough memory to decode a region of the puzzle's image");
+
+			/*
+			 * Free the regions that are not visible now and try again, but only if that actually
+			 * frees some memory. Otherwise, the caller keeps drawing its preview.
+			 */
+			if (this.regions.getCurrentSize() == 0) {
+				return;
+			}
+
+			this.regions.clear();
+		}
+
+		if (this.listener != null) {
+			this.listener.regionsAvailable(this);
+		}
+	}
+
+	/**
+	 * Returns the biggest power of two sample size that decodes <code>src</code> into a bitmap that
+	 * is not smaller than <code>dest</code>.
+	 */
+	private static int computeSampleSize(Rect src, Rect dest) {
+		int sampleSize = 1;
+
+		while (src.width() / (sampleSize * 2) >= dest.width()
+				&& src.height() / (sampleSize * 2) >= dest.height()) {
+			sampleSize *= 2;
+		}
+
+		return sampleSize;
+	}
+}
@@ -0,0 +1,452 @@
+package es.odracirnumira.npuzzle.view;
+
+import java.util.ArrayList;
+
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
+import android.animation.ValueAnimator.AnimatorUpdateListener;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import es.odracirnumira.npuzzle.model.NPuzzle;
+import es.odracirnumira.npuzzle.model.NPuzzle.Direction;
+
+/**
+ * Engine that animates the tiles of an {@link NPuzzleView} that slide from one position to the
+ * next. Several animations can run at the same time, and an animation can move several tiles
+ * together, so that a slide of a whole row or column segment (see {@link NPuzzle#slideTo(int)}) or
+ * the replay of a game can be displayed.
+ * <p>
+ * Frames are driven by a {@link ValueAnimator}, which calls the engine once per frame of the
+ * display. The progress of every animation is computed then, from the animation clock (
+ * {@link AnimationUtils#currentAnimationTimeMillis()}) and an interpolator, so that it is not
+ * affected by changes of the wall clock or by how often the view is drawn. The view only has to
+ * read it when drawing. Nothing is allocated per frame: the objects of finished animations are
+ * reused by the next ones.
+ * <p>
+ * The engine also counts the frames it has processed and the frames that were dropped, that is,
+ * the frames that were expected between two consecutive calls (at {@link #FRAME_RATE} frames per
+ * second) but did not take place.
+ * <p>
+ * This class must be used from the UI thread.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class TileAnimator {
+	/**
+	 * The expected frame rate, in frames per second.
+	 */
+	public static final int FRAME_RATE = 60;
+
+	/**
+	 * The expected time between two frames, in milliseconds.
+	 */
+	private static final float FRAME_INTERVAL = 1000f / FRAME_RATE;
+
+	/**
+	 * Animation of one or more tiles that slide together from their positions to the next ones in
+	 * a direction.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	static class TileAnimation {
+		/**
+		 * The tiles. Only the first {@link #numTiles} elements are used.
+		 */
+		int[] tiles = new int[1];
+
+		/**
+		 * The position each tile of {@link #tiles} slides from. Only the first {@link #numTiles}
+		 * elements are used.
+		 */
+		int[] positions = new int[1];
+
+		/**
+		 * The number of tiles.
+		 */
+		int numTiles;
+
+		/**
+		 * The direction the tiles slide to.
+		 */
+		Direction direction;
+
+		/**
+		 * How much of the path the tiles had already gone through when the animation started,
+		 * from 0 to 1.
+		 */
+		float initialFraction;
+
+		/**
+		 * The time when the animation started, in the time base of
+		 * {@link AnimationUtils#currentAnimationTimeMillis()}.
+		 */
+		long startTime;
+
+		/**
+		 * The duration of the animation, in milliseconds.
+		 */
+		long duration;
+
+		/**
+		 * How much of the path the tiles have gone through in the current frame, from 0 to 1.
+		 */
+		float fraction;
+	}
+
+	/**
+	 * Listener that is notified of the progress of the animations.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	interface ITileAnimationListener {
+		/**
+		 * Called once per frame for every animation that has not ended yet, after its fraction has
+		 * been updated.
+		 */
+		public void tileAnimationUpdated(TileAnimation animation);
+
+		/**
+		 * Called when an animation ends. The animation is no longer in the engine, and its object
+		 * may be reused once this method returns.
+		 */
+		public void tileAnimationEnded(TileAnimation animation);
+	}
+
+	/**
+	 * The animations that have not ended yet.
+	 */
+	private ArrayList<TileAnimation> animations;
+
+	/**
+	 * Animations that have ended and can be reused.
+	 */
+	private ArrayList<TileAnimation> freeAnimations;
+
+	/**
+	 * The listener.
+	 */
+	private ITileAnimationListener listener;
+
+	/**
+	 * The interpolator applied to all the animations.
+	 */
+	private TimeInterpolator interpolator;
+
+	/**
+	 * Animator that calls {@link #doFrame()} once per frame while there are animations.
+	 */
+	private ValueAnimator frameAnimator;
+
+	/**
+	 * Whether {@link #frameAnimator} has been started and not cancelled.
+	 */
+	private boolean running;
+
+	/**
+	 * The time of the last frame, or -1 if no frame has been processed since the engine started
+	 * running.
+	 */
+	private long lastFrameTime;
+
+	/**
+	 * The number of frames processed.
+	 */
+	private long frameCount;
+
+	/**
+	 * The number of frames dropped.
+	 */
+	private long droppedFrameCount;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param listener
+	 *            the listener that is notified of the progress of the animations.
+	 */
+	TileAnimator(ITileAnimationListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("null listener");
+		}
+
+		this.listener = listener;
+		this.animations = new ArrayList<TileAnimation>();
+		this.freeAnimations = new ArrayList<TileAnimation>();
+		this.interpolator = new DecelerateInterpolator();
+		this.lastFrameTime = -1;
+
+		/*
+		 * The values of the animator are not used. It just has to run until it is cancelled.
+		 */
+		this.frameAnimator = ValueAnimator.ofFloat(0, 1);
+		this.frameAnimator.setRepeatCount(ValueAnimator.INFINITE);
+		this.frameAnimator.addUpdateListener(new AnimatorUpdateListener() {
+			public void onAnimationUpdate(ValueAnimator animation) {
+				doFrame();
+			}
+		});
+	}
+
+	/**
+	 * Sets the interpolator applied to all the animations. It maps the elapsed fraction of the
+	 * duration of an animation to the fraction of the path the tiles have gone through.
+	 * 
+	 * @param interpolator
+	 *            the interpolator.
+	 */
+	public void setInterpolator(TimeInterpolator interpolator) {
+		if (interpolator == null) {
+			throw new IllegalArgumentException("null interpolator");
+		}
+
+		this.interpolator = interpolator;
+	}
+
+	/**
+	 * Returns the interpolator applied to all the animations.
+	 */
+	public TimeInterpolator getInterpolator() {
+		return this.interpolator;
+	}
+
+	/**
+	 * Returns the number of frames processed while there were animations running.
+	 */
+	public long getFrameCount() {
+		return this.frameCount;
+	}
+
+	/**
+	 * Returns the number of frames dropped while there were animations running.
+	 */
+	public long getDroppedFrameCount() {
+		return this.droppedFrameCount;
+	}
+
+	/**
+	 * Sets the frame counters to 0.
+	 */
+	public void resetFrameCounters() {
+		this.frameCount = 0;
+		this.droppedFrameCount = 0;
+	}
+
+	/**
+	 * Starts animating a tile. If the tile was already being animated, its animation is replaced.
+	 * 
+	 * @param tile
+	 *            the tile.
+	 * @param position
+	 *            the position the tile slides from.
+	 * @param direction
+	 *            the direction the tile slides to.
+	 * @param initialFraction
+	 *            how much of the path the tile has already gone through, from 0 to 1.
+	 * @param duration
+	 *            the duration of the animation, in milliseconds.
+	 */
+	void start(int tile, int position, Direction direction, float initialFraction, long duration) {
+		TileAnimation animation = this.obtainAnimation(1);
+		animation.tiles[0] = tile;
+		animation.positions[0] = position;
+		this.start(animation, direction, initialFraction, duration);
+	}
+
+	/**
+	 * Starts animating several tiles that slide together in the same direction, as a single
+	 * animation. Animations of any of the tiles that were running are removed without notifying
+	 * the listener.
+	 * 
+	 * @param tiles
+	 *            the tiles.
+	 * @param positions
+	 *            the position each tile slides from.
+	 * @param direction
+	 *            the direction the tiles slide to.
+	 * @param duration
+	 *            the duration of the animation, in milliseconds.
+	 */
+	void start(int[] tiles, int[] positions, Direction direction, long duration) {
+		if (tiles.length != positions.length) {
+			throw new IllegalArgumentException("There must be a position for each tile");
+		}
+
+		TileAnimation animation = this.obtainAnimation(tiles.length);
+		System.arraycopy(tiles, 0, animation.tiles, 0, tiles.length);
+		System.arraycopy(positions, 0, animation.positions, 0, positions.length);
+		this.start(animation, direction, 0, duration);
+	}
+
+	/**
+	 * Removes all the animations without notifying the listener, and stops the engine.
+	 */
+	void cancel() {
+		this.freeAnimations.addAll(this.animations);
+		this.animations.clear();
+		this.stop();
+	}
+
+	/**
+	 * Returns true if there are animations running.
+	 */
+	boolean isAnimating() {
+		return !this.animations.isEmpty();
+	}
+
+	/**
+	 * Returns true if <code>tile</code> is being animated.
+	 */
+	boolean isAnimating(int tile) {
+		for (int i = 0; i < this.animations.size(); i++) {
+			TileAnimation animation = this.animations.get(i);
+
+			for (int j = 0; j < animation.numTiles; j++) {
+				if (animation.tiles[j] == tile) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the number of animations running.
+	 */
+	int getNumAnimations() {
+		return this.animations.size();
+	}
+
+	/**
+	 * Returns the <code>index</code>-th animation running.
+	 */
+	TileAnimation getAnimation(int index) {
+		return this.animations.get(index);
+	}
+
+	/**
+	 * Returns an animation object that is not in use, with room for <code>numTiles</code> tiles.
+	 */
+	private TileAnimation obtainAnimation(int numTiles) {
+		TileAnimation animation;
+
+		if (this.freeAnimations.isEmpty()) {
+			animation = new TileAnimation();
+		} else {
+			animation = this.freeAnimations.remove(this.freeAnimations.size() - 1);
+		}
+
+		if (animation.tiles.length < numTiles) {
+			animation.tiles = new int[numTiles];
+			animation.positions = new int[numTiles];
+		}
+
+		animation.numTiles = numTiles;
+		return animation;
+	}
+
+	/**
+	 * Starts <code>animation</code>, whose tiles and positions are already set. The running
+	 * animations that move any of its tiles are removed.
+	 */
+	private void start(TileAnimation animation, Direction direction, float initialFraction,
+			long duration) {
+		for (int i = 0; i < animation.numTiles; i++) {
+			this.removeAnimationOf(animation.tiles[i]);
+		}
+
+		animation.direction = direction;
+		animation.initialFraction = initialFraction;
+		animation.fraction = initialFraction;
+		animation.startTime = AnimationUtils.currentAnimationTimeMillis();
+		animation.duration = duration;
+		this.animations.add(animation);
+
+		if (!this.running) {
+			this.running = true;
+			this.lastFrameTime = -1;
+			this.frameAnimator.start();
+		}
+	}
+
+	/**
+	 * Removes the running animation that moves <code>tile</code>, if any, without notifying the
+	 * listener.
+	 */
+	private void removeAnimationOf(int tile) {
+		for (int i = 0; i < this.animations.size(); i++) {
+			TileAnimation animation = this.animations.get(i);
+
+			for (int j = 0; j < animation.numTiles; j++) {
+				if (animation.tiles[j] == tile) {
+					this.animations.remove(i);
+					this.freeAnimations.add(animation);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates all the animations for the current frame.
+	 */
+	private void doFrame() {
+		long now = AnimationUtils.currentAnimationTimeMillis();
+
+		if (this.lastFrameTime != -1) {
+			long elapsed = now - this.lastFrameTime;
+
+			if (elapsed > FRAME_INTERVAL * 1.5f) {
+				this.droppedFrameCount += Math.round(elapsed / FRAME_INTERVAL) - 1;
+			}
+		}
+
+		this.lastFrameTime = now;
+		this.frameCount++;
+
+		/*
+		 * Go backwards, so that ended animations can be removed, and animations started by the
+		 * listener are not updated until the next frame.
+		 */
+		for (int i = this.animations.size() - 1; i >= 0; i--) {
+			TileAnimation animation = this.animations.get(i);
+			float elapsedFraction = 1;
+
+			if (animation.duration > 0) {
+				elapsedFraction = Math.min(1, Math.max(0, (now - animation.startTime)
+						/ (float) animation.duration));
+			}
+
+			if (elapsedFraction < 1) {
+				animation.fraction = animation.initialFraction + (1 - animation.initialFraction)
+						* this.interpolator.getInterpolation(elapsedFraction);
+				this.listener.tileAnimationUpdated(animation);
+			} else {
+				animation.fraction = 1;
+				this.animations.remove(i);
+				this.listener.tileAnimationEnded(animation);
+				this.freeAnimations.add(animation);
+
+				/*
+				 * The listener may have started or replaced animations.
+				 */
+				i = Math.min(i, this.animations.size());
+			}
+		}
+
+		if (this.animations.isEmpty()) {
+			this.stop();
+		}
+	}
+
+	/**
+	 * Stops {@link #frameAnimator}.
+	 */
+	private void stop() {
+		this.running = false;
+		this.frameAnimator.cancel();
+	}
+}